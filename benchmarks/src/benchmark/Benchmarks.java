@@ -0,0 +1,61 @@
+package benchmark;
+
+import nub.core.Node;
+import nub.primitives.Quaternion;
+import nub.primitives.Vector;
+import org.openjdk.jmh.Main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the nub benchmark suite and holds the scene fixtures the benchmarks share. Arguments
+ * are those of the JMH command line, e.g., {@code IKBenchmark -p joints=16 -rf json} runs
+ * only the IK benchmarks on 16 joint chains and writes the results as json. All benchmarks
+ * run headless, i.e., they don't open any window nor require an OpenGL context.
+ * <p>
+ * The suite requires the jmh-core and jmh-generator-annprocess jars (see
+ * {@code benchmarks/README.md}).
+ */
+public class Benchmarks {
+  public static void main(String[] args) throws IOException {
+    Main.main(args);
+  }
+
+  /**
+   * Returns a chain of {@code size} detached nodes having unit length bones and random
+   * (but reproducible from {@code seed}) rotations.
+   */
+  public static List<Node> chain(int size, long seed) {
+    Random random = new Random(seed);
+    List<Node> chain = new ArrayList<Node>();
+    Node previous = null;
+    for (int i = 0; i < size; i++) {
+      Node node = previous == null ? Node.detach(new Vector(), new Quaternion(), 1) : new Node(previous);
+      if (previous != null)
+        node.setTranslation(0, 1, 0);
+      node.setRotation(new Quaternion(new Vector(random.nextFloat(), random.nextFloat(), random.nextFloat()), 0.5f * random.nextFloat()));
+      chain.add(node);
+      previous = node;
+    }
+    return chain;
+  }
+
+  /**
+   * Stores the {@code chain} local rotations into {@code rotations}.
+   */
+  public static void save(List<Node> chain, Quaternion[] rotations) {
+    for (int i = 0; i < chain.size(); i++)
+      rotations[i] = chain.get(i).rotation().get();
+  }
+
+  /**
+   * Restores the {@code chain} local rotations from {@code rotations}.
+   */
+  public static void restore(List<Node> chain, Quaternion[] rotations) {
+    for (int i = 0; i < chain.size(); i++)
+      chain.get(i).setRotation(rotations[i].get());
+  }
+}
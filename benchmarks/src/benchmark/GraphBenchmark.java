@@ -0,0 +1,103 @@
+package benchmark;
+
+import nub.core.Graph;
+import nub.core.HeadlessGraph;
+import nub.core.Node;
+import nub.primitives.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render traversal and picking of a scene of {@code nodes} bounded nodes (grouped under a
+ * few hundred parents) randomly placed around the graph center, using a {@link HeadlessGraph}.
+ * Each rendering benchmark operation is a whole frame (see {@link HeadlessGraph#step()}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GraphBenchmark {
+  @Param({"1000", "10000"})
+  public int nodes;
+
+  @Param({"true", "false"})
+  public boolean culling;
+
+  @Param({"true", "false"})
+  public boolean indexing;
+
+  protected HeadlessGraph _graph;
+  protected int[] _pixels;
+  protected int _pixel;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    _graph = new HeadlessGraph(800, 600);
+    _graph.setBounds(1000);
+    _graph.fit();
+    _graph.culling = culling;
+    _graph.indexing = indexing;
+    int groups = Math.max(1, nodes / 32);
+    Node[] parents = new Node[groups];
+    for (int i = 0; i < groups; i++) {
+      parents[i] = new Node();
+      // groups cover twice the graph radius so that culling discards some of them
+      parents[i].setPosition(new Vector(4000 * random.nextFloat() - 2000, 4000 * random.nextFloat() - 2000, 4000 * random.nextFloat() - 2000));
+      // bounded parents, so that whole groups may be culled
+      parents[i].setBoundingBall(1);
+    }
+    for (int i = 0; i < nodes; i++) {
+      Node node = new Node(parents[i % groups]);
+      node.setTranslation(100 * random.nextFloat() - 50, 100 * random.nextFloat() - 50, 100 * random.nextFloat() - 50);
+      node.setBoundingBall(10);
+      node.enableHint(Node.BULLSEYE);
+    }
+    _pixels = new int[2 * 1024];
+    for (int i = 0; i < _pixels.length; i += 2) {
+      _pixels[i] = random.nextInt(800);
+      _pixels[i + 1] = random.nextInt(600);
+    }
+    _graph.step();
+  }
+
+  @TearDown
+  public void tearDown() {
+    Graph.clear();
+  }
+
+  protected int _next() {
+    _pixel = (_pixel + 2) % _pixels.length;
+    return _pixel;
+  }
+
+  @Benchmark
+  public void render() {
+    _graph.step();
+  }
+
+  /**
+   * Picking of a node at traversal time (see {@link Graph#tag(String, int, int)}).
+   */
+  @Benchmark
+  public Node renderAndTag() {
+    int i = _next();
+    _graph.tag(_pixels[i], _pixels[i + 1]);
+    _graph.step();
+    return _graph.node();
+  }
+
+  /**
+   * Immediate picking of a node (see {@link Graph#updateTag(int, int)}), which uses the
+   * screen-space index built by the setup traversal when {@link #indexing} is enabled.
+   */
+  @Benchmark
+  public Node updateTag() {
+    int i = _next();
+    return _graph.updateTag(_pixels[i], _pixels[i + 1]);
+  }
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import nub.core.Node;
+import nub.ik.solver.GHIK;
+import nub.ik.solver.Solver;
+import nub.ik.solver.fabrik.FABRIKChain;
+import nub.primitives.Quaternion;
+import nub.primitives.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A complete solve (i.e., up to {@code iterations} iterations) of each {@link GHIK.HeuristicMode}
+ * and of {@link FABRIKChain} on standard unconstrained chains of {@code joints} unit length
+ * bones, starting always from the same pose.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IKBenchmark {
+  @Param({"CCD", "BFIK_CCD", "TIK", "BFIK_TIK", "TRIK", "BFIK_TRIK", "ECTIK", "BFIK", "FABRIK"})
+  public String solver;
+
+  @Param({"4", "16", "64"})
+  public int joints;
+
+  @Param({"10"})
+  public int iterations;
+
+  protected List<Node> _chain;
+  protected Quaternion[] _rotations;
+  protected Solver _solver;
+
+  @Setup
+  public void setup() {
+    _chain = Benchmarks.chain(joints, 0);
+    _rotations = new Quaternion[joints];
+    Benchmarks.save(_chain, _rotations);
+    // reachable target: 3/4 of the chain length away from its root
+    Node target = Node.detach(new Vector(0.5f * joints, 0.5f * joints, 0.2f * joints), new Quaternion(), 1);
+    if (solver.equals("FABRIK")) {
+      FABRIKChain fabrik = new FABRIKChain(_chain);
+      fabrik.setTarget(_chain.get(joints - 1), target);
+      _solver = fabrik;
+    } else {
+      GHIK ghik = new GHIK(_chain, GHIK.HeuristicMode.valueOf(solver));
+      ghik.setTarget(_chain.get(joints - 1), target);
+      _solver = ghik;
+    }
+    _solver.setMaxError(0);
+    _solver.setMaxIterations(iterations);
+    _solver.setTimesPerFrame(iterations);
+  }
+
+  @Benchmark
+  public float solve() {
+    Benchmarks.restore(_chain, _rotations);
+    _solver.change(true);
+    _solver.solve();
+    return _solver.error();
+  }
+}
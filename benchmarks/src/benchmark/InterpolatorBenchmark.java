@@ -0,0 +1,62 @@
+package benchmark;
+
+import nub.core.Interpolator;
+import nub.core.Node;
+import nub.primitives.Quaternion;
+import nub.primitives.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Interpolator#interpolate(float)} along a path of {@code keyFrames} random keyframes,
+ * sampled at increasing times (as when the interpolator runs) or at random ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpolatorBenchmark {
+  @Param({"4", "32", "256"})
+  public int keyFrames;
+
+  protected Interpolator _interpolator;
+  protected float[] _times;
+  protected int _index;
+  protected float _time;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    _interpolator = new Interpolator(Node.detach(new Vector(), new Quaternion(), 1));
+    for (int i = 0; i < keyFrames; i++) {
+      Node keyFrame = Node.detach(new Vector(100 * random.nextFloat(), 100 * random.nextFloat(), 100 * random.nextFloat()),
+          new Quaternion(new Vector(random.nextFloat(), random.nextFloat(), random.nextFloat()), random.nextFloat()), 1);
+      _interpolator.addKeyFrame(keyFrame, 1);
+    }
+    _times = new float[1024];
+    for (int i = 0; i < _times.length; i++)
+      _times[i] = _interpolator.firstTime() + random.nextFloat() * _interpolator.duration();
+    // computes the path once
+    _interpolator.interpolate(_interpolator.firstTime());
+  }
+
+  @Benchmark
+  public Node sequential() {
+    _time += 0.01f;
+    if (_time > _interpolator.lastTime())
+      _time = _interpolator.firstTime();
+    _interpolator.interpolate(_time);
+    return _interpolator.node();
+  }
+
+  @Benchmark
+  public Node random() {
+    _index = (_index + 1) % _times.length;
+    _interpolator.interpolate(_times[_index]);
+    return _interpolator.node();
+  }
+}
@@ -0,0 +1,73 @@
+package benchmark;
+
+import nub.core.Node;
+import nub.primitives.Matrix;
+import nub.primitives.Quaternion;
+import nub.primitives.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node world transformation queries on the leaf of a chain of {@code depth} nodes, either
+ * hitting the node world cache or after modifying the chain root (so that the whole chain
+ * cache has to be rebuilt).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NodeBenchmark {
+  @Param({"1", "8", "64"})
+  public int depth;
+
+  protected Node _root, _leaf;
+  protected Vector _vector = new Vector();
+  protected Quaternion _quaternion = new Quaternion();
+  protected float _sign = 1;
+
+  @Setup
+  public void setup() {
+    _root = Benchmarks.chain(depth, 0).get(0);
+    _leaf = _root;
+    while (!_leaf.children().isEmpty())
+      _leaf = _leaf.children().get(0);
+  }
+
+  // modifies the root back and forth, invalidating the cache of the whole chain
+  protected void _modify() {
+    _sign = -_sign;
+    _root.translate(_sign * 0.001f, 0, 0);
+  }
+
+  @Benchmark
+  public Vector cachedPosition() {
+    return _leaf.position(_vector);
+  }
+
+  @Benchmark
+  public Vector position() {
+    _modify();
+    return _leaf.position();
+  }
+
+  @Benchmark
+  public Vector positionIntoTarget() {
+    _modify();
+    return _leaf.position(_vector);
+  }
+
+  @Benchmark
+  public Quaternion orientationIntoTarget() {
+    _modify();
+    return _leaf.orientation(_quaternion);
+  }
+
+  @Benchmark
+  public Matrix worldMatrix() {
+    _modify();
+    return _leaf.worldMatrix();
+  }
+}
@@ -0,0 +1,582 @@
+/***************************************************************************************
+ * nub
+ * Copyright (c) 2019-2020 Universidad Nacional de Colombia
+ * @author Jean Pierre Charalambos, https://github.com/VisualComputing
+ *
+ * All rights reserved. A simple, expressive, language-agnostic, and extensible visual
+ * computing library, featuring interaction, visualization and animation frameworks and
+ * supporting advanced (onscreen/offscreen) (real/non-real time) rendering techniques.
+ * Released under the terms of the GPLv3, refer to: http://www.gnu.org/licenses/gpl.html
+ ***************************************************************************************/
+
+package nub.core;
+
+import nub.primitives.Quaternion;
+import nub.primitives.Vector;
+import nub.timing.Task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates many interpolators sharing a single clock in one pass, e.g., those of a
+ * crowd of skeletons (see {@code PostureInterpolator.addTo(Animator)}), instead of
+ * running a task per interpolator.
+ * <p>
+ * The key-frames of all the interpolators (local translations, rotations, scalings, their
+ * tangents and spline coefficients) are packed into contiguous arrays which are only
+ * re-packed for the interpolators whose key-frames were modified. Each {@link #task()}
+ * execution (or {@link #interpolate(float)} call) then evaluates all the interpolators
+ * at the same {@link #time()}, writing the local transformations straight into their
+ * target nodes, without allocating.
+ * <p>
+ * Interpolators are added in groups (see {@link #add(List, List, Runnable)}), e.g., one
+ * per skeleton. Groups are evaluated in parallel on the common fork-join pool (see
+ * {@link #enableParallel(boolean)}), so the targets of different groups should belong
+ * to different node branches. Interpolators within a group having the same key-frame
+ * times share a single key-frame lookup.
+ * <p>
+ * Each group is evaluated at the animator {@link #time()} clamped (or wrapped if the
+ * animator {@link #isRecurrent()}) to the group time range.
+ *
+ * @see Interpolator
+ */
+public class Animator {
+  // Groups of channels, i.e., of interpolator-target pairings
+  protected List<Interpolator> _interpolatorList;
+  protected List<Node> _targetList;
+  protected List<Integer> _groupList;
+  protected List<Runnable> _callbackList;
+  protected boolean _packed;
+
+  // Packed channels
+  protected Interpolator[] _interpolators;
+  protected Node[] _targets;
+  protected long[] _modifications;
+  protected int[] _offsets, _sizes, _cursors;
+  protected boolean[] _shared;
+  // Packed groups
+  protected int[] _groups;
+  protected Runnable[] _callbacks;
+  protected float[] _firstTimes, _lastTimes;
+  // Per group scratch: segment, alpha and interpolated quaternions
+  protected int[] _segments;
+  protected float[] _alphas;
+  protected float[] _scratch;
+
+  // Packed key-frames: time, translation (3), rotation (4), scaling (1), tangent quaternion (4)
+  // and spline tangent and coefficients (9) of the segment starting at the key-frame
+  protected float[] _times;
+  protected float[] _translations;
+  protected float[] _rotations;
+  protected float[] _scalings;
+  protected float[] _tangentQuaternions;
+  protected float[] _splines;
+
+  // Beat
+  protected Task _task;
+  protected float _t;
+  protected float _speed;
+  protected boolean _recurrent;
+  protected boolean _parallel = true;
+
+  /**
+   * Creates an empty animator. {@link #time()} and {@link #speed()} are set to their
+   * default values.
+   */
+  public Animator() {
+    _interpolatorList = new ArrayList<Interpolator>();
+    _targetList = new ArrayList<Node>();
+    _groupList = new ArrayList<Integer>();
+    _callbackList = new ArrayList<Runnable>();
+    _t = 0.0f;
+    _speed = 1.0f;
+    _task = new nub.processing.TimingTask(() -> Animator.this._execute());
+  }
+
+  /**
+   * Same as {@code add(interpolator, interpolator.node())}.
+   *
+   * @see #add(Interpolator, Node)
+   */
+  public void add(Interpolator interpolator) {
+    add(interpolator, interpolator.node());
+  }
+
+  /**
+   * Adds the {@code interpolator} as a single group whose local transformation is written
+   * into the {@code target} node.
+   *
+   * @see #add(List, List, Runnable)
+   */
+  public void add(Interpolator interpolator, Node target) {
+    List<Interpolator> interpolators = new ArrayList<Interpolator>();
+    interpolators.add(interpolator);
+    List<Node> targets = new ArrayList<Node>();
+    targets.add(target);
+    add(targets, interpolators, null);
+  }
+
+  /**
+   * Adds a group of interpolators which local transformations are written into the
+   * {@code targets} nodes, i.e., the i-th interpolator animates the i-th target. The
+   * (possibly {@code null}) {@code callback} is executed right after the group is
+   * evaluated, from the same thread.
+   */
+  public void add(List<Node> targets, List<Interpolator> interpolators, Runnable callback) {
+    if (targets.size() != interpolators.size()) {
+      System.out.println("Warning: targets and interpolators should have the same size. Nothing done!");
+      return;
+    }
+    for (int i = 0; i < targets.size(); i++) {
+      if (targets.get(i) == null || interpolators.get(i) == null) {
+        System.out.println("Warning: null targets or interpolators. Nothing done!");
+        return;
+      }
+    }
+    _groupList.add(_interpolatorList.size());
+    _interpolatorList.addAll(interpolators);
+    _targetList.addAll(targets);
+    _callbackList.add(callback);
+    _packed = false;
+  }
+
+  /**
+   * Removes all the interpolators from the animator.
+   */
+  public void clear() {
+    _task.stop();
+    _interpolatorList.clear();
+    _targetList.clear();
+    _groupList.clear();
+    _callbackList.clear();
+    _packed = false;
+  }
+
+  /**
+   * Returns the number of interpolators evaluated by the animator.
+   */
+  public int size() {
+    return _interpolatorList.size();
+  }
+
+  /**
+   * Returns the animator task. Prefer the high-level-api instead: {@link #run()},
+   * {@link #reset()}, {@link #time()} ({@link #setTime(float)}) and {@link #toggle()}.
+   */
+  public Task task() {
+    return _task;
+  }
+
+  /**
+   * Evaluates the interpolators at the current {@link #time()} and then increments it by
+   * {@link Task#period()} * {@link #speed()} ms. Unless the animator {@link #isRecurrent()},
+   * the task is stopped once {@link #time()} leaves the {@link #firstTime()} - {@link #lastTime()}
+   * range.
+   *
+   * @see Interpolator#_execute()
+   */
+  protected void _execute() {
+    if (_interpolatorList.isEmpty())
+      return;
+    interpolate(time());
+    _t += _speed * _task.period() / 1000.0f;
+    if (!isRecurrent() && (time() > lastTime() || time() < firstTime())) {
+      // Make sure the first or last key-frames are reached and displayed
+      interpolate(time());
+      _task.stop();
+    }
+  }
+
+  /**
+   * Same as {@code task().toggle()}.
+   */
+  public void toggle() {
+    _task.toggle();
+  }
+
+  /**
+   * Same as {@code task().run()}.
+   */
+  public void run() {
+    _task.run();
+  }
+
+  /**
+   * Sets the speed ({@link #setSpeed(float)}) and then call {@code task().run()}.
+   */
+  public void run(float speed) {
+    setSpeed(speed);
+    _task.run();
+  }
+
+  /**
+   * Stops the animation and resets {@link #time()} to the {@link #firstTime()}.
+   */
+  public void reset() {
+    _task.stop();
+    setTime(firstTime());
+  }
+
+  /**
+   * Sets the {@link #time()}. Use {@link #interpolate(float)} to actually evaluate the
+   * interpolators at a given time.
+   */
+  public void setTime(float time) {
+    _t = time;
+  }
+
+  /**
+   * Returns the current animation time (in seconds).
+   */
+  public float time() {
+    return _t;
+  }
+
+  /**
+   * Returns the smallest {@link Interpolator#firstTime()} of the animator interpolators.
+   */
+  public float firstTime() {
+    float time = Float.MAX_VALUE;
+    for (Interpolator interpolator : _interpolatorList)
+      if (interpolator.size() > 0)
+        time = Math.min(time, interpolator.firstTime());
+    return time == Float.MAX_VALUE ? 0.0f : time;
+  }
+
+  /**
+   * Returns the largest {@link Interpolator#lastTime()} of the animator interpolators.
+   */
+  public float lastTime() {
+    float time = -Float.MAX_VALUE;
+    for (Interpolator interpolator : _interpolatorList)
+      if (interpolator.size() > 0)
+        time = Math.max(time, interpolator.lastTime());
+    return time == -Float.MAX_VALUE ? 0.0f : time;
+  }
+
+  /**
+   * Returns the current animation speed. Default is 1.
+   */
+  public float speed() {
+    return _speed;
+  }
+
+  /**
+   * Sets the {@link #speed()}. Negative values are allowed.
+   */
+  public void setSpeed(float speed) {
+    _speed = speed;
+  }
+
+  /**
+   * Convenience function that simply calls {@code enableRecurrence(false)}.
+   */
+  public void disableRecurrence() {
+    enableRecurrence(false);
+  }
+
+  /**
+   * Convenience function that simply calls {@code enableRecurrence(true)}.
+   */
+  public void enableRecurrence() {
+    enableRecurrence(true);
+  }
+
+  /**
+   * Sets the {@link #isRecurrent()} value.
+   */
+  public void enableRecurrence(boolean enable) {
+    _recurrent = enable;
+  }
+
+  /**
+   * Returns {@code true} when each group of interpolators is played in an infinite loop.
+   */
+  public boolean isRecurrent() {
+    return _recurrent;
+  }
+
+  /**
+   * Returns whether or not the groups of interpolators are evaluated in parallel.
+   *
+   * @see #enableParallel(boolean)
+   */
+  public boolean isParallel() {
+    return _parallel;
+  }
+
+  /**
+   * Same as {@code enableParallel(true)}.
+   *
+   * @see #enableParallel(boolean)
+   */
+  public void enableParallel() {
+    enableParallel(true);
+  }
+
+  /**
+   * Same as {@code enableParallel(false)}.
+   *
+   * @see #enableParallel(boolean)
+   */
+  public void disableParallel() {
+    enableParallel(false);
+  }
+
+  /**
+   * Enables or disables evaluating the groups of interpolators in parallel. A single group
+   * is always evaluated sequentially.
+   */
+  public void enableParallel(boolean enable) {
+    _parallel = enable;
+  }
+
+  /**
+   * Evaluates all the interpolators at {@code time} (expressed in seconds) and writes their
+   * local transformations into their target nodes. {@link #time()} is set to {@code time}.
+   */
+  public void interpolate(float time) {
+    setTime(time);
+    if (_interpolatorList.isEmpty())
+      return;
+    if (!_packed)
+      _pack();
+    else
+      for (int channel = 0; channel < _interpolators.length; channel++)
+        if (_interpolators[channel]._modifications != _modifications[channel]) {
+          _pack(channel);
+          if (!_packed) {
+            _pack();
+            break;
+          }
+        }
+    if (_parallel && _callbacks.length > 1)
+      IntStream.range(0, _callbacks.length).parallel().forEach(group -> _evaluate(group, time));
+    else
+      for (int group = 0; group < _callbacks.length; group++)
+        _evaluate(group, time);
+  }
+
+  /**
+   * Internal use. Packs the key-frames of all the interpolators.
+   */
+  protected void _pack() {
+    int channels = _interpolatorList.size();
+    int groups = _groupList.size();
+    _interpolators = _interpolatorList.toArray(new Interpolator[channels]);
+    _targets = _targetList.toArray(new Node[channels]);
+    _callbacks = _callbackList.toArray(new Runnable[groups]);
+    _groups = new int[groups + 1];
+    for (int group = 0; group < groups; group++)
+      _groups[group] = _groupList.get(group);
+    _groups[groups] = channels;
+    _modifications = new long[channels];
+    _offsets = new int[channels];
+    _sizes = new int[channels];
+    _cursors = new int[channels];
+    _shared = new boolean[channels];
+    _firstTimes = new float[groups];
+    _lastTimes = new float[groups];
+    _segments = new int[groups];
+    _alphas = new float[groups];
+    _scratch = new float[8 * groups];
+    int keyFrames = 0;
+    for (int channel = 0; channel < channels; channel++) {
+      _offsets[channel] = keyFrames;
+      _sizes[channel] = _interpolators[channel].size();
+      keyFrames += _sizes[channel];
+    }
+    _times = new float[keyFrames];
+    _translations = new float[3 * keyFrames];
+    _rotations = new float[4 * keyFrames];
+    _scalings = new float[keyFrames];
+    _tangentQuaternions = new float[4 * keyFrames];
+    _splines = new float[9 * keyFrames];
+    _packed = true;
+    for (int channel = 0; channel < channels; channel++)
+      _pack(channel);
+  }
+
+  /**
+   * Internal use. Packs the key-frames of the {@code channel} interpolator. Marks the
+   * animator as not packed if the number of key-frames changed.
+   */
+  protected void _pack(int channel) {
+    Interpolator interpolator = _interpolators[channel];
+    if (interpolator.size() != _sizes[channel]) {
+      _packed = false;
+      return;
+    }
+    interpolator._checkValidity();
+    if (!interpolator._list.isEmpty() && !interpolator._valuesAreValid)
+      interpolator._updateModifiedKeyFrames();
+    int offset = _offsets[channel];
+    int size = _sizes[channel];
+    for (int i = 0; i < size; i++) {
+      Interpolator.KeyFrame keyFrame = interpolator._list.get(i);
+      int k = offset + i;
+      _times[k] = keyFrame._time;
+      System.arraycopy(keyFrame._translation()._vector, 0, _translations, 3 * k, 3);
+      System.arraycopy(keyFrame._rotation()._quaternion, 0, _rotations, 4 * k, 4);
+      _scalings[k] = keyFrame._scaling();
+      System.arraycopy(keyFrame._tangentQuaternion._quaternion, 0, _tangentQuaternions, 4 * k, 4);
+      System.arraycopy(keyFrame._tangentVector._vector, 0, _splines, 9 * k, 3);
+    }
+    // spline coefficients, see Interpolator._updateSplineCache(int)
+    for (int k = offset; k < offset + size - 1; k++) {
+      for (int i = 0; i < 3; i++) {
+        float deltaP = _translations[3 * (k + 1) + i] - _translations[3 * k + i];
+        _splines[9 * k + 3 + i] = 3.0f * deltaP - 2.0f * _splines[9 * k + i] - _splines[9 * (k + 1) + i];
+        _splines[9 * k + 6 + i] = -2.0f * deltaP + _splines[9 * k + i] + _splines[9 * (k + 1) + i];
+      }
+    }
+    _modifications[channel] = interpolator._modifications;
+    _cursors[channel] = 0;
+    // group times and key-frame lookup sharing
+    int group = Arrays.binarySearch(_groups, channel);
+    group = group >= 0 ? group : -group - 2;
+    while (_groups[group + 1] == _groups[group])
+      group++;
+    _firstTimes[group] = Float.MAX_VALUE;
+    _lastTimes[group] = -Float.MAX_VALUE;
+    for (int c = _groups[group]; c < _groups[group + 1]; c++) {
+      if (_sizes[c] > 0) {
+        _firstTimes[group] = Math.min(_firstTimes[group], _times[_offsets[c]]);
+        _lastTimes[group] = Math.max(_lastTimes[group], _times[_offsets[c] + _sizes[c] - 1]);
+      }
+      _shared[c] = c > _groups[group] && _sameTimes(c, c - 1);
+    }
+  }
+
+  /**
+   * Internal use. Returns whether or not the {@code channel1} and {@code channel2} key-frames
+   * have the same times.
+   */
+  protected boolean _sameTimes(int channel1, int channel2) {
+    if (_sizes[channel1] != _sizes[channel2])
+      return false;
+    for (int i = 0; i < _sizes[channel1]; i++)
+      if (_times[_offsets[channel1] + i] != _times[_offsets[channel2] + i])
+        return false;
+    return true;
+  }
+
+  /**
+   * Internal use. Evaluates the {@code group} interpolators at {@code time}.
+   */
+  protected void _evaluate(int group, float time) {
+    if (_firstTimes[group] > _lastTimes[group])
+      return;
+    float duration = _lastTimes[group] - _firstTimes[group];
+    if (_recurrent && duration > 0) {
+      time = (time - _firstTimes[group]) % duration;
+      time = _firstTimes[group] + (time < 0 ? time + duration : time);
+    } else
+      time = Math.max(_firstTimes[group], Math.min(_lastTimes[group], time));
+    for (int channel = _groups[group]; channel < _groups[group + 1]; channel++) {
+      if (_sizes[channel] == 0)
+        continue;
+      if (!_shared[channel])
+        _lookup(group, channel, time);
+      _write(group, channel);
+    }
+    if (_callbacks[group] != null)
+      _callbacks[group].run();
+  }
+
+  /**
+   * Internal use. Finds the {@code channel} segment at {@code time} and the interpolation
+   * parameter within it. See {@link Interpolator#_updateCurrentKeyFrameForTime(float)}.
+   */
+  protected void _lookup(int group, int channel, float time) {
+    int offset = _offsets[channel];
+    int size = _sizes[channel];
+    int backwards = _cursors[channel];
+    if (!(backwards + 1 < size && _times[offset + backwards] < time && time < _times[offset + backwards + 1])) {
+      int index = Arrays.binarySearch(_times, offset, offset + size, time);
+      int forwards = index >= 0 ? index - offset : Math.min(-index - 1 - offset, size - 1);
+      backwards = forwards > 0 && time < _times[offset + forwards] ? forwards - 1 : forwards;
+      _cursors[channel] = backwards;
+      if (backwards == forwards) {
+        _segments[group] = backwards;
+        _alphas[group] = 0;
+        return;
+      }
+    }
+    _segments[group] = backwards;
+    _alphas[group] = (time - _times[offset + backwards]) / (_times[offset + backwards + 1] - _times[offset + backwards]);
+  }
+
+  /**
+   * Internal use. Interpolates the {@code channel} at the group current segment and writes
+   * the resulting local transformation into the channel target.
+   * See {@link Interpolator#interpolate(float)}.
+   */
+  protected void _write(int group, int channel) {
+    int k = _offsets[channel] + _segments[group];
+    float alpha = _alphas[group];
+    // position = translation + alpha * (tangent + alpha * (vector1 + alpha * vector2))
+    float x = _translations[3 * k];
+    float y = _translations[3 * k + 1];
+    float z = _translations[3 * k + 2];
+    // next key-frame, which is the same as the current one when alpha is 0
+    int n = alpha == 0 ? k : k + 1;
+    if (alpha != 0) {
+      x += alpha * (_splines[9 * k] + alpha * (_splines[9 * k + 3] + alpha * _splines[9 * k + 6]));
+      y += alpha * (_splines[9 * k + 1] + alpha * (_splines[9 * k + 4] + alpha * _splines[9 * k + 7]));
+      z += alpha * (_splines[9 * k + 2] + alpha * (_splines[9 * k + 5] + alpha * _splines[9 * k + 8]));
+    }
+    float scaling = Vector.lerp(_scalings[k], _scalings[n], alpha);
+    // squad, see Quaternion.squad(a, tgA, tgB, b, t)
+    int s = 8 * group;
+    _slerp(_rotations, 4 * k, _rotations, 4 * n, alpha, true, _scratch, s);
+    _slerp(_tangentQuaternions, 4 * k, _tangentQuaternions, 4 * n, alpha, false, _scratch, s + 4);
+    _slerp(_scratch, s, _scratch, s + 4, 2.0f * alpha * (1.0f - alpha), false, _scratch, s);
+    Node target = _targets[channel];
+    if (target.constraint() == null) {
+      target._translation.set(x, y, z);
+      System.arraycopy(_scratch, s, target._rotation._quaternion, 0, 4);
+      target._scaling = scaling;
+      target._modified();
+    } else {
+      target.setTranslation(new Vector(x, y, z));
+      target.setRotation(new Quaternion(_scratch[s], _scratch[s + 1], _scratch[s + 2], _scratch[s + 3], false));
+      target.setScaling(scaling);
+    }
+  }
+
+  /**
+   * Internal use. Same as {@link Quaternion#slerp(Quaternion, Quaternion, float, boolean, Quaternion)}
+   * but on the quaternions stored in the {@code a}, {@code b} and {@code target} arrays at
+   * the given offsets.
+   */
+  protected static void _slerp(float[] a, int i, float[] b, int j, float t, boolean allowFlip, float[] target, int k) {
+    float cosAngle = a[i] * b[j] + a[i + 1] * b[j + 1] + a[i + 2] * b[j + 2] + a[i + 3] * b[j + 3];
+    float c1, c2;
+    // Linear interpolation for close orientations
+    if ((1.0 - Math.abs(cosAngle)) < 0.01) {
+      c1 = 1.0f - t;
+      c2 = t;
+    } else {
+      // Spherical interpolation
+      float angle = (float) Math.acos(Math.abs(cosAngle));
+      float sinAngle = (float) Math.sin(angle);
+      c1 = (float) Math.sin(angle * (1.0f - t)) / sinAngle;
+      c2 = (float) Math.sin(angle * t) / sinAngle;
+    }
+    // Use the shortest path
+    if (allowFlip && (cosAngle < 0.0))
+      c1 = -c1;
+    float x = c1 * a[i] + c2 * b[j];
+    float y = c1 * a[i + 1] + c2 * b[j + 1];
+    float z = c1 * a[i + 2] + c2 * b[j + 2];
+    float w = c1 * a[i + 3] + c2 * b[j + 3];
+    target[k] = x;
+    target[k + 1] = y;
+    target[k + 2] = z;
+    target[k + 3] = w;
+  }
+}
@@ -40,10 +40,12 @@ import java.util.function.Consumer;
  * A graph forms a tree of {@link Node}s whose visual representations may be
  * {@link #render()}. To render a subtree call {@link #render(Node)}.
  * Note that rendering routines should be called within your main-event loop.
+ * To run the graph without any rendering context (e.g., on a server) use a {@link HeadlessGraph}.
  * <p>
  * The node collection belonging to the graph may be retrieved with {@link #nodes()}.
  * The graph provides other useful routines to handle the hierarchy, such as
  * {@link #prune(Node)}, {@link #isReachable(Node)}, {@link #branch(Node)}, and {@link #clear()}.
+ * Reachable nodes are indexed by their {@link Node#id()}, see {@link #node(int)}.
  * <h2>The eye</h2>
  * Any {@link Node} (belonging or not to the graph hierarchy) may be set as the {@link #eye()}
  * (see {@link #setEye(Node)}). Several functions handle the eye, such as
@@ -80,6 +82,10 @@ import java.util.function.Consumer;
  * ray-casting node picking policies.</li>
  * <li>To check if a given node would be picked with a ray casted at a given screen position,
  * call {@link #tracks(Node, int, int)}.</li>
+ * <li>Set {@link #indexing} to {@code true} to keep a screen-space grid of the node bullseyes
+ * (see {@link Node#bullsEyeSize()}) projected during the last render traversal, so that
+ * {@link #updateTag(String, int, int)} and {@link #tag(String, int, int)} don't need to project every
+ * node against each ray, which pays off in scenes having thousands of pickable nodes.</li>
  * <li>To interact with the node that is referred with the {@code null} tag, call any of the following methods:
  * {@link #alignTag()}, {@link #focusTag()}, {@link #translateTag(float, float, float, float)},
  * {@link #rotateTag(float, float, float, float)}, {@link #scaleTag(float, float)} and
@@ -117,6 +123,12 @@ import java.util.function.Consumer;
  * <h1>6. Visibility and culling techniques</h1>
  * Geometry may be culled against the viewing volume by calling {@link #isPointVisible(Vector)},
  * {@link #ballVisibility(Vector, float)} or {@link #boxVisibility(Vector, Vector)}.
+ * <p>
+ * Nodes having a bounding volume (see {@link Node#setBoundingBall(Vector, float)} and
+ * {@link Node#setBoundingBox(Vector, Vector)}) are merged into a bounding volume hierarchy,
+ * which the {@link #render()} algorithm uses to automatically skip those subtrees lying
+ * outside of the viewing volume, and to avoid further tests on those lying entirely inside it.
+ * Set {@link #culling} to {@code false} to disable it.
  * <h1>7. Matrix handling</h1>
  * The graph performs matrix handling through a matrix-handler. Refer to the {@link MatrixHandler}
  * documentation for details.
@@ -193,6 +205,8 @@ public class Graph {
   protected MatrixHandler _matrixHandler, _bbMatrixHandler;
   // _bb : picking buffer
   public boolean picking;
+  // bounding volume hierarchy based culling, see _cull(Node)
+  public boolean culling;
   protected long _bbNeed, _bbCount;
   protected Matrix _projection, _view, _projectionView, _projectionViewInverse;
   protected long _cacheProjectionViewInverse;
@@ -270,14 +284,120 @@ public class Graph {
     }
   }
 
+  // Screen-space uniform grid indexing the bullseyes of the front picked nodes
+  // collected during the last render traversal, see indexing.
+  protected class Grid {
+    protected int _cellSize = 32;
+    protected int _columns, _rows;
+    protected long _frame = -1;
+    protected int _size;
+    protected Node[] _nodes = new Node[64];
+    // x, y and threshold of each entry
+    protected float[] _data = new float[3 * 64];
+    // cell start offsets into _entries (counting sort of the entries by cell)
+    protected int[] _cellStart;
+    protected int[] _entries = new int[64];
+    protected boolean _dirty;
+
+    // clears the grid, to be filled during the traversal
+    public void clear(int width, int height) {
+      _columns = Math.max(1, (width + _cellSize - 1) / _cellSize);
+      _rows = Math.max(1, (height + _cellSize - 1) / _cellSize);
+      if (_cellStart == null || _cellStart.length < _columns * _rows + 1)
+        _cellStart = new int[_columns * _rows + 1];
+      for (int i = 0; i < _size; i++)
+        _nodes[i] = null;
+      _size = 0;
+      _frame = TimingHandler.frameCount;
+      _dirty = true;
+    }
+
+    // adds the node bullseye, the insertion order being that of the traversal
+    public void add(Node node, float x, float y, float threshold) {
+      if (_size == _nodes.length) {
+        _nodes = Arrays.copyOf(_nodes, 2 * _size);
+        _data = Arrays.copyOf(_data, 6 * _size);
+      }
+      _nodes[_size] = node;
+      _data[3 * _size] = x;
+      _data[3 * _size + 1] = y;
+      _data[3 * _size + 2] = threshold;
+      _size++;
+      _dirty = true;
+    }
+
+    protected int _column(float x) {
+      return Math.max(0, Math.min(_columns - 1, (int) Math.floor(x / _cellSize)));
+    }
+
+    protected int _row(float y) {
+      return Math.max(0, Math.min(_rows - 1, (int) Math.floor(y / _cellSize)));
+    }
+
+    // buckets the entries into the cells their bullseye overlaps
+    protected void _build() {
+      int cells = _columns * _rows;
+      Arrays.fill(_cellStart, 0, cells + 1, 0);
+      for (int pass = 0; pass < 2; pass++) {
+        for (int i = 0; i < _size; i++) {
+          float x = _data[3 * i], y = _data[3 * i + 1], threshold = _data[3 * i + 2];
+          int c0 = _column(x - threshold), c1 = _column(x + threshold);
+          int r0 = _row(y - threshold), r1 = _row(y + threshold);
+          for (int r = r0; r <= r1; r++)
+            for (int c = c0; c <= c1; c++) {
+              if (pass == 0)
+                _cellStart[r * _columns + c + 1]++;
+              else
+                _entries[_cellStart[r * _columns + c]++] = i;
+            }
+        }
+        if (pass == 0) {
+          for (int cell = 0; cell < cells; cell++)
+            _cellStart[cell + 1] += _cellStart[cell];
+          if (_entries.length < _cellStart[cells])
+            _entries = new int[Math.max(_cellStart[cells], 2 * _entries.length)];
+        }
+      }
+      // the fill pass shifted each cell start to the next cell one
+      for (int cell = cells; cell > 0; cell--)
+        _cellStart[cell] = _cellStart[cell - 1];
+      _cellStart[0] = 0;
+      _dirty = false;
+    }
+
+    // whether the grid was filled during a render traversal (and not invalidated since)
+    public boolean isBuilt() {
+      return _frame >= 0 && _cellStart != null;
+    }
+
+    // returns the first added node whose bullseye contains the pixel, or null
+    public Node query(int pixelX, int pixelY) {
+      if (_dirty)
+        _build();
+      int cell = _row(pixelY) * _columns + _column(pixelX);
+      // entries are sorted by insertion order within each cell
+      for (int k = _cellStart[cell]; k < _cellStart[cell + 1]; k++) {
+        int i = _entries[k];
+        if (_hits(_nodes[i]._bullsEyeShape, pixelX - _data[3 * i], pixelY - _data[3 * i + 1], _data[3 * i + 2]))
+          return _nodes[i];
+      }
+      return null;
+    }
+  }
+
   public static TimingHandler TimingHandler;
   public static boolean _seeded;
   protected boolean _seededGraph;
   protected HashMap<String, Node> _tags;
   protected ArrayList<Ray> _rays;
+  // bullseye screen-space index, see Grid
+  public boolean indexing;
+  protected Grid _grid;
 
   // 4. Graph
-  protected static List<Node> _seeds = new ArrayList<Node>();
+  protected static Set<Node> _seeds = new LinkedHashSet<Node>();
+  // reachable nodes indexed by id, see _register(Node)
+  protected static HashMap<Integer, Node> _registry = new HashMap<Integer, Node>();
   protected long _lastNonEyeUpdate = 0;
 
   // 5. Interaction methods
@@ -489,6 +609,7 @@ public class Graph {
     setHeight(height);
     _tags = new HashMap<String, Node>();
     _rays = new ArrayList<Ray>();
+    _grid = new Grid();
     _functors = new HashMap<Integer, BiConsumer<Graph, Node>>();
     if (eye == null)
       throw new RuntimeException("Error eye shouldn't be null");
@@ -514,6 +635,7 @@ public class Graph {
     setType(type);
     enableHint(HUD | SHAPE);
     picking = true;
+    culling = true;
     // middle grey encoded as a processing int rgb color
     _gridStroke = -8553091;
     // green encoded as a processing int rgb color
@@ -805,7 +927,7 @@ public class Graph {
    * @see #isReachable(Node)
    * @see #prune(Node)
    */
-  protected static List<Node> _leadingNodes() {
+  protected static Collection<Node> _leadingNodes() {
     return _seeds;
   }
 
@@ -813,10 +935,7 @@ public class Graph {
    * Returns {@code true} if the node is top-level.
    */
   protected static boolean _isLeadingNode(Node node) {
-    for (Node leadingNode : _leadingNodes())
-      if (leadingNode == node)
-        return true;
-    return false;
+    return _seeds.contains(node);
   }
 
   /**
@@ -825,25 +944,52 @@ public class Graph {
   protected static boolean _addLeadingNode(Node node) {
     if (node == null || node.reference() != null)
       return false;
-    if (_isLeadingNode(node))
-      return false;
-    return _leadingNodes().add(node);
+    return _seeds.add(node);
   }
 
   /**
    * Removes the leading node if present. Typically used when re-parenting the node.
    */
   protected static boolean _removeLeadingNode(Node node) {
-    boolean result = false;
-    Iterator<Node> it = _leadingNodes().iterator();
-    while (it.hasNext()) {
-      if (it.next() == node) {
-        it.remove();
-        result = true;
-        break;
-      }
-    }
-    return result;
+    return _seeds.remove(node);
+  }
+
+  /**
+   * Marks all the nodes in the {@code node} branch as reachable and indexes them by id.
+   * Called by {@link Node#setReference(Node)} when an unreachable branch becomes reachable.
+   *
+   * @see #_unregister(Node)
+   * @see #isReachable(Node)
+   */
+  protected static void _register(Node node) {
+    node._reachable = true;
+    _registry.put(node.id(), node);
+    for (Node child : node.children())
+      _register(child);
+  }
+
+  /**
+   * Marks all the nodes in the {@code node} branch as unreachable and removes them from
+   * the index, so that they become eligible for garbage collection. Called by {@link #prune(Node)}.
+   *
+   * @see #_register(Node)
+   * @see #isReachable(Node)
+   */
+  protected static void _unregister(Node node) {
+    node._reachable = false;
+    _registry.remove(node.id());
+    for (Node child : node.children())
+      _unregister(child);
+  }
+
+  /**
+   * Returns the reachable node having the given {@code id} (see {@link Node#id()}),
+   * or {@code null} if there's none.
+   *
+   * @see #isReachable(Node)
+   */
+  public static Node node(int id) {
+    return _registry.get(id);
   }
 
   /**
@@ -852,7 +998,7 @@ public class Graph {
    * @see #prune(Node)
    */
   public static void clear() {
-    for (Node node : _leadingNodes())
+    for (Node node : new ArrayList<Node>(_leadingNodes()))
       prune(node);
   }
 
@@ -882,9 +1028,11 @@ public class Graph {
         TimingHandler.unregisterTask(nodeBranch._orbitTask);
         TimingHandler.unregisterTask(nodeBranch._scalingTask);
       }
+      _unregister(node);
       if (node.reference() != null) {
         node.reference()._removeChild(node);
         node._reference = null;
+        node._modified();
       } else
         _removeLeadingNode(node);
       return true;
@@ -892,6 +1040,7 @@ public class Graph {
       if (node.reference() != null) {
         node.reference()._removeChild(node);
         node._reference = null;
+        node._modified();
         return true;
       }
     }
@@ -903,18 +1052,14 @@ public class Graph {
    * algorithm and {@code false} otherwise.
    * <p>
    * Nodes are made unreachable with {@link #prune(Node)} and reachable
-   * again with {@link Node#setReference(Node)}.
+   * again with {@link Node#setReference(Node)}. This is a constant time query.
    *
    * @see #render()
    * @see #nodes()
+   * @see #node(int)
    */
   public static boolean isReachable(Node node) {
-    if (node == null)
-      return false;
-    for (Node n : nodes())
-      if (n == node)
-        return true;
-    return false;
+    return node != null && node._reachable;
   }
 
   /**
@@ -2468,6 +2613,19 @@ public class Graph {
    */
   public Node updateTag(Node subtree, String tag, int pixelX, int pixelY) {
     removeTag(tag);
+    // the grid holds the bullseyes projected in the previous frame
+    if (indexing && subtree == null && _grid.isBuilt() && _grid._frame >= TimingHandler.frameCount - 1) {
+      Node candidate = _grid.query(pixelX, pixelY);
+      // no need to traverse the hierarchy when no node was back picked in the grid frame
+      if (_bbNeed != _grid._frame) {
+        if (candidate != null)
+          tag(tag, candidate);
+      } else {
+        for (Node node : _leadingNodes())
+          _track(tag, node, pixelX, pixelY, candidate);
+      }
+      return node(tag);
+    }
     if (subtree == null) {
       for (Node node : _leadingNodes())
         _track(tag, node, pixelX, pixelY);
@@ -2491,6 +2649,21 @@ public class Graph {
         _track(tag, child, pixelX, pixelY);
   }
 
+  /**
+   * Same as {@link #_track(String, Node, int, int)}, but using the bullseye {@code candidate}
+   * found in the {@link #indexing} grid, instead of the node screen projections.
+   */
+  protected void _track(String tag, Node node, int pixelX, int pixelY, Node candidate) {
+    if (node(tag) == null && node.tagging == true && (node._bypass != TimingHandler.frameCount))
+      if (node == candidate || (_backPicking(node) && _tracks(node, pixelX, pixelY))) {
+        tag(tag, node);
+        return;
+      }
+    if (!node.cull && node(tag) == null)
+      for (Node child : node.children())
+        _track(tag, child, pixelX, pixelY, candidate);
+  }
+
   /**
    * Condition for the node back picking.
    */
@@ -2562,12 +2735,51 @@ public class Graph {
       return false;
     if (!node.tagging)
       return false;
-    float threshold = node.bullsEyeSize() < 1 ?
+    return _hits(node._bullsEyeShape, pixelX - projection._vector[0], pixelY - projection._vector[1], _bullsEyeThreshold(node));
+  }
+
+  /**
+   * Returns the side length, in pixels, of the cells of the {@link #indexing} grid. Default is 32.
+   *
+   * @see #setIndexingCellSize(int)
+   */
+  public int indexingCellSize() {
+    return _grid._cellSize;
+  }
+
+  /**
+   * Sets the side length, in pixels, of the cells of the {@link #indexing} grid. Smaller cells
+   * hold fewer candidates per picking query, but bullseyes overlap more of them. The grid is
+   * resized at the next {@link #render()}.
+   *
+   * @see #indexingCellSize()
+   */
+  public void setIndexingCellSize(int cellSize) {
+    if (cellSize < 1) {
+      System.out.println("Warning: indexing cell size should be positive. Nothing done!");
+      return;
+    }
+    _grid._cellSize = cellSize;
+    _grid._frame = -1;
+  }
+
+  /**
+   * Returns the {@code node} bullseye half size in pixels. Used by {@link #_tracks(Node, int, int, Vector)}.
+   */
+  protected float _bullsEyeThreshold(Node node) {
+    return node.bullsEyeSize() < 1 ?
         100 * node.bullsEyeSize() * node.scaling() * pixelToSceneRatio(node.position()) :
         node.bullsEyeSize() / 2;
-    return node._bullsEyeShape == Node.BullsEyeShape.SQUARE ?
-        ((Math.abs(pixelX - projection._vector[0]) < threshold) && (Math.abs(pixelY - projection._vector[1]) < threshold)) :
-        (float) Math.sqrt((float) Math.pow((projection._vector[0] - pixelX), 2.0) + (float) Math.pow((projection._vector[1] - pixelY), 2.0)) < threshold;
+  }
+
+  /**
+   * Returns whether or not the pixel lying at {@code (dx, dy)} from the projection of a bullseye
+   * having the given {@code shape} and half size {@code threshold} is inside of it.
+   */
+  protected static boolean _hits(Node.BullsEyeShape shape, float dx, float dy, float threshold) {
+    return shape == Node.BullsEyeShape.SQUARE ?
+        Math.abs(dx) < threshold && Math.abs(dy) < threshold :
+        (float) Math.sqrt(dx * dx + dy * dy) < threshold;
   }
 
   /**
@@ -2751,6 +2963,8 @@ public class Graph {
       _bind();
       _matrixHandler.pushMatrix();
       _displayHint();
+      if (indexing)
+        _grid.clear(width(), height());
     }
   }
 
@@ -2769,6 +2983,13 @@ public class Graph {
       throw new RuntimeException("Error: render() should be nested within a single openContext() / closeContext() call!");
     }
     if (_renderCount == 0) {
+      if (indexing && _grid.isBuilt())
+        for (Ray ray : _rays) {
+          removeTag(ray._tag);
+          Node node = _grid.query(ray._pixelX, ray._pixelY);
+          if (node != null)
+            tag(ray._tag, node);
+        }
       _rays.clear();
       _displayHUD();
       _matrixHandler.popMatrix();
@@ -2801,7 +3022,8 @@ public class Graph {
    * viewpoint, and calls {@link #closeContext()}.
    * <p>
    * Note that the rendering algorithm calls {@link #setVisit(Node, BiConsumer)} on each visited node
-   * (refer to the {@link Node} documentation).
+   * (refer to the {@link Node} documentation). When {@link #culling} is enabled, bounded subtrees
+   * (see {@link Node#isBounded()}) lying outside of the viewing volume are skipped.
    *
    * @see #setVisit(Node, BiConsumer)
    * @see Node#cull
@@ -2892,15 +3114,24 @@ public class Graph {
   }
 
   /**
-   * Used by the {@link #render(Node)} algorithm.
+   * Same as {@code _render(node, culling)}. Used by the {@link #render(Node)} algorithm.
    */
   protected void _render(Node node) {
+    _render(node, culling);
+  }
+
+  /**
+   * Used by the {@link #render(Node)} algorithm. The {@code test} param tells whether or not
+   * the node subtree should be tested against the viewing volume (see {@link #_cull(Node)}).
+   */
+  protected void _render(Node node, boolean test) {
     _matrixHandler.pushMatrix();
     _matrixHandler.applyTransformation(node);
     BiConsumer<Graph, Node> functor = _functors.get(node.id());
     if (functor != null)
       functor.accept(this, node);
-    if (!node.cull) {
+    Visibility visibility = test ? _cull(node) : Visibility.VISIBLE;
+    if (!node.cull && visibility != Visibility.INVISIBLE) {
       if (node._bypass != TimingHandler.frameCount) {
         _trackFrontBuffer(node);
         if (isOffscreen())
@@ -2921,7 +3152,7 @@ public class Graph {
         }
       }
       for (Node child : node.children())
-        _render(child);
+        _render(child, visibility == Visibility.SEMIVISIBLE);
     }
     _matrixHandler.popMatrix();
   }
@@ -2937,13 +3168,13 @@ public class Graph {
       _bbMatrixHandler.bind(projection(), view());
       if (_subtree == null) {
         for (Node node : _leadingNodes())
-          _renderBackBuffer(node);
+          _renderBackBuffer(node, culling);
       } else {
         if (_subtree.reference() != null) {
           _bbMatrixHandler.pushMatrix();
           _bbMatrixHandler.applyWorldTransformation(_subtree.reference());
         }
-        _renderBackBuffer(_subtree);
+        _renderBackBuffer(_subtree, culling);
         if (_subtree.reference() != null) {
           _bbMatrixHandler.popMatrix();
         }
@@ -2956,12 +3187,14 @@ public class Graph {
   }
 
   /**
-   * Used by the {@link #_renderBackBuffer()} algorithm.
+   * Used by the {@link #_renderBackBuffer()} algorithm. The {@code test} param tells whether or
+   * not the node subtree should be tested against the viewing volume (see {@link #_cull(Node)}).
    */
-  protected void _renderBackBuffer(Node node) {
+  protected void _renderBackBuffer(Node node, boolean test) {
     _bbMatrixHandler.pushMatrix();
     _bbMatrixHandler.applyTransformation(node);
-    if (!node.cull) {
+    Visibility visibility = test ? _cull(node) : Visibility.VISIBLE;
+    if (!node.cull && visibility != Visibility.INVISIBLE) {
       if (node._bypass != TimingHandler.frameCount) {
         if (_backPicking(node)) {
           _displayBackHint(node);
@@ -2970,11 +3203,24 @@ public class Graph {
           _trackBackBuffer(node);
       }
       for (Node child : node.children())
-        _renderBackBuffer(child);
+        _renderBackBuffer(child, visibility == Visibility.SEMIVISIBLE);
     }
     _bbMatrixHandler.popMatrix();
   }
 
+  /**
+   * Returns the {@link #ballVisibility(Vector, float)} of the ball enclosing the node subtree
+   * (see {@link Node#subtreeCenter()} and {@link Node#subtreeRadius()}). Subtrees which are not
+   * {@link Node#isBounded()} are reported as {@link Visibility#SEMIVISIBLE}, so that their
+   * descendants get tested. Used by the {@link #render(Node)} algorithm when {@link #culling}
+   * is enabled.
+   */
+  protected Visibility _cull(Node node) {
+    if (!node.isBounded())
+      return Visibility.SEMIVISIBLE;
+    return ballVisibility(node._subtreeCenter, node._subtreeRadius);
+  }
+
   protected void _emitBackBufferUniforms(Node node) {}
 
   /**
@@ -3013,6 +3259,14 @@ public class Graph {
    * Internally used by {@link #_render(Node)}.
    */
   protected void _trackFrontBuffer(Node node) {
+    if (indexing) {
+      if (_frontPicking(node)) {
+        Vector projection = screenLocation(node.position());
+        if (projection != null)
+          _grid.add(node, projection._vector[0], projection._vector[1], _bullsEyeThreshold(node));
+      }
+      return;
+    }
     if (_frontPicking(node) && !_rays.isEmpty()) {
       Vector projection = screenLocation(node.position());
       Iterator<Ray> it = _rays.iterator();
@@ -3028,7 +3282,7 @@ public class Graph {
   }
 
   /**
-   * Internally used by {@link #_render(Node)} and {@link #_renderBackBuffer(Node)}.
+   * Internally used by {@link #_render(Node)} and {@link #_renderBackBuffer(Node, boolean)}.
    */
   protected void _trackBackBuffer(Node node) {
     if (_backPicking(node) && !_rays.isEmpty()) {
@@ -4883,10 +5137,22 @@ public class Graph {
     return interpolator._splineWeight;
   }
 
-  protected List<Node> _path(Interpolator interpolator) {
+  /**
+   * Used to display the interpolator in {@link #_displayHint()}. Returns the
+   * interpolator path positions, packed as {@code x, y, z} triplets.
+   */
+  protected float[] _path(Interpolator interpolator) {
     return interpolator._path();
   }
 
+  /**
+   * Used to display the interpolator in {@link #_displayHint()}. Returns a node
+   * at the given path {@code sample}.
+   */
+  protected Node _pathNode(Interpolator interpolator, int sample) {
+    return interpolator._pathNode(sample);
+  }
+
 
   //IK SOLVERS
   /**
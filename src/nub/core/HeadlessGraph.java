@@ -0,0 +1,151 @@
+/***************************************************************************************
+ * nub
+ * Copyright (c) 2019-2020 Universidad Nacional de Colombia
+ * @author Jean Pierre Charalambos, https://github.com/VisualComputing
+ *
+ * All rights reserved. A simple, expressive, language-agnostic, and extensible visual
+ * computing library, featuring interaction, visualization and animation frameworks and
+ * supporting advanced (onscreen/offscreen) (real/non-real time) rendering techniques.
+ * Released under the terms of the GPLv3, refer to: http://www.gnu.org/licenses/gpl.html
+ ***************************************************************************************/
+
+package nub.core;
+
+import nub.primitives.Vector;
+import nub.timing.TimingHandler;
+
+/**
+ * A graph without rendering context, meant to run simulation workloads (e.g., IK
+ * retargeting or animation baking) at full CPU speed on machines having neither a display
+ * nor an OpenGL driver. It doesn't require Processing at runtime.
+ * <p>
+ * The {@link #render()} traversal only feeds the graph {@link MatrixHandler}, but it
+ * visits the nodes as usual, i.e., it calls the visit functors (see
+ * {@link #setVisit(Node, java.util.function.BiConsumer)}), culls the bounded subtrees lying
+ * outside of the viewing volume (see {@link #culling}) and tags the nodes picked at
+ * traversal time with their bullseye (see {@link #tag(String, int, int)}). Projection
+ * related queries, such as {@link #screenLocation(Vector)} or {@link #ballVisibility(Vector, float)},
+ * work as in any other graph, i.e., they use the matrices computed by the last traversal.
+ * <p>
+ * Since there's no Processing sketch calling it, the main event loop should call
+ * {@link #step()} (or {@link #step(long)} to follow a simulated clock) once per frame:
+ * <pre>
+ * {@code
+ * HeadlessGraph graph = new HeadlessGraph(800, 600);
+ * TimingHandler.enableFixedTimestep();
+ * // simulate ten seconds at 60 fps as fast as possible
+ * for (int i = 0; i < 600; i++) {
+ *   graph.step(1000000000L / 60);
+ * }
+ * }
+ * </pre>
+ *
+ * @see TimingHandler#handle(long)
+ */
+public class HeadlessGraph extends Graph {
+  /**
+   * Same as {@code this(width, height, Type.PERSPECTIVE)}.
+   *
+   * @see #HeadlessGraph(int, int, Type)
+   */
+  public HeadlessGraph(int width, int height) {
+    this(width, height, Type.PERSPECTIVE);
+  }
+
+  /**
+   * Same as {@code super(null, width, height, type)}. The graph matrices (see {@link #projectionView()})
+   * are computed right away, so that projection related queries work before the first {@link #step()}.
+   *
+   * @see Graph#Graph(Object, int, int, Type)
+   */
+  public HeadlessGraph(int width, int height, Type type) {
+    super(null, width, height, type);
+    _bind();
+  }
+
+  /**
+   * Same as {@code this(width, height, eye, Type.PERSPECTIVE)}.
+   *
+   * @see #HeadlessGraph(int, int, Node, Type)
+   */
+  public HeadlessGraph(int width, int height, Node eye) {
+    this(width, height, eye, Type.PERSPECTIVE);
+  }
+
+  /**
+   * Same as {@code super(null, width, height, eye, type)}, but computing the graph matrices right away.
+   *
+   * @see Graph#Graph(Object, int, int, Node, Type)
+   */
+  public HeadlessGraph(int width, int height, Node eye, Type type) {
+    super(null, width, height, eye, type);
+    _bind();
+  }
+
+  /**
+   * Same as {@code super(null, width, height, eye, zNear, zFar)}, but computing the graph matrices right away.
+   *
+   * @see Graph#Graph(Object, int, int, Node, float, float)
+   */
+  public HeadlessGraph(int width, int height, Node eye, float zNear, float zFar) {
+    super(null, width, height, eye, zNear, zFar);
+    _bind();
+  }
+
+  /**
+   * Handles the timing tasks (see {@link TimingHandler#handle()}). Same as the
+   * {@code pre()} method a Processing scene registers at its sketch.
+   *
+   * @see #pre(long)
+   * @see #step()
+   */
+  public void pre() {
+    if (_seededGraph)
+      TimingHandler.handle();
+  }
+
+  /**
+   * Handles the timing tasks taking {@code elapsedNanos} as the time elapsed since the
+   * previous frame (see {@link TimingHandler#handle(long)}).
+   *
+   * @see #pre()
+   * @see #step(long)
+   */
+  public void pre(long elapsedNanos) {
+    if (_seededGraph)
+      TimingHandler.handle(elapsedNanos);
+  }
+
+  /**
+   * Performs a frame: handles the timing tasks (see {@link #pre()}) and then renders the
+   * node tree (see {@link #render()}).
+   *
+   * @see #step(long)
+   */
+  public void step() {
+    pre();
+    render();
+  }
+
+  /**
+   * Performs a frame lasting {@code elapsedNanos} of simulated time: handles the timing
+   * tasks (see {@link #pre(long)}) and then renders the node tree (see {@link #render()}).
+   *
+   * @see #step()
+   */
+  public void step(long elapsedNanos) {
+    pre(elapsedNanos);
+    render();
+  }
+
+  /**
+   * Performs {@code frames} frames, each lasting {@code elapsedNanos} of simulated time,
+   * as fast as possible.
+   *
+   * @see #step(long)
+   */
+  public void run(int frames, long elapsedNanos) {
+    for (int i = 0; i < frames; i++)
+      step(elapsedNanos);
+  }
+}
@@ -16,7 +16,9 @@ import nub.primitives.Vector;
 import nub.timing.Task;
 import nub.timing.TimingHandler;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
@@ -90,6 +92,7 @@ public class Interpolator {
     protected Node _node;
     protected int _hint;
     protected int _cacheHint;
+    protected int _index;
 
     KeyFrame(Node node, float time) {
       this(node, node.hint(), time);
@@ -102,6 +105,7 @@ public class Interpolator {
       _time = time;
       if (isHintEnabled(SPLINE) && _hint != _cacheHint)
         _node._mask = _hint;
+      _register();
     }
 
     protected KeyFrame(KeyFrame other) {
@@ -109,6 +113,41 @@ public class Interpolator {
       this._node = other._node.get();
       this._hint = other._hint;
       this._cacheHint = other._cacheHint;
+      _register();
+    }
+
+    /**
+     * Internal use. Registers the key-frame at its node so that it gets notified when
+     * the node is modified. See {@link Node#_modified()}. The node only keeps a weak
+     * reference to the key-frame, so that discarding the interpolator doesn't leak it.
+     */
+    protected void _register() {
+      if (_node._keyFrames == null)
+        _node._keyFrames = new ArrayList<WeakReference<KeyFrame>>(1);
+      _node._keyFrames.add(new WeakReference<KeyFrame>(this));
+    }
+
+    /**
+     * Internal use. Unregisters the key-frame from its node.
+     */
+    protected void _unregister() {
+      if (_node._keyFrames != null) {
+        _node._keyFrames.removeIf(reference -> reference.get() == null || reference.get() == this);
+        if (_node._keyFrames.isEmpty())
+          _node._keyFrames = null;
+      }
+    }
+
+    /**
+     * Internal use. Called by {@link Node#_modified()}. Adds the key-frame to the range of
+     * key-frames to be updated by {@link #_checkValidity()}.
+     */
+    protected void _modified() {
+      _modifications++;
+      if (_index < _dirtyFrom)
+        _dirtyFrom = _index;
+      if (_index > _dirtyTo)
+        _dirtyTo = _index;
     }
 
     public KeyFrame get() {
@@ -163,14 +202,26 @@ public class Interpolator {
     }
   }
 
-  protected long _lastUpdate;
   // Attention: We should go like this: protected Map<Float, Node> _list;
   // but Java doesn't allow to iterate backwards a map
   protected List<KeyFrame> _list;
   public static int maxSteps = 30;
-  protected ListIterator<KeyFrame> _backwards;
-  protected ListIterator<KeyFrame> _forwards;
-  protected List<Node> _path;
+  // Key-frame times, binary searched by _updateCurrentKeyFrameForTime(), and indices of the
+  // key-frames enclosing the current time
+  protected float[] _times;
+  protected int _backwards;
+  protected int _forwards;
+  // Spline coefficients of the segment starting at each key-frame (see _updateSplineCache(int))
+  protected float[] _coefficients;
+  protected boolean[] _coefficientsAreValid;
+  // Sampled path (see _updatePath()): position (3), orientation (4) and magnitude (1) per sample
+  protected float[] _pathPositions;
+  protected float[] _pathOrientations;
+  protected float[] _pathMagnitudes;
+  protected int _pathSteps;
+  protected Node _pathNode;
+  protected Vector _position1, _position2;
+  protected Quaternion _orientation1, _orientation2, _squad1, _squad2;
 
   // Main node
   protected Node _node;
@@ -187,8 +238,11 @@ public class Interpolator {
   protected boolean _pathIsValid;
   protected boolean _valuesAreValid;
   protected boolean _currentKeyFrameValid;
-  protected boolean _splineCacheIsValid;
-  protected Vector _vector1, _vector2;
+  // Ranges of modified key-frames and of path segments to be recomputed
+  protected int _dirtyFrom, _dirtyTo;
+  protected int _pathFrom, _pathTo;
+  // Incremented whenever a key-frame is added, removed or modified (see Animator)
+  protected long _modifications;
 
   // Visual hint
   protected int _mask;
@@ -208,7 +262,7 @@ public class Interpolator {
    */
   public Interpolator(Node node) {
     _list = new ArrayList<KeyFrame>();
-    _path = new ArrayList<Node>();
+    _initPath();
     setNode(node);
     _t = 0.0f;
     _speed = 1.0f;
@@ -217,9 +271,7 @@ public class Interpolator {
     _pathIsValid = false;
     _valuesAreValid = false;
     _currentKeyFrameValid = false;
-    _splineCacheIsValid = false;
-    _backwards = _list.listIterator();
-    _forwards = _list.listIterator();
+    _updateTimes();
     // hints
     // magenta (color(255, 0, 255)) encoded as a processing int rgb color
     _splineStroke = -65281;
@@ -243,10 +295,11 @@ public class Interpolator {
   protected Interpolator(Interpolator other) {
     this._list = new ArrayList<KeyFrame>();
     for (KeyFrame element : other._list) {
-      KeyFrame keyFrame = element.get();
+      KeyFrame keyFrame = new KeyFrame(element);
+      keyFrame._index = this._list.size();
       this._list.add(keyFrame);
     }
-    this._path = new ArrayList<Node>();
+    this._initPath();
     this.setNode(other.node());
     this._t = other._t;
     this._speed = other._speed;
@@ -257,9 +310,7 @@ public class Interpolator {
     this._pathIsValid = false;
     this._valuesAreValid = false;
     this._currentKeyFrameValid = false;
-    this._splineCacheIsValid = false;
-    this._backwards = _list.listIterator();
-    this._forwards = _list.listIterator();
+    this._updateTimes();
     // hints
     this._splineStroke = other._splineStroke;
     this._splineWeight = other._splineWeight;
@@ -275,10 +326,22 @@ public class Interpolator {
   }
 
   /**
-   * Internal use. Called by {@link #_checkValidity()}.
+   * Internal use. Allocates the (empty) path and the scratch variables used to sample it.
    */
-  protected long _lastUpdate() {
-    return _lastUpdate;
+  protected void _initPath() {
+    _pathPositions = new float[0];
+    _pathOrientations = new float[0];
+    _pathMagnitudes = new float[0];
+    _position1 = new Vector();
+    _position2 = new Vector();
+    _orientation1 = new Quaternion();
+    _orientation2 = new Quaternion();
+    _squad1 = new Quaternion();
+    _squad2 = new Quaternion();
+    _dirtyFrom = Integer.MAX_VALUE;
+    _dirtyTo = -1;
+    _pathFrom = Integer.MAX_VALUE;
+    _pathTo = -1;
   }
 
   /**
@@ -291,6 +354,7 @@ public class Interpolator {
     if (_node != node) {
       _node = node;
       _pathIsValid = false;
+      _modifications++;
     }
   }
 
@@ -336,7 +400,9 @@ public class Interpolator {
    * {@link Task#period()} * {@link #speed()} which is is especially useful
    * for benchmarking or movie creation (constant number of snapshots). Note
    * that if {@code speed = 1} then {@link #time()} will be matched
-   * during the interpolation (provided that your main loop is fast enough).
+   * during the interpolation (provided that your main loop is fast enough,
+   * or that the timing handler runs in fixed timestep mode, see
+   * {@link nub.timing.TimingHandler#enableFixedTimestep(boolean)}).
    * <p>
    * Note that {@link Task#stop()} is called when {@link #time()} reaches
    * {@link #firstTime()} or {@link #lastTime()}, unless {@link #isRecurrent()}
@@ -677,7 +743,17 @@ public class Interpolator {
       return;
     if (node == null)
       return;
-    _list.add(new KeyFrame(node, hint, _list.isEmpty() ? time : _list.get(_list.size() - 1)._time + time));
+    KeyFrame keyFrame = new KeyFrame(node, hint, _list.isEmpty() ? time : _list.get(_list.size() - 1)._time + time);
+    keyFrame._index = _list.size();
+    _list.add(keyFrame);
+    if (_times.length < _list.size()) {
+      int capacity = Math.max(2 * _times.length, 8);
+      _times = Arrays.copyOf(_times, capacity);
+      _coefficients = Arrays.copyOf(_coefficients, 6 * capacity);
+      _coefficientsAreValid = Arrays.copyOf(_coefficientsAreValid, capacity);
+    }
+    _times[keyFrame._index] = keyFrame._time;
+    _modifications++;
     _valuesAreValid = false;
     _pathIsValid = false;
     _currentKeyFrameValid = false;
@@ -711,6 +787,7 @@ public class Interpolator {
       index--;
     KeyFrame keyFrame = _list.get(index);
     keyFrame._node._mask = keyFrame._cacheHint;
+    keyFrame._unregister();
     _valuesAreValid = false;
     _pathIsValid = false;
     _currentKeyFrameValid = false;
@@ -719,6 +796,10 @@ public class Interpolator {
       _task.stop();
     }
     _list.remove(index);
+    for (int i = index; i < _list.size(); i++)
+      _list.get(i)._index = i;
+    _updateTimes();
+    _modifications++;
     setTime(firstTime());
     if (rerun /* && _list.size() > 1 */)
       _task.run();
@@ -735,14 +816,30 @@ public class Interpolator {
     ListIterator<KeyFrame> it = _list.listIterator();
     while (it.hasNext()) {
       KeyFrame keyFrame = it.next();
+      keyFrame._unregister();
       Graph.prune(keyFrame._node);
     }
     _list.clear();
+    _updateTimes();
+    _modifications++;
     _pathIsValid = false;
     _valuesAreValid = false;
     _currentKeyFrameValid = false;
   }
 
+  /**
+   * Internal use. Rebuilds the key-frame {@link #_times} array and discards the cached
+   * spline coefficients. Called after the key-frame list is structurally modified.
+   */
+  protected void _updateTimes() {
+    int capacity = Math.max(_list.size(), 8);
+    _times = new float[capacity];
+    _coefficients = new float[6 * capacity];
+    _coefficientsAreValid = new boolean[capacity];
+    for (int i = 0; i < _list.size(); i++)
+      _times[i] = _list.get(i)._time;
+  }
+
   /**
    * Interpolate {@link #node()} at time {@code time} (expressed in seconds).
    * {@link #time()} is set to {@code time} and {@link #node()} is set accordingly.
@@ -758,192 +855,268 @@ public class Interpolator {
     if (!_valuesAreValid)
       _updateModifiedKeyFrames();
     _updateCurrentKeyFrameForTime(time);
-    if (!_splineCacheIsValid)
-      _updateSplineCache();
+    KeyFrame keyFrame1 = _list.get(_backwards);
+    KeyFrame keyFrame2 = _list.get(_forwards);
     float alpha;
-    float dt = _list.get(_forwards.nextIndex())._time - _list.get(_backwards.nextIndex())._time;
+    float dt = _times[_forwards] - _times[_backwards];
     if (dt == 0)
       alpha = 0.0f;
     else
-      alpha = (time - _list.get(_backwards.nextIndex())._time) / dt;
-    Vector pos = Vector.add(_list.get(_backwards.nextIndex())._translation(), Vector.multiply(
-        Vector.add(_list.get(_backwards.nextIndex())._tangentVector,
-            Vector.multiply(Vector.add(_vector1, Vector.multiply(_vector2, alpha)), alpha)), alpha));
-    float mag = Vector.lerp(_list.get(_backwards.nextIndex())._scaling(),
-        _list.get(_forwards.nextIndex())._scaling(), alpha);
-    Quaternion q = Quaternion.squad(_list.get(_backwards.nextIndex())._rotation(),
-        _list.get(_backwards.nextIndex())._tangentQuaternion,
-        _list.get(_forwards.nextIndex())._tangentQuaternion,
-        _list.get(_forwards.nextIndex())._rotation(), alpha);
+      alpha = (time - _times[_backwards]) / dt;
+    Vector pos = keyFrame1._translation().get();
+    if (_backwards != _forwards) {
+      if (!_coefficientsAreValid[_backwards])
+        _updateSplineCache(_backwards);
+      // pos = translation + alpha * (tangent + alpha * (vector1 + alpha * vector2))
+      int offset = 6 * _backwards;
+      for (int i = 0; i < 3; i++)
+        pos._vector[i] += alpha * (keyFrame1._tangentVector._vector[i] + alpha * (_coefficients[offset + i] + alpha * _coefficients[offset + 3 + i]));
+    }
+    float mag = Vector.lerp(keyFrame1._scaling(), keyFrame2._scaling(), alpha);
+    Quaternion q = Quaternion.squad(keyFrame1._rotation(), keyFrame1._tangentQuaternion,
+        keyFrame2._tangentQuaternion, keyFrame2._rotation(), alpha);
     node().setTranslation(pos);
     node().setRotation(q);
     node().setScaling(mag);
   }
 
   /**
-   * Internal use.
+   * Internal use. Finds the key-frames enclosing {@code time}. Consecutive times within
+   * the current segment (as when the interpolation is running) are resolved in constant
+   * time, and arbitrary ones by a binary search on the key-frame {@link #_times}.
    */
   protected void _updateCurrentKeyFrameForTime(float time) {
-    // TODO: Special case for loops when closed path is implemented !!
-    if (!_currentKeyFrameValid)
-      _backwards = _list.listIterator();
-    while (_list.get(_backwards.nextIndex())._time > time) {
-      _currentKeyFrameValid = false;
-      if (!_backwards.hasPrevious())
-        break;
-      _backwards.previous();
-    }
-    if (!_currentKeyFrameValid)
-      _forwards = _list.listIterator(_backwards.nextIndex());
-    while (_list.get(_forwards.nextIndex())._time < time) {
-      _currentKeyFrameValid = false;
-      if (!_forwards.hasNext())
-        break;
-      _forwards.next();
-    }
-    if (!_currentKeyFrameValid) {
-      _backwards = _list.listIterator(_forwards.nextIndex());
-      if ((_backwards.hasPrevious()) && (time < _list.get(_forwards.nextIndex())._time))
-        _backwards.previous();
-      _currentKeyFrameValid = true;
-      _splineCacheIsValid = false;
-    }
+    if (_currentKeyFrameValid && _times[_backwards] < time && time < _times[_forwards])
+      return;
+    int size = _list.size();
+    int index = Arrays.binarySearch(_times, 0, size, time);
+    _forwards = index >= 0 ? index : Math.min(-index - 1, size - 1);
+    _backwards = _forwards > 0 && time < _times[_forwards] ? _forwards - 1 : _forwards;
+    _currentKeyFrameValid = true;
   }
 
   /**
-   * Internal use. Used by {@link #interpolate(float)}.
+   * Internal use. Computes the spline coefficients of the {@code segment} joining the
+   * {@code segment} key-frame with the next one. Used by {@link #interpolate(float)}.
    */
-  protected void _updateSplineCache() {
-    Vector deltaP = Vector.subtract(_list.get(_forwards.nextIndex())._translation(),
-        _list.get(_backwards.nextIndex())._translation());
-    _vector1 = Vector.add(Vector.multiply(deltaP, 3.0f), Vector.multiply(_list.get(_backwards.nextIndex())._tangentVector, (-2.0f)));
-    _vector1 = Vector.subtract(_vector1, _list.get(_forwards.nextIndex())._tangentVector);
-    _vector2 = Vector.add(Vector.multiply(deltaP, (-2.0f)), _list.get(_backwards.nextIndex())._tangentVector);
-    _vector2 = Vector.add(_vector2, _list.get(_forwards.nextIndex())._tangentVector);
-    _splineCacheIsValid = true;
+  protected void _updateSplineCache(int segment) {
+    KeyFrame keyFrame1 = _list.get(segment);
+    KeyFrame keyFrame2 = _list.get(segment + 1);
+    Vector translation1 = keyFrame1._translation();
+    Vector translation2 = keyFrame2._translation();
+    int offset = 6 * segment;
+    for (int i = 0; i < 3; i++) {
+      float deltaP = translation2._vector[i] - translation1._vector[i];
+      _coefficients[offset + i] = 3.0f * deltaP - 2.0f * keyFrame1._tangentVector._vector[i] - keyFrame2._tangentVector._vector[i];
+      _coefficients[offset + 3 + i] = -2.0f * deltaP + keyFrame1._tangentVector._vector[i] + keyFrame2._tangentVector._vector[i];
+    }
+    _coefficientsAreValid[segment] = true;
   }
 
   /**
    * Computes a path from {@link #keyFrames()} for the interpolator to be drawn.
    * <p>
-   * Calls {@link #_updatePath()} and then returns a list of nodes defining the
-   * interpolator path (which is different than that of {@link #keyFrames()}).
+   * Calls {@link #_updatePath()} and then returns the world positions of the path
+   * samples (which are different than those of {@link #keyFrames()}), packed as
+   * {@code x, y, z} triplets. Use {@link #_pathNode(int)} to get a node at a given sample.
    * <p>
    * Use it in your interpolator path drawing routine.
    */
-  protected List<Node> _path() {
+  protected float[] _path() {
     _updatePath();
-    return _path;
+    return _pathPositions;
+  }
+
+  /**
+   * Returns a (reused) detached node having the position, orientation and magnitude of
+   * the given path {@code sample}, and the visual hint the interpolator {@link #STEPS}
+   * hint defines for it. Good for drawing. Call it after {@link #_path()}.
+   */
+  protected Node _pathNode(int sample) {
+    if (_pathNode == null)
+      _pathNode = Node.detach(new Vector(), new Quaternion(), 1);
+    _pathNode.translation().set(_pathPositions[3 * sample], _pathPositions[3 * sample + 1], _pathPositions[3 * sample + 2]);
+    System.arraycopy(_pathOrientations, 4 * sample, _pathNode.rotation()._quaternion, 0, 4);
+    _pathNode.setScaling(_pathMagnitudes[sample]);
+    _pathNode._mask = sample % maxSteps != 0 ? _stepsHint : 0;
+    if (_pathNode.isHintEnabled(Node.SHAPE) && (node()._imrShape != null || node()._rmrShape != null)) {
+      _pathNode.setShape(node());
+    }
+    _pathNode._torusFaces = node()._torusFaces;
+    _pathNode._torusColor = node()._torusColor;
+    _pathNode._bullsEyeStroke = node()._bullsEyeStroke;
+    _pathNode._cameraStroke = node()._cameraStroke;
+    _pathNode._axesLength = node()._axesLength;
+    return _pathNode;
   }
 
   /**
-   * Internal use. Call {@link #_checkValidity()} and if path is not valid recomputes it.
+   * Internal use. Call {@link #_checkValidity()} and then recomputes the path, either
+   * entirely if it's not valid, or only the segments adjacent to the recently modified
+   * key-frames.
    */
   protected void _updatePath() {
     _checkValidity();
+    if (_pathSteps != maxSteps)
+      _pathIsValid = false;
     if (!_pathIsValid) {
-      _path.clear();
-      if (_list.isEmpty())
-        return;
-      if (!_valuesAreValid)
+      if (!_list.isEmpty() && !_valuesAreValid)
         _updateModifiedKeyFrames();
-      if (_list.get(0) == _list.get(_list.size() - 1)) {
-        _path.add(Node.detach(_list.get(0)._node.position(), _list.get(0)._node.orientation(), _list.get(0)._node.magnitude()));
-      }
-      else {
-        KeyFrame[] keyFrames = new KeyFrame[4];
-        keyFrames[0] = _list.get(0);
-        keyFrames[1] = keyFrames[0];
-        int index = 1;
-        keyFrames[2] = (index < _list.size()) ? _list.get(index) : null;
-        index++;
-        keyFrames[3] = (index < _list.size()) ? _list.get(index) : null;
-        while (keyFrames[2] != null) {
-          Vector pdiff = Vector.subtract(keyFrames[2]._node.position(), keyFrames[1]._node.position());
-          Vector pvec1 = Vector.add(Vector.multiply(pdiff, 3.0f), Vector.multiply(keyFrames[1]._tangentVector(), (-2.0f)));
-          pvec1 = Vector.subtract(pvec1, keyFrames[2]._tangentVector());
-          Vector pvec2 = Vector.add(Vector.multiply(pdiff, (-2.0f)), keyFrames[1]._tangentVector());
-          pvec2 = Vector.add(pvec2, keyFrames[2]._tangentVector());
-          for (int step = 0; step < maxSteps; ++step) {
-            float alpha = step / (float) maxSteps;
-            Node node = Node.detach(
-                Vector.add(keyFrames[1]._node.position(), Vector.multiply(Vector.add(keyFrames[1]._tangentVector(), Vector.multiply(Vector.add(pvec1, Vector.multiply(pvec2, alpha)), alpha)), alpha)),
-                Quaternion.squad(keyFrames[1]._node.orientation(), keyFrames[1]._tangentQuaternion(), keyFrames[2]._tangentQuaternion(), keyFrames[2]._node.orientation(), alpha),
-                Vector.lerp(keyFrames[1]._node.magnitude(), keyFrames[2]._node.magnitude(), alpha));
-            if (step % Interpolator.maxSteps != 0) {
-              node._mask = _stepsHint;
-              if (node.isHintEnabled(Node.SHAPE) && (node()._imrShape != null || node()._rmrShape != null)) {
-                node.setShape(node());
-              }
-            }
-            node._torusFaces = node()._torusFaces;
-            node._torusColor = node()._torusColor;
-            node._bullsEyeStroke = node()._bullsEyeStroke;
-            node._cameraStroke = node()._cameraStroke;
-            node._axesLength = node()._axesLength;
-            _path.add(node);
-          }
-          // Shift
-          keyFrames[0] = keyFrames[1];
-          keyFrames[1] = keyFrames[2];
-          keyFrames[2] = keyFrames[3];
-          index++;
-          keyFrames[3] = (index < _list.size()) ? _list.get(index) : null;
-        }
-        // Add last KeyFrame
-        _path.add(Node.detach(keyFrames[1]._node.position(), keyFrames[1]._node.orientation(), keyFrames[1]._node.magnitude()));
+      int samples = _list.isEmpty() ? 0 : (_list.size() - 1) * maxSteps + 1;
+      if (_pathMagnitudes.length != samples) {
+        _pathPositions = new float[3 * samples];
+        _pathOrientations = new float[4 * samples];
+        _pathMagnitudes = new float[samples];
       }
+      _pathSteps = maxSteps;
+      _pathFrom = 0;
+      _pathTo = Math.max(_list.size() - 2, 0);
       _pathIsValid = true;
     }
+    if (_list.isEmpty())
+      return;
+    int to = Math.min(_pathTo, _list.size() - 2);
+    for (int segment = Math.max(_pathFrom, 0); segment <= to; segment++)
+      _updateSegment(segment);
+    if (_pathFrom <= _pathTo) {
+      // Last key-frame
+      KeyFrame keyFrame = _list.get(_list.size() - 1);
+      _sample(_pathMagnitudes.length - 1, keyFrame._node.position(_position1), keyFrame._node.orientation(_orientation1), keyFrame._node.magnitude());
+    }
+    _pathFrom = Integer.MAX_VALUE;
+    _pathTo = -1;
   }
 
   /**
-   * Internal use.
+   * Internal use. Samples the path {@code segment} going from the {@code segment} key-frame
+   * to the next one, using {@link #maxSteps} samples.
    */
-  protected void _updateModifiedKeyFrames() {
-    KeyFrame keyFrame;
-    KeyFrame prev = _list.get(0);
-    keyFrame = _list.get(0);
-    int index = 1;
-    while (keyFrame != null) {
-      KeyFrame next = (index < _list.size()) ? _list.get(index) : null;
-      index++;
-      if (next != null) {
-        // Interpolate using the shortest path between two quaternions
-        // See: https://stackoverflow.com/questions/2886606/flipping-issue-when-interpolating-rotations-using-quaternions
-        if (Quaternion.dot(next._node.rotation(), keyFrame._node.rotation()) < 0) {
-          // change sign
-          next._node.rotation().negate();
-        }
-        keyFrame._tangentVector = Vector.multiply(Vector.subtract(next._translation(), prev._translation()), 0.5f);
-        keyFrame._tangentQuaternion = Quaternion.squadTangent(prev._rotation(), keyFrame._rotation(), next._rotation());
-      } else {
-        keyFrame._tangentVector = Vector.multiply(Vector.subtract(keyFrame._translation(), prev._translation()), 0.5f);
-        keyFrame._tangentQuaternion = Quaternion.squadTangent(prev._rotation(), keyFrame._rotation(), keyFrame._rotation());
+  protected void _updateSegment(int segment) {
+    KeyFrame keyFrame1 = _list.get(segment);
+    KeyFrame keyFrame2 = _list.get(segment + 1);
+    Vector position1 = keyFrame1._node.position(_position1);
+    Vector position2 = keyFrame2._node.position(_position2);
+    Quaternion orientation1 = keyFrame1._node.orientation(_orientation1);
+    Quaternion orientation2 = keyFrame2._node.orientation(_orientation2);
+    float magnitude1 = keyFrame1._node.magnitude();
+    float magnitude2 = keyFrame2._node.magnitude();
+    Vector tangent1 = keyFrame1._tangentVector();
+    Vector tangent2 = keyFrame2._tangentVector();
+    Quaternion tangentQuaternion1 = keyFrame1._tangentQuaternion();
+    Quaternion tangentQuaternion2 = keyFrame2._tangentQuaternion();
+    int offset = segment * maxSteps;
+    for (int step = 0; step < maxSteps; ++step) {
+      float alpha = step / (float) maxSteps;
+      for (int i = 0; i < 3; i++) {
+        float pdiff = position2._vector[i] - position1._vector[i];
+        float pvec1 = 3.0f * pdiff - 2.0f * tangent1._vector[i] - tangent2._vector[i];
+        float pvec2 = -2.0f * pdiff + tangent1._vector[i] + tangent2._vector[i];
+        _pathPositions[3 * (offset + step) + i] = position1._vector[i] + alpha * (tangent1._vector[i] + alpha * (pvec1 + alpha * pvec2));
       }
-      prev = keyFrame;
-      keyFrame = next;
+      // squad, see Quaternion.squad(a, tgA, tgB, b, t)
+      Quaternion.slerp(orientation1, orientation2, alpha, true, _squad1);
+      Quaternion.slerp(tangentQuaternion1, tangentQuaternion2, alpha, false, _squad2);
+      Quaternion.slerp(_squad1, _squad2, 2.0f * alpha * (1.0f - alpha), false, _squad1);
+      System.arraycopy(_squad1._quaternion, 0, _pathOrientations, 4 * (offset + step), 4);
+      _pathMagnitudes[offset + step] = Vector.lerp(magnitude1, magnitude2, alpha);
     }
+  }
+
+  /**
+   * Internal use. Sets the path {@code sample}.
+   */
+  protected void _sample(int sample, Vector position, Quaternion orientation, float magnitude) {
+    System.arraycopy(position._vector, 0, _pathPositions, 3 * sample, 3);
+    System.arraycopy(orientation._quaternion, 0, _pathOrientations, 4 * sample, 4);
+    _pathMagnitudes[sample] = magnitude;
+  }
+
+  /**
+   * Internal use. Updates the tangents of all the key-frames.
+   */
+  protected void _updateModifiedKeyFrames() {
+    for (int i = 1; i < _list.size(); i++)
+      _flip(i);
+    for (int i = 0; i < _list.size(); i++)
+      _updateTangents(i);
     _valuesAreValid = true;
+    // Discard the notifications sent by _flip
+    _dirtyFrom = Integer.MAX_VALUE;
+    _dirtyTo = -1;
   }
 
   /**
-   * Internal use. Checks if any of the keyframes defining the path was recently modified.
+   * Internal use. Updates the key-frames in {@code [from..to]}, together with the tangents
+   * of their neighbours. Returns the index of the last key-frame actually modified, which
+   * may be greater than {@code to} if the rotation sign of the following key-frames needs
+   * to be changed.
    */
-  protected void _checkValidity() {
-    boolean modified = false;
-    for (KeyFrame keyFrame : _list) {
-      if (keyFrame._node.lastUpdate() > _lastUpdate()) {
-        modified = true;
-        break;
-      }
-    }
-    if (modified) {
-      _lastUpdate = TimingHandler.frameCount;
-      _valuesAreValid = false;
-      _pathIsValid = false;
-      _splineCacheIsValid = false;
+  protected int _updateModifiedKeyFrames(int from, int to) {
+    int last = Math.min(to, _list.size() - 1);
+    for (int i = Math.max(from, 1); i <= last + 1 && i < _list.size(); i++)
+      if (_flip(i))
+        last = Math.max(last, i);
+    for (int i = Math.max(from - 1, 0); i <= Math.min(last + 1, _list.size() - 1); i++)
+      _updateTangents(i);
+    // Discard the notifications sent by _flip
+    _dirtyFrom = Integer.MAX_VALUE;
+    _dirtyTo = -1;
+    return last;
+  }
+
+  /**
+   * Internal use. Changes the sign of the {@code index} key-frame rotation so that the
+   * interpolation from the previous one follows the shortest path. Returns {@code true}
+   * if the sign was changed.
+   */
+  protected boolean _flip(int index) {
+    // Interpolate using the shortest path between two quaternions
+    // See: https://stackoverflow.com/questions/2886606/flipping-issue-when-interpolating-rotations-using-quaternions
+    KeyFrame keyFrame = _list.get(index);
+    if (Quaternion.dot(keyFrame._node.rotation(), _list.get(index - 1)._node.rotation()) < 0) {
+      // change sign
+      keyFrame._node.rotation().negate();
+      keyFrame._node._modified();
+      return true;
     }
+    return false;
+  }
+
+  /**
+   * Internal use. Updates the {@code index} key-frame tangents from its neighbours.
+   */
+  protected void _updateTangents(int index) {
+    KeyFrame keyFrame = _list.get(index);
+    KeyFrame prev = _list.get(Math.max(index - 1, 0));
+    KeyFrame next = _list.get(Math.min(index + 1, _list.size() - 1));
+    keyFrame._tangentVector = Vector.multiply(Vector.subtract(next._translation(), prev._translation()), 0.5f);
+    keyFrame._tangentQuaternion = Quaternion.squadTangent(prev._rotation(), keyFrame._rotation(), next._rotation());
+    _coefficientsAreValid[index] = false;
+    if (index > 0)
+      _coefficientsAreValid[index - 1] = false;
+  }
+
+  /**
+   * Internal use. Checks if any of the keyframes defining the path was recently modified,
+   * which is a constant time query since the key-frames are notified by their nodes (see
+   * {@link Node#_modified()}). If so, only the tangents and path segments adjacent to the
+   * modified key-frames are invalidated.
+   */
+  protected void _checkValidity() {
+    if (_dirtyFrom > _dirtyTo)
+      return;
+    int from = _dirtyFrom;
+    int to = _dirtyTo;
+    _dirtyFrom = Integer.MAX_VALUE;
+    _dirtyTo = -1;
+    if (!_valuesAreValid)
+      return;
+    to = _updateModifiedKeyFrames(from, to);
+    // segment i joins key-frames i and i + 1, and its shape depends on the tangents of both
+    if (from - 2 < _pathFrom)
+      _pathFrom = from - 2;
+    if (to + 1 > _pathTo)
+      _pathTo = to + 1;
   }
 
   /**
@@ -18,6 +18,7 @@ import nub.primitives.Vector;
 import nub.timing.Task;
 import nub.timing.TimingHandler;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -142,6 +143,23 @@ public class Node {
   protected Node _reference;
   protected Constraint _constraint;
   protected long _lastUpdate;
+  // Interpolator key-frames defined by this node, notified by _modified(). They're weakly
+  // referenced so that the node doesn't keep discarded interpolators alive
+  protected List<WeakReference<Interpolator.KeyFrame>> _keyFrames;
+
+  // Cached world transformation, see _updateCache()
+  protected Vector _position;
+  protected Quaternion _orientation, _inverseOrientation;
+  protected float _magnitude;
+  protected Matrix _worldMatrix;
+  protected boolean _cacheIsValid, _worldMatrixIsValid;
+
+  // Bounding volume hierarchy, see _updateSubtreeBall()
+  protected Vector _boundingCenter;
+  protected float _boundingRadius;
+  protected Vector _subtreeCenter;
+  protected float _subtreeRadius;
+  protected boolean _subtreeBallIsValid;
 
   // Tagging & Precision
   // TODO I think this should be modeled as an enum with bullseye SPACE
@@ -158,6 +176,8 @@ public class Node {
 
   // tree
   protected List<Node> _children;
+  // maintained by Graph._register and Graph._unregister
+  protected boolean _reachable;
   public boolean cull;
   public boolean tagging;
 
@@ -313,7 +333,14 @@ public class Node {
     // /*
     // TODO deprecated
     // hack (refer to Node.get())
-    _imrShape = this::graphics;
+    // an anonymous class (instead of this::graphics) is used, since a method reference would
+    // require loading the Processing PGraphics class, even when rendering headless
+    _imrShape = new Consumer<processing.core.PGraphics>() {
+      @Override
+      public void accept(processing.core.PGraphics pGraphics) {
+        graphics(pGraphics);
+      }
+    };
     if (!getClass().equals(Node.class))
       enableHint(SHAPE);
     // */
@@ -324,12 +351,20 @@ public class Node {
    * (attached nodes) and {@link #detach(Constraint, Vector, Quaternion, float)} (detached nodes).
    */
   protected Node(Constraint constraint, Vector translation, Quaternion rotation, float scaling) {
+    _position = new Vector();
+    _orientation = new Quaternion();
+    _inverseOrientation = new Quaternion();
+    _worldMatrix = new Matrix();
+    _boundingCenter = new Vector();
+    _boundingRadius = -1;
+    _subtreeCenter = new Vector();
+    _subtreeRadius = -1;
     setConstraint(constraint);
     setTranslation(translation);
     setRotation(rotation);
     setScaling(scaling);
     enablePicking(CAMERA | AXES | HUD | SHAPE | BOUNDS | BULLSEYE | TORUS | CONSTRAINT | BONE);
-    _id = ++_counter;
+    _id = _nextId();
     // unlikely but theoretically possible
     if (_id == 16777216)
       throw new RuntimeException("Maximum node instances reached. Exiting now!");
@@ -360,6 +395,14 @@ public class Node {
     setInteraction(this::interact);
   }
 
+  /**
+   * Returns a new node id. Synchronized since detached nodes may be instantiated
+   * concurrently, e.g., by the IK solvers run in a {@link nub.ik.solver.SolverPool}.
+   */
+  protected static synchronized int _nextId() {
+    return ++_counter;
+  }
+
   // From here only Java constructors
 
   public Node(Consumer<processing.core.PGraphics> shape) {
@@ -610,14 +653,60 @@ public class Node {
 
   /**
    * Internal use. Automatically call by all methods which change the node state.
+   * Also invalidates the cached world transformation of the node and its descendants
+   * (see {@link #_updateCache()}) and notifies the interpolator key-frames they define.
    */
   protected void _modified() {
     _lastUpdate = TimingHandler.frameCount;
+    _cacheIsValid = false;
+    _worldMatrixIsValid = false;
+    _invalidateSubtreeBall();
+    if (_keyFrames != null) {
+      Iterator<WeakReference<Interpolator.KeyFrame>> iterator = _keyFrames.iterator();
+      while (iterator.hasNext()) {
+        Interpolator.KeyFrame keyFrame = iterator.next().get();
+        if (keyFrame == null)
+          iterator.remove();
+        else
+          keyFrame._modified();
+      }
+      if (_keyFrames.isEmpty())
+        _keyFrames = null;
+    }
     if (_children != null)
       for (Node child : _children)
         child._modified();
   }
 
+  /**
+   * Internal use. Lazily recomputes the cached world {@link #position()}, {@link #orientation()}
+   * and {@link #magnitude()} of the node, from those of its {@link #reference()} (which are
+   * recursively updated first, only if they were invalidated by {@link #_modified()}).
+   * <p>
+   * Hence, repeated world queries on a node whose hierarchy hasn't changed cost O(1)
+   * instead of O(depth).
+   */
+  protected void _updateCache() {
+    if (_cacheIsValid)
+      return;
+    Node reference = reference();
+    if (reference == null) {
+      _position.set(translation());
+      _orientation.set(rotation());
+      _magnitude = scaling();
+    } else {
+      reference._updateCache();
+      // position = reference position + reference orientation * (reference magnitude * translation)
+      Vector.multiply(translation(), reference._magnitude, _position);
+      reference._orientation.rotate(_position, _position);
+      _position.add(reference._position);
+      Quaternion.compose(reference._orientation, rotation(), _orientation);
+      _magnitude = reference._magnitude * scaling();
+    }
+    _orientation.inverse(_inverseOrientation);
+    _cacheIsValid = true;
+  }
+
   // reference
 
   /**
@@ -750,6 +839,7 @@ public class Node {
           reference()._removeChild(this);
         _reference = node;// reference() returns now the new value
         reference()._addChild(this);
+        _modified();
       }
       return;
     }
@@ -757,6 +847,8 @@ public class Node {
     if (reference() == node) {
       _restorePath(reference(), this);
       _restoredTasks(this);
+      if (!_reachable)
+        Graph._register(this);
       return;
     }
     // 2. else re-parenting
@@ -767,9 +859,15 @@ public class Node {
       Graph._removeLeadingNode(this);
     // finally assign the reference node
     _reference = node;// reference() returns now the new value
-    // 2b. after assigning new reference node
-    _restorePath(reference(), this);
+    // 2b. after assigning new reference node (which cannot have this as a child yet)
+    if (reference() != null) {
+      reference()._appendChild(this);
+      _restorePath(reference().reference(), reference());
+    } else
+      _restorePath(null, this);
     _restoredTasks(this);
+    if (!_reachable)
+      Graph._register(this);
     _modified();
   }
 
@@ -843,6 +941,15 @@ public class Node {
       return false;
     if (_hasChild(node))
       return false;
+    return _appendChild(node);
+  }
+
+  /**
+   * Same as {@link #_addChild(Node)} but without checking whether or not {@code node}
+   * is already a child, which turns re-parenting into a constant time operation.
+   */
+  protected boolean _appendChild(Node node) {
+    _invalidateSubtreeBall();
     return _children.add(node);
   }
 
@@ -855,6 +962,7 @@ public class Node {
     while (it.hasNext()) {
       if (it.next() == node) {
         it.remove();
+        _invalidateSubtreeBall();
         result = true;
         break;
       }
@@ -1003,6 +1111,149 @@ public class Node {
     return _bullsEyeSize;
   }
 
+  // BOUNDING VOLUME
+
+  /**
+   * Same as {@code setBoundingBall(new Vector(), radius)}.
+   *
+   * @see #setBoundingBall(Vector, float)
+   */
+  public void setBoundingBall(float radius) {
+    setBoundingBall(new Vector(), radius);
+  }
+
+  /**
+   * Sets the node bounding ball, defined by its {@code center} and {@code radius}, both
+   * expressed in the node coordinate system. It should enclose all the geometry the node
+   * draws (see {@link #hint()}).
+   * <p>
+   * The bounding volumes of the node and its descendants are merged into a single world
+   * ball (see {@link #subtreeCenter()} and {@link #subtreeRadius()}) which is used by the
+   * {@link Graph#render()} algorithm to skip the whole subtree when it lies outside of the
+   * viewing volume (see {@link Graph#culling}). A negative {@code radius} resets the node
+   * bounding volume (see {@link #resetBoundingVolume()}).
+   *
+   * @see #setBoundingBox(Vector, Vector)
+   * @see #isBounded()
+   */
+  public void setBoundingBall(Vector center, float radius) {
+    _boundingCenter.set(center);
+    _boundingRadius = radius < 0 ? -1 : radius;
+    _invalidateSubtreeBall();
+  }
+
+  /**
+   * Sets the node bounding volume as the axis aligned box defined by its two opposite
+   * {@code corner1} and {@code corner2} corners, both expressed in the node coordinate
+   * system. The box is internally stored as its circumscribed ball.
+   *
+   * @see #setBoundingBall(Vector, float)
+   */
+  public void setBoundingBox(Vector corner1, Vector corner2) {
+    setBoundingBall(Vector.multiply(Vector.add(corner1, corner2), 0.5f), Vector.distance(corner1, corner2) / 2);
+  }
+
+  /**
+   * Resets the node bounding volume. Subtrees having a node without bounding volume are
+   * never culled by the {@link Graph#render()} algorithm.
+   *
+   * @see #setBoundingBall(Vector, float)
+   * @see #isBounded()
+   */
+  public void resetBoundingVolume() {
+    setBoundingBall(new Vector(), -1);
+  }
+
+  /**
+   * Returns {@code true} if the node and all its descendants have a bounding volume
+   * and {@code false} otherwise.
+   *
+   * @see #setBoundingBall(Vector, float)
+   * @see #setBoundingBox(Vector, Vector)
+   */
+  public boolean isBounded() {
+    _updateSubtreeBall();
+    return _subtreeRadius >= 0;
+  }
+
+  /**
+   * Returns the world center of the ball enclosing the bounding volumes of the node and
+   * all its descendants, or {@code null} if the subtree is not {@link #isBounded()}.
+   *
+   * @see #subtreeRadius()
+   */
+  public Vector subtreeCenter() {
+    return isBounded() ? _subtreeCenter.get() : null;
+  }
+
+  /**
+   * Returns the world radius of the ball enclosing the bounding volumes of the node and
+   * all its descendants, or {@code -1} if the subtree is not {@link #isBounded()}.
+   *
+   * @see #subtreeCenter()
+   */
+  public float subtreeRadius() {
+    _updateSubtreeBall();
+    return _subtreeRadius;
+  }
+
+  /**
+   * Internal use. Invalidates the subtree ball of this node and of all its ancestors.
+   * Since a node subtree ball is only valid when those of its descendants are, the
+   * ancestors walk stops at the first already invalid node.
+   */
+  protected void _invalidateSubtreeBall() {
+    for (Node node = this; node != null && node._subtreeBallIsValid; node = node.reference())
+      node._subtreeBallIsValid = false;
+  }
+
+  /**
+   * Internal use. Lazily recomputes the world ball enclosing the bounding volume of this node
+   * and the subtree balls of its children (which are recursively updated first, only if they
+   * were invalidated).
+   */
+  protected void _updateSubtreeBall() {
+    if (_subtreeBallIsValid)
+      return;
+    _subtreeBallIsValid = true;
+    _subtreeRadius = -1;
+    if (_boundingRadius < 0)
+      return;
+    _updateCache();
+    worldLocation(_boundingCenter, _subtreeCenter);
+    float radius = _boundingRadius * Math.abs(_magnitude);
+    for (Node child : _children) {
+      child._updateSubtreeBall();
+      if (child._subtreeRadius < 0)
+        return;
+      radius = _merge(_subtreeCenter, radius, child._subtreeCenter, child._subtreeRadius);
+    }
+    _subtreeRadius = radius;
+  }
+
+  /**
+   * Merges the {@code (center1, radius1)} ball with the {@code (center2, radius2)} one.
+   * The resulting ball center is stored in {@code center1} and its radius is returned.
+   */
+  protected static float _merge(Vector center1, float radius1, Vector center2, float radius2) {
+    float dx = center2._vector[0] - center1._vector[0];
+    float dy = center2._vector[1] - center1._vector[1];
+    float dz = center2._vector[2] - center1._vector[2];
+    float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    if (distance + radius2 <= radius1)
+      return radius1;
+    if (distance + radius1 <= radius2) {
+      center1.set(center2);
+      return radius2;
+    }
+    float radius = (distance + radius1 + radius2) / 2;
+    float amount = (radius - radius1) / distance;
+    center1._vector[0] += dx * amount;
+    center1._vector[1] += dy * amount;
+    center1._vector[2] += dz * amount;
+    return radius;
+  }
+
   // CONSTRAINT
 
   /**
@@ -1043,6 +1294,11 @@ public class Node {
    * <p>
    * Use {@link #position()} to get the result in world coordinates. These two values are
    * identical when the {@link #reference()} is {@code null} (default).
+   * <p>
+   * The returned vector is the node internal one. Don't modify it in place (e.g., with
+   * {@code translation().setX(x)}) since the cached world {@link #position()}, {@link #orientation()}
+   * and {@link #worldMatrix()} of the node and its descendants wouldn't be updated. Use
+   * {@link #setTranslation(Vector)} instead or, internally, call {@link #_modified()} after the change.
    *
    * @see #setTranslation(Vector)
    */
@@ -1149,7 +1405,22 @@ public class Node {
    * @see #translation()
    */
   public Vector position() {
-    return worldLocation(new Vector());
+    return position(null);
+  }
+
+  /**
+   * Stores the node {@link #position()} into {@code target} which is then returned.
+   * If {@code target} is null a new vector is created.
+   *
+   * @see #position()
+   * @see #orientation(Quaternion)
+   */
+  public Vector position(Vector target) {
+    _updateCache();
+    if (target == null)
+      return _position.get();
+    target.set(_position);
+    return target;
   }
 
   /**
@@ -1199,6 +1470,11 @@ public class Node {
    * <p>
    * Use {@link #orientation()} to get the result in world coordinates. These two values
    * are identical when the {@link #reference()} is {@code null} (default).
+   * <p>
+   * The returned quaternion is the node internal one. Don't modify it in place (e.g., with
+   * {@code rotation().normalize()}) since the cached world {@link #position()}, {@link #orientation()}
+   * and {@link #worldMatrix()} of the node and its descendants wouldn't be updated. Use
+   * {@link #setRotation(Quaternion)} instead or, internally, call {@link #_modified()} after the change.
    *
    * @see #setRotation(Quaternion)
    */
@@ -1421,7 +1697,22 @@ public class Node {
    * @see #rotation()
    */
   public Quaternion orientation() {
-    return worldDisplacement(new Quaternion());
+    return orientation(null);
+  }
+
+  /**
+   * Stores the node {@link #orientation()} into {@code target} which is then returned.
+   * If {@code target} is null a new quaternion is created.
+   *
+   * @see #orientation()
+   * @see #position(Vector)
+   */
+  public Quaternion orientation(Quaternion target) {
+    _updateCache();
+    if (target == null)
+      return _orientation.get();
+    target.set(_orientation, false);
+    return target;
   }
 
   /**
@@ -1529,7 +1820,8 @@ public class Node {
    * @see Graph#projection()
    */
   public float magnitude() {
-    return reference() != null ? reference().magnitude() * scaling() : scaling();
+    _updateCache();
+    return _magnitude;
   }
 
   /**
@@ -1907,10 +2199,22 @@ public class Node {
    * @see #viewInverse()
    */
   public Matrix worldMatrix() {
-    if (reference() != null)
-      return detach().matrix();
-    else
+    if (reference() == null)
       return matrix();
+    if (!_worldMatrixIsValid) {
+      _updateCache();
+      _orientation.matrix(_worldMatrix);
+      _worldMatrix._matrix[12] = _position._vector[0];
+      _worldMatrix._matrix[13] = _position._vector[1];
+      _worldMatrix._matrix[14] = _position._vector[2];
+      // scale the upper left 3x3 (rotation) block
+      if (_magnitude != 1)
+        for (int i = 0; i < 11; i++)
+          if (i % 4 != 3)
+            _worldMatrix._matrix[i] *= _magnitude;
+      _worldMatrixIsValid = true;
+    }
+    return _worldMatrix.get();
   }
 
   /**
@@ -1929,7 +2233,8 @@ public class Node {
    * @see #set(Node)
    */
   public Matrix view() {
-    return Matrix.view(position(), orientation());
+    _updateCache();
+    return Matrix.view(_position, _orientation);
   }
 
   /**
@@ -1944,7 +2249,12 @@ public class Node {
    * @see #set(Node)
    */
   public Matrix viewInverse() {
-    return Node.detach(position(), orientation(), 1).matrix();
+    _updateCache();
+    Matrix matrix = _orientation.matrix();
+    matrix._matrix[12] = _position._vector[0];
+    matrix._matrix[13] = _position._vector[1];
+    matrix._matrix[14] = _position._vector[2];
+    return matrix;
   }
 
   /**
@@ -2192,7 +2502,27 @@ public class Node {
    * @see #worldDisplacement(Vector)
    */
   public Quaternion displacement(Quaternion quaternion, Node node) {
-    return this == node ? quaternion : _displacement(reference() != null ? reference().displacement(quaternion, node) : node == null ? quaternion : node.worldDisplacement(quaternion));
+    return this == node ? quaternion : displacement(quaternion, node, null);
+  }
+
+  /**
+   * Same as {@link #displacement(Quaternion, Node)}, but stores the result into {@code target}
+   * which is then returned. If {@code target} is null a new quaternion is created. Note that
+   * {@code target} may be {@code quaternion}.
+   *
+   * @see #displacement(Quaternion, Node)
+   * @see #worldDisplacement(Quaternion, Quaternion)
+   */
+  public Quaternion displacement(Quaternion quaternion, Node node, Quaternion target) {
+    if (this == node) {
+      if (target == null)
+        return quaternion.get();
+      target.set(quaternion, false);
+      return target;
+    }
+    Quaternion world = node == null ? quaternion : node.worldDisplacement(quaternion, target);
+    _updateCache();
+    return Quaternion.compose(_inverseOrientation, world, target);
   }
 
   /**
@@ -2208,13 +2538,20 @@ public class Node {
    * @see #displacement(Quaternion, Node)
    */
   public Quaternion worldDisplacement(Quaternion quaternion) {
-    Node node = this;
-    Quaternion result = quaternion;
-    while (node != null) {
-      result = node._referenceDisplacement(result);
-      node = node.reference();
-    }
-    return result;
+    return worldDisplacement(quaternion, null);
+  }
+
+  /**
+   * Same as {@link #worldDisplacement(Quaternion)}, but stores the result into {@code target}
+   * which is then returned. If {@code target} is null a new quaternion is created. Note that
+   * {@code target} may be {@code quaternion}.
+   *
+   * @see #worldDisplacement(Quaternion)
+   * @see #displacement(Quaternion, Node, Quaternion)
+   */
+  public Quaternion worldDisplacement(Quaternion quaternion, Quaternion target) {
+    _updateCache();
+    return Quaternion.compose(_orientation, quaternion, target);
   }
 
   /**
@@ -2227,7 +2564,7 @@ public class Node {
    * @see #displacement(Vector)
    */
   protected Quaternion _displacement(Quaternion quaternion) {
-    return Quaternion.compose(rotation().inverse(), quaternion);
+    return Quaternion.compose(rotation().inverse(), quaternion, null);
   }
 
   /**
@@ -2270,7 +2607,29 @@ public class Node {
    * @see #worldDisplacement(Vector)
    */
   public Vector displacement(Vector vector, Node node) {
-    return this == node ? vector : _displacement(reference() != null ? reference().displacement(vector, node) : node == null ? vector : node.worldDisplacement(vector));
+    return this == node ? vector : displacement(vector, node, null);
+  }
+
+  /**
+   * Same as {@link #displacement(Vector, Node)}, but stores the result into {@code target}
+   * which is then returned. If {@code target} is null a new vector is created. Note that
+   * {@code target} may be {@code vector}.
+   *
+   * @see #displacement(Vector, Node)
+   * @see #worldDisplacement(Vector, Vector)
+   */
+  public Vector displacement(Vector vector, Node node, Vector target) {
+    if (this == node) {
+      if (target == null)
+        return vector.get();
+      target.set(vector);
+      return target;
+    }
+    Vector world = node == null ? vector : node.worldDisplacement(vector, target);
+    _updateCache();
+    target = _orientation.inverseRotate(world, target);
+    target.divide(_magnitude);
+    return target;
   }
 
   /**
@@ -2284,13 +2643,21 @@ public class Node {
    * @see #displacement(Vector, Node)
    */
   public Vector worldDisplacement(Vector vector) {
-    Node node = this;
-    Vector result = vector;
-    while (node != null) {
-      result = node._referenceDisplacement(result);
-      node = node.reference();
-    }
-    return result;
+    return worldDisplacement(vector, null);
+  }
+
+  /**
+   * Same as {@link #worldDisplacement(Vector)}, but stores the result into {@code target}
+   * which is then returned. If {@code target} is null a new vector is created. Note that
+   * {@code target} may be {@code vector}.
+   *
+   * @see #worldDisplacement(Vector)
+   * @see #displacement(Vector, Node, Vector)
+   */
+  public Vector worldDisplacement(Vector vector, Vector target) {
+    _updateCache();
+    target = Vector.multiply(vector, _magnitude, target);
+    return _orientation.rotate(target, target);
   }
 
   /**
@@ -2302,7 +2669,9 @@ public class Node {
    * @see #displacement(Vector)
    */
   protected Vector _displacement(Vector vector) {
-    return Vector.divide(rotation().inverseRotate(vector), scaling());
+    Vector result = rotation().inverseRotate(vector);
+    result.divide(scaling());
+    return result;
   }
 
   /**
@@ -2314,7 +2683,8 @@ public class Node {
    * @see #worldDisplacement(Vector)
    */
   protected Vector _referenceDisplacement(Vector vector) {
-    return rotation().rotate(Vector.multiply(vector, scaling()));
+    Vector result = Vector.multiply(vector, scaling());
+    return rotation().rotate(result, result);
   }
 
   // POINT CONVERSION
@@ -2360,7 +2730,30 @@ public class Node {
    * @see #worldLocation(Vector)
    */
   public Vector location(Vector vector, Node node) {
-    return this == node ? vector : _location(reference() != null ? reference().location(vector, node) : node == null ? vector : node.worldLocation(vector));
+    return this == node ? vector : location(vector, node, null);
+  }
+
+  /**
+   * Same as {@link #location(Vector, Node)}, but stores the result into {@code target}
+   * which is then returned. If {@code target} is null a new vector is created. Note that
+   * {@code target} may be {@code vector}.
+   *
+   * @see #location(Vector, Node)
+   * @see #worldLocation(Vector, Vector)
+   */
+  public Vector location(Vector vector, Node node, Vector target) {
+    if (this == node) {
+      if (target == null)
+        return vector.get();
+      target.set(vector);
+      return target;
+    }
+    Vector world = node == null ? vector : node.worldLocation(vector, target);
+    _updateCache();
+    target = Vector.subtract(world, _position, target);
+    _orientation.inverseRotate(target, target);
+    target.divide(_magnitude);
+    return target;
   }
 
   /**
@@ -2374,13 +2767,23 @@ public class Node {
    * @see #location(Vector, Node)
    */
   public Vector worldLocation(Vector vector) {
-    Node node = this;
-    Vector result = vector;
-    while (node != null) {
-      result = node._referenceLocation(result);
-      node = node.reference();
-    }
-    return result;
+    return worldLocation(vector, null);
+  }
+
+  /**
+   * Same as {@link #worldLocation(Vector)}, but stores the result into {@code target}
+   * which is then returned. If {@code target} is null a new vector is created. Note that
+   * {@code target} may be {@code vector}.
+   *
+   * @see #worldLocation(Vector)
+   * @see #location(Vector, Node, Vector)
+   */
+  public Vector worldLocation(Vector vector, Vector target) {
+    _updateCache();
+    target = Vector.multiply(vector, _magnitude, target);
+    _orientation.rotate(target, target);
+    target.add(_position);
+    return target;
   }
 
   /**
@@ -2392,7 +2795,10 @@ public class Node {
    * @see #location(Vector)
    */
   protected Vector _location(Vector vector) {
-    return Vector.divide(rotation().inverseRotate(Vector.subtract(vector, translation())), scaling());
+    Vector result = Vector.subtract(vector, translation());
+    rotation().inverseRotate(result, result);
+    result.divide(scaling());
+    return result;
   }
 
   /**
@@ -2404,7 +2810,10 @@ public class Node {
    * @see #worldLocation(Vector)
    */
   protected Vector _referenceLocation(Vector vector) {
-    return Vector.add(rotation().rotate(Vector.multiply(vector, scaling())), translation());
+    Vector result = Vector.multiply(vector, scaling());
+    rotation().rotate(result, result);
+    result.add(translation());
+    return result;
   }
 
   // Attached nodes
@@ -38,6 +38,7 @@ public class BallAndSocket extends ConeConstraint {
 
   public void setDown(float down) {
     this._down = down;
+    _invalidateLookupTable();
   }
 
   public float up() {
@@ -46,6 +47,7 @@ public class BallAndSocket extends ConeConstraint {
 
   public void setUp(float up) {
     this._up = up;
+    _invalidateLookupTable();
   }
 
   public float left() {
@@ -54,6 +56,7 @@ public class BallAndSocket extends ConeConstraint {
 
   public void setLeft(float left) {
     this._left = left;
+    _invalidateLookupTable();
   }
 
   public float right() {
@@ -62,6 +65,7 @@ public class BallAndSocket extends ConeConstraint {
 
   public void setRight(float right) {
     this._right = right;
+    _invalidateLookupTable();
   }
 
   public BallAndSocket() {
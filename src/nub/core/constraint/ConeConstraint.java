@@ -48,6 +48,12 @@ import processing.core.PGraphics;
  *
  * Equation (5) is required to compare if the rotation applied to the node satisfies the constraint, and if that is not the case
  * a clamping action must be performed.
+ *
+ * Since the swing clamping ({@link #apply(Vector)}) is queried on every joint at every IK iteration, it may be precomputed
+ * into a cube map of {@link #lookupTableResolution()}^2 texels per face (see {@link #enableLookupTable(boolean)}) storing
+ * whether each texel direction is reachable together with its clamped direction. Queries falling into four reachable
+ * texels are left untouched, those falling into four unreachable (and close) clamped directions are bilinearly
+ * interpolated, and only those near the boundary of the cone are computed with {@link #apply(Vector)}.
  */
 
 public abstract class ConeConstraint extends Constraint {
@@ -60,6 +66,12 @@ public abstract class ConeConstraint extends Constraint {
   protected AxisPlaneConstraint.Type transConstraintType = AxisPlaneConstraint.Type.FORBIDDEN;
   protected Vector transConstraintDir = new Vector();
 
+  // Lookup table: clamped direction (3) and reachability (1) per cube map texel. It's volatile
+  // since it's lazily published (fully filled) by _lookupTable() and read without locking
+  protected boolean _lookupTable;
+  protected int _resolution = 64;
+  protected volatile float[] _table;
+
 
   public Quaternion restRotation() {
     return _restRotation;
@@ -133,6 +145,176 @@ public abstract class ConeConstraint extends Constraint {
 
   public abstract Vector apply(Vector target);
 
+  /**
+   * Returns whether or not the swing clamping is looked up from a precomputed table.
+   *
+   * @see #enableLookupTable(boolean)
+   */
+  public boolean isLookupTableEnabled() {
+    return _lookupTable;
+  }
+
+  /**
+   * Same as {@code enableLookupTable(true)}.
+   *
+   * @see #enableLookupTable(boolean)
+   */
+  public void enableLookupTable() {
+    enableLookupTable(true);
+  }
+
+  /**
+   * Same as {@code enableLookupTable(false)}.
+   *
+   * @see #enableLookupTable(boolean)
+   */
+  public void disableLookupTable() {
+    enableLookupTable(false);
+  }
+
+  /**
+   * Enables or disables looking up the swing clamping of {@link #constrainRotation(Quaternion, Node)}
+   * from a cube map which is lazily computed with {@link #apply(Vector)}. Note that {@link #apply(Vector)}
+   * itself is always computed exactly.
+   *
+   * @see #setLookupTableResolution(int)
+   */
+  public void enableLookupTable(boolean enable) {
+    _lookupTable = enable;
+  }
+
+  /**
+   * Returns the number of texels along each side of the lookup table cube map faces. Default is 64.
+   *
+   * @see #enableLookupTable(boolean)
+   */
+  public int lookupTableResolution() {
+    return _resolution;
+  }
+
+  /**
+   * Sets the number of texels along each side of the lookup table cube map faces. Higher resolutions
+   * fall back to {@link #apply(Vector)} less often, at the expense of memory ({@code 96 * resolution^2}
+   * bytes).
+   *
+   * @see #enableLookupTable(boolean)
+   */
+  public void setLookupTableResolution(int resolution) {
+    if (resolution < 2) {
+      System.out.println("Warning: lookup table resolution should be greater than 1. Nothing done!");
+      return;
+    }
+    _resolution = resolution;
+    _invalidateLookupTable();
+  }
+
+  /**
+   * Internal use. Discards the lookup table. Should be called whenever the constraint boundaries change.
+   */
+  protected synchronized void _invalidateLookupTable() {
+    _table = null;
+  }
+
+  /**
+   * Internal use. Computes the lookup table, i.e., {@link #apply(Vector)} on the direction of each texel center.
+   */
+  protected synchronized float[] _lookupTable() {
+    float[] result = _table;
+    if (result != null)
+      return result;
+    int n = _resolution;
+    float[] table = new float[24 * n * n];
+    Vector direction = new Vector();
+    for (int face = 0; face < 6; face++)
+      for (int j = 0; j < n; j++)
+        for (int i = 0; i < n; i++) {
+          _direction(face, 2 * (i + 0.5f) / n - 1, 2 * (j + 0.5f) / n - 1, direction);
+          Vector clamped = apply(direction.get());
+          clamped.normalize();
+          int texel = 4 * ((face * n + j) * n + i);
+          System.arraycopy(clamped._vector, 0, table, texel, 3);
+          table[texel + 3] = Vector.dot(clamped, direction) > 0.999999f ? 1 : 0;
+        }
+    _table = table;
+    return table;
+  }
+
+  /**
+   * Internal use. Stores the normalized direction of the cube map {@code face} point {@code (u, v)} into {@code target}.
+   * Faces are ordered as +x, -x, +y, -y, +z, -z.
+   */
+  protected static void _direction(int face, float u, float v, Vector target) {
+    switch (face) {
+      case 0: target.set(1, v, -u); break;
+      case 1: target.set(-1, v, u); break;
+      case 2: target.set(u, 1, -v); break;
+      case 3: target.set(u, -1, v); break;
+      case 4: target.set(u, v, 1); break;
+      default: target.set(-u, v, -1); break;
+    }
+    target.normalize();
+  }
+
+  /**
+   * Same as {@link #apply(Vector)}, but looked up from the precomputed table when it's enabled.
+   *
+   * @see #enableLookupTable(boolean)
+   */
+  protected Vector _apply(Vector target) {
+    if (!_lookupTable)
+      return apply(target);
+    float x = target._vector[0], y = target._vector[1], z = target._vector[2];
+    float ax = Math.abs(x), ay = Math.abs(y), az = Math.abs(z);
+    int face;
+    float u, v;
+    if (ax >= ay && ax >= az) {
+      if (ax == 0)
+        return apply(target);
+      face = x > 0 ? 0 : 1;
+      u = (x > 0 ? -z : z) / ax;
+      v = y / ax;
+    } else if (ay >= az) {
+      face = y > 0 ? 2 : 3;
+      u = x / ay;
+      v = (y > 0 ? -z : z) / ay;
+    } else {
+      face = z > 0 ? 4 : 5;
+      u = (z > 0 ? x : -x) / az;
+      v = y / az;
+    }
+    float[] table = _table;
+    if (table == null)
+      table = _lookupTable();
+    int n = (int) Math.round(Math.sqrt(table.length / 24));
+    float fu = (u + 1) * 0.5f * n - 0.5f;
+    float fv = (v + 1) * 0.5f * n - 0.5f;
+    // the half texel wide face borders aren't enclosed by four texels
+    if (fu < 0 || fu > n - 1 || fv < 0 || fv > n - 1)
+      return apply(target);
+    int i0 = Math.min((int) fu, n - 2), j0 = Math.min((int) fv, n - 2);
+    fu -= i0;
+    fv -= j0;
+    int t00 = 4 * ((face * n + j0) * n + i0), t10 = t00 + 4, t01 = t00 + 4 * n, t11 = t01 + 4;
+    float inside = table[t00 + 3] + table[t10 + 3] + table[t01 + 3] + table[t11 + 3];
+    if (inside == 4)
+      return target.get();
+    if (inside == 0) {
+      // four unreachable texels: bilinear refinement of their clamped directions, provided they're close
+      float d1 = table[t00] * table[t10] + table[t00 + 1] * table[t10 + 1] + table[t00 + 2] * table[t10 + 2];
+      float d2 = table[t00] * table[t01] + table[t00 + 1] * table[t01 + 1] + table[t00 + 2] * table[t01 + 2];
+      float d3 = table[t00] * table[t11] + table[t00 + 1] * table[t11 + 1] + table[t00 + 2] * table[t11 + 2];
+      if (d1 > 0.9995f && d2 > 0.9995f && d3 > 0.9995f) {
+        Vector result = new Vector();
+        for (int k = 0; k < 3; k++)
+          result._vector[k] = (1 - fv) * ((1 - fu) * table[t00 + k] + fu * table[t10 + k]) + fv * ((1 - fu) * table[t01 + k] + fu * table[t11 + k]);
+        result.normalize();
+        result.multiply(target.magnitude());
+        return result;
+      }
+    }
+    return apply(target);
+  }
+
   @Override
   public Vector constrainTranslation(Vector translation, Node node) {
     Vector res = new Vector(translation._vector[0], translation._vector[1], translation._vector[2]);
@@ -256,7 +438,7 @@ public abstract class ConeConstraint extends Constraint {
 
       //3. Constraint swing - Here we must work on rest space
       Vector new_twist_dir = delta_rest.rotate(z_axis);
-      Vector new_twist_constrained_dir = apply(new_twist_dir);
+      Vector new_twist_constrained_dir = _apply(new_twist_dir);
       Quaternion swing_wrt_rest_constrained = new Quaternion(z_axis, new_twist_constrained_dir);
       //4. fix twist
       Quaternion diff = Quaternion.compose(delta_rest, swing_wrt_rest_constrained.inverse());
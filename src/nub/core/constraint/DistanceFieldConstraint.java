@@ -15,9 +15,32 @@ import nub.core.Node;
 import nub.primitives.Quaternion;
 import nub.primitives.Vector;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
 //TODO : Update
 
 /**
+ * A distance field constraint keeps the rotation of a node within the region of the Euler
+ * angles space where a sampled distance field is less than {@link #epsilon()}.
+ * <p>
+ * The field is stored as a flat {@code float} buffer of {@code width * height * depth}
+ * samples (i.e., the {@code [i][j][k]} sample is found at {@code (i * height + j) * depth + k}),
+ * covering the {@code [0, 2 PI)} range of each Euler angle. It's sampled with (periodic)
+ * trilinear interpolation, and rotations lying outside the region are projected back onto
+ * it along the analytic gradient of the interpolated field, without allocating.
+ * <p>
+ * Large fields may be saved (see {@link #save(String)}) and then loaded lazily (see
+ * {@link #DistanceFieldConstraint(String)}): the file is memory-mapped the first time the
+ * constraint is applied, so that the field is never copied into the heap.
+ * <p>
  * Created by sebchaparr on 20/06/18.
  */
 public class DistanceFieldConstraint extends Constraint {
@@ -27,104 +50,291 @@ public class DistanceFieldConstraint extends Constraint {
    * look for the reference frame (local constraint), if no initial position is
    * set a Quat() is assumed as rest position
    * */
+  public static final int MAGIC = 0x4E554244, VERSION = 1;
+  protected static final float TWO_PI = (float) (2 * Math.PI);
 
-  protected float[][][] _distance_field;
+  // volatile, since it's lazily published by _load() after the dimensions are set
+  protected volatile FloatBuffer _field;
+  protected int _width, _height, _depth;
+  protected String _path;
   protected float epsilon = 0.3f;
 
+  // Scratch objects used to apply the constraint without allocating. They are kept per thread,
+  // so that a constraint may be shared among solvers running concurrently.
+  protected static class Scratch {
+    protected Vector _angles = new Vector();
+    protected float[] _gradient = new float[3];
+    protected Quaternion _rotation = new Quaternion(), _inverse = new Quaternion();
+  }
+
+  protected static final ThreadLocal<Scratch> _scratch = ThreadLocal.withInitial(Scratch::new);
+
+  /**
+   * Same as {@code this(flatten(distance_field), width, height, depth)}.
+   */
   public DistanceFieldConstraint(float[][][] distance_field) {
-    this._distance_field = distance_field;
+    this(_flatten(distance_field), distance_field.length, distance_field[0].length, distance_field[0][0].length);
   }
 
-  public float[][][] distance_field() {
-    return _distance_field;
+  /**
+   * Defines the constraint from the {@code field} samples, stored as described in the class documentation.
+   */
+  public DistanceFieldConstraint(float[] field, int width, int height, int depth) {
+    if (field.length != width * height * depth)
+      throw new IllegalArgumentException("Distance field size should be width * height * depth");
+    _field = FloatBuffer.wrap(field);
+    _width = width;
+    _height = height;
+    _depth = depth;
   }
 
-  @Override
-  public Quaternion constrainRotation(Quaternion rotation, Node frame) {
-    Quaternion desired = Quaternion.compose(frame.rotation(), rotation);
-    return Quaternion.compose(frame.rotation().inverse(), apply(desired));
+  /**
+   * Defines the constraint from the distance field file at {@code path} (see {@link #save(String)}),
+   * which is memory-mapped the first time the field is accessed.
+   */
+  public DistanceFieldConstraint(String path) {
+    _path = path;
   }
 
-  @Override
-  public Vector constrainTranslation(Vector translation, Node frame) {
-    return new Vector(0, 0, 0);
+  protected static float[] _flatten(float[][][] distance_field) {
+    int width = distance_field.length, height = distance_field[0].length, depth = distance_field[0][0].length;
+    float[] field = new float[width * height * depth];
+    for (int i = 0; i < width; i++)
+      for (int j = 0; j < height; j++)
+        System.arraycopy(distance_field[i][j], 0, field, (i * height + j) * depth, depth);
+    return field;
   }
 
-  public Quaternion apply(Quaternion desired) {
-    Vector euler = desired.eulerAngles();
-    //Get distance in distance field
-    if (euler.x() < 0) euler.setX((float) (euler.x() + 2 * Math.PI));
-    if (euler.y() < 0) euler.setY((float) (euler.y() + 2 * Math.PI));
-    if (euler.z() < 0) euler.setZ((float) (euler.z() + 2 * Math.PI));
+  /**
+   * Internal use. Returns the field, mapping its file first if it hasn't been loaded yet. The
+   * field dimensions should only be read after calling it.
+   */
+  protected FloatBuffer _field() {
+    FloatBuffer field = _field;
+    if (field == null) {
+      _load();
+      field = _field;
+    }
+    return field;
+  }
 
+  protected synchronized void _load() {
+    if (_field != null)
+      return;
+    try (FileChannel channel = FileChannel.open(Paths.get(_path), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+        throw new IOException("Not a distance field: " + _path);
+      _width = buffer.getInt();
+      _height = buffer.getInt();
+      _depth = buffer.getInt();
+      ByteBuffer block = buffer.slice();
+      block.order(ByteOrder.LITTLE_ENDIAN);
+      FloatBuffer field = block.asFloatBuffer();
+      field.limit(_width * _height * _depth);
+      _field = field;
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
 
-    int i = (int) (euler.x() / (2 * Math.PI) * (_distance_field.length - 0.5));
-    int j = (int) (euler.y() / (2 * Math.PI) * (_distance_field[0].length - 0.5));
-    int k = (int) (euler.z() / (2 * Math.PI) * (_distance_field[0][0].length - 0.5));
-    if (_distance_field[i][j][k] < epsilon) {
-      return desired;
+  /**
+   * Saves the field into the (little-endian) file at {@code path} as: {@code int magic ('NUBD')},
+   * {@code int version}, {@code int width, height, depth} and the {@code float} samples.
+   *
+   * @see #DistanceFieldConstraint(String)
+   */
+  public void save(String path) throws IOException {
+    FloatBuffer field = _field();
+    int size = _width * _height * _depth;
+    ByteBuffer buffer = ByteBuffer.allocate(20 + 4 * size).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(_width).putInt(_height).putInt(_depth);
+    for (int i = 0; i < size; i++)
+      buffer.putFloat(field.get(i));
+    buffer.flip();
+    try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining())
+        channel.write(buffer);
     }
-    //save as attributes
-    float di = (float) (_distance_field.length / (2 * Math.PI));
-    float dj = (float) (_distance_field[0].length / (2 * Math.PI));
-    float dk = (float) (_distance_field[0][0].length / (2 * Math.PI));
-    //Apply twice
-    //Vector projection = project(di,dj,dk,euler);//project(di,dj,dk,euler));
-    Vector projection = project(di, dj, dk, project(di, dj, dk, euler));
-    if (projection.x() < 0) projection.setX((float) (projection.x() + 2 * Math.PI));
-    if (projection.y() < 0) projection.setY((float) (projection.y() + 2 * Math.PI));
-    if (projection.z() < 0) projection.setZ((float) (projection.z() + 2 * Math.PI));
+  }
 
-    if (projection.x() > Math.PI) projection.setX((float) (projection.x() - 2 * Math.PI));
-    if (projection.y() > Math.PI) projection.setY((float) (projection.y() - 2 * Math.PI));
-    if (projection.z() > Math.PI) projection.setZ((float) (projection.z() - 2 * Math.PI));
+  /**
+   * Returns a copy of the field as a {@code [width][height][depth]} array.
+   */
+  public float[][][] distance_field() {
+    FloatBuffer field = _field();
+    float[][][] result = new float[_width][_height][_depth];
+    for (int i = 0; i < _width; i++)
+      for (int j = 0; j < _height; j++)
+        for (int k = 0; k < _depth; k++)
+          result[i][j][k] = field.get((i * _height + j) * _depth + k);
+    return result;
+  }
 
+  /**
+   * Returns the number of field samples along the first Euler angle.
+   */
+  public int width() {
+    _field();
+    return _width;
+  }
 
-    return new Quaternion(projection.x(), projection.y(), projection.z());
+  /**
+   * Returns the number of field samples along the second Euler angle.
+   */
+  public int height() {
+    _field();
+    return _height;
   }
 
-  protected Vector project(float di, float dj, float dk, Vector p) {
-    if (p.x() < 0) p.setX((float) (p.x() + 2 * Math.PI));
-    if (p.y() < 0) p.setY((float) (p.y() + 2 * Math.PI));
-    if (p.z() < 0) p.setZ((float) (p.z() + 2 * Math.PI));
+  /**
+   * Returns the number of field samples along the third Euler angle.
+   */
+  public int depth() {
+    _field();
+    return _depth;
+  }
 
-    int I = _distance_field.length;
-    int J = _distance_field[0].length;
-    int K = _distance_field[0][0].length;
+  /**
+   * Returns the distance threshold below which rotations are left untouched. Default is 0.3.
+   */
+  public float epsilon() {
+    return epsilon;
+  }
 
-    //System.out.println("----> p.x : " + p.x() + " p.y : " + p.y() + " p.z : " + p.z());
-    int i = (int) (p.x() / (2 * Math.PI) * (_distance_field.length - 0.5)) % I;
-    int j = (int) (p.y() / (2 * Math.PI) * (_distance_field[0].length - 0.5)) % J;
-    int k = (int) (p.z() / (2 * Math.PI) * (_distance_field[0][0].length - 0.5)) % K;
+  /**
+   * Sets the {@link #epsilon()} distance threshold.
+   */
+  public void setEpsilon(float epsilon) {
+    this.epsilon = epsilon;
+  }
+
+  @Override
+  public Quaternion constrainRotation(Quaternion rotation, Node frame) {
+    Scratch scratch = _scratch.get();
+    Quaternion desired = apply(Quaternion.compose(frame.rotation(), rotation, scratch._rotation), scratch._rotation);
+    // the returned delta is the only object created, since the caller keeps it
+    return Quaternion.compose(frame.rotation().inverse(scratch._inverse), desired);
+  }
 
-    Vector delta = new Vector();
-    //Compute gradient
-    //System.out.println("----> i : " + i + " j : " + j + " k : " + k);
-    //System.out.println("----> I : " + I + " J : " + J + " K : " + K);
+  @Override
+  public Vector constrainTranslation(Vector translation, Node frame) {
+    return new Vector(0, 0, 0);
+  }
+
+  /**
+   * Same as {@code return apply(desired, null)}.
+   *
+   * @see #apply(Quaternion, Quaternion)
+   */
+  public Quaternion apply(Quaternion desired) {
+    return apply(desired, null);
+  }
 
-    //System.out.println("----> distance : " + _distance_field[i][j][k]);
+  /**
+   * Stores the {@code desired} rotation, projected onto the region where the field distance is
+   * less than {@link #epsilon()}, into {@code target} which is then returned. If {@code target}
+   * is null a new quaternion is created. Note that {@code target} may be {@code desired}.
+   */
+  public Quaternion apply(Quaternion desired, Quaternion target) {
+    if (target == null)
+      target = new Quaternion();
+    Scratch scratch = _scratch.get();
+    float[] p = desired.eulerAngles(scratch._angles)._vector;
+    //Get distance in distance field
+    if (distance(p[0], p[1], p[2]) < epsilon) {
+      target.set(desired, false);
+      return target;
+    }
+    //Apply twice
+    _project(p, scratch._gradient);
+    _project(p, scratch._gradient);
+    for (int i = 0; i < 3; i++) {
+      p[i] = _wrap(p[i]);
+      if (p[i] > Math.PI) p[i] -= TWO_PI;
+    }
+    _fromEulerAngles(p[0], p[1], p[2], target);
+    return target;
+  }
 
-    delta.setX((_distance_field[Math.min(i + 1, I - 1)][j][k] - _distance_field[Math.max(i - 1, 0)][j][k]) / (2 * di));
-    delta.setY((_distance_field[i][Math.min(j + 1, J - 1)][k] - _distance_field[i][Math.max(j - 1, 0)][k]) / (2 * dj));
-    delta.setZ((_distance_field[i][j][Math.min(k + 1, K - 1)] - _distance_field[i][j][Math.max(k - 1, 0)]) / (2 * dk));
-        /*
+  /**
+   * Internal use. Same as {@code target.fromEulerAngles(roll, pitch, yaw)}, i.e., the product of
+   * the pitch (y), yaw (z) and roll (x) rotations, expanded so that no quaternion is created.
+   */
+  protected static void _fromEulerAngles(float roll, float pitch, float yaw, Quaternion target) {
+    float sx = (float) Math.sin(roll / 2.0f), cx = (float) Math.cos(roll / 2.0f);
+    float sy = (float) Math.sin(pitch / 2.0f), cy = (float) Math.cos(pitch / 2.0f);
+    float sz = (float) Math.sin(yaw / 2.0f), cz = (float) Math.cos(yaw / 2.0f);
+    target._quaternion[0] = cy * cz * sx + cx * sy * sz;
+    target._quaternion[1] = cx * cz * sy + cy * sz * sx;
+    target._quaternion[2] = cx * cy * sz - cz * sy * sx;
+    target._quaternion[3] = cx * cy * cz - sx * sy * sz;
+  }
 
-        System.out.println("----> xi : " + (_distance_field[Math.max(i-1,0)][j][k]));
-        System.out.println("----> yi : " + (_distance_field[i][Math.max(j-1,0)][k]));
-        System.out.println("----> zi : " + (_distance_field[i][j][Math.max(k-1,0)]));
+  /**
+   * Returns the trilinearly interpolated field distance at the given Euler angles (in radians).
+   */
+  public float distance(float x, float y, float z) {
+    return _sample(x, y, z, null);
+  }
 
-        System.out.println("----> xf : " + (_distance_field[Math.min(i+1, I-1)][j][k]));
-        System.out.println("----> yf : " + (_distance_field[i][Math.min(j+1, J-1)][k]));
-        System.out.println("----> zf : " + (_distance_field[i][j][Math.min(k+1, K-1)]));
+  /**
+   * Internal use. Moves the Euler angles {@code p} against the field gradient by the field
+   * distance. The {@code gradient} array is used as scratch.
+   */
+  protected void _project(float[] p, float[] gradient) {
+    float distance = _sample(p[0], p[1], p[2], gradient);
+    float norm = (float) Math.sqrt(gradient[0] * gradient[0] + gradient[1] * gradient[1] + gradient[2] * gradient[2]);
+    if (norm == 0)
+      return;
+    for (int i = 0; i < 3; i++)
+      p[i] = _wrap(p[i] - gradient[i] / norm * distance);
+  }
 
-        System.out.println("----> dx : " + (_distance_field[Math.min(i+1, I-1)][j][k] - _distance_field[Math.max(i-1,0)][j][k]));
-        System.out.println("----> dy : " + (_distance_field[i][Math.min(j+1, J-1)][k] - _distance_field[i][Math.max(j-1,0)][k]));
-        System.out.println("----> dz : " + (_distance_field[i][j][Math.min(k+1, K-1)] - _distance_field[i][j][Math.max(k-1,0)]));
-        */
-    delta.normalize();
-    //System.out.println("----> delta : " + delta);
-    //System.out.println("Res : " + Vector.subtract(p, Vector.multiply(delta, _distance_field[i][j][k])));
+  /**
+   * Internal use. Maps {@code angle} into {@code [0, 2 PI)}.
+   */
+  protected static float _wrap(float angle) {
+    angle %= TWO_PI;
+    return angle < 0 ? angle + TWO_PI : angle;
+  }
 
-    return Vector.subtract(p, Vector.multiply(delta, _distance_field[i][j][k]));
+  /**
+   * Internal use. Returns the (periodic) trilinear interpolation of the field at the given Euler
+   * angles, and stores its analytic gradient (per radian) into {@code gradient}, if it's non-null.
+   */
+  protected float _sample(float x, float y, float z, float[] gradient) {
+    FloatBuffer field = _field();
+    // sample centers lie at (i + 0.5) * 2 PI / width
+    float u = _wrap(x) / TWO_PI * _width - 0.5f;
+    float v = _wrap(y) / TWO_PI * _height - 0.5f;
+    float w = _wrap(z) / TWO_PI * _depth - 0.5f;
+    int i0 = (int) Math.floor(u), j0 = (int) Math.floor(v), k0 = (int) Math.floor(w);
+    float fu = u - i0, fv = v - j0, fw = w - k0;
+    int i1 = i0 + 1 == _width ? 0 : i0 + 1, j1 = j0 + 1 == _height ? 0 : j0 + 1, k1 = k0 + 1 == _depth ? 0 : k0 + 1;
+    i0 = i0 < 0 ? _width - 1 : i0;
+    j0 = j0 < 0 ? _height - 1 : j0;
+    k0 = k0 < 0 ? _depth - 1 : k0;
+    float c000 = field.get((i0 * _height + j0) * _depth + k0);
+    float c001 = field.get((i0 * _height + j0) * _depth + k1);
+    float c010 = field.get((i0 * _height + j1) * _depth + k0);
+    float c011 = field.get((i0 * _height + j1) * _depth + k1);
+    float c100 = field.get((i1 * _height + j0) * _depth + k0);
+    float c101 = field.get((i1 * _height + j0) * _depth + k1);
+    float c110 = field.get((i1 * _height + j1) * _depth + k0);
+    float c111 = field.get((i1 * _height + j1) * _depth + k1);
+    // interpolate along k, then j, then i
+    float c00 = c000 + (c001 - c000) * fw, c01 = c010 + (c011 - c010) * fw;
+    float c10 = c100 + (c101 - c100) * fw, c11 = c110 + (c111 - c110) * fw;
+    float c0 = c00 + (c01 - c00) * fv, c1 = c10 + (c11 - c10) * fv;
+    if (gradient != null) {
+      gradient[0] = (c1 - c0) * _width / TWO_PI;
+      gradient[1] = ((1 - fu) * (c01 - c00) + fu * (c11 - c10)) * _height / TWO_PI;
+      float d0 = (1 - fv) * (c001 - c000) + fv * (c011 - c010);
+      float d1 = (1 - fv) * (c101 - c100) + fv * (c111 - c110);
+      gradient[2] = ((1 - fu) * d0 + fu * d1) * _depth / TWO_PI;
+    }
+    return c0 + (c1 - c0) * fu;
   }
-}
\ No newline at end of file
+}
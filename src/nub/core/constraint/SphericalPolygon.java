@@ -122,6 +122,7 @@ public class SphericalPolygon extends ConeConstraint {
   }
 
   protected void _init() {
+    _invalidateLookupTable();
     _b = new ArrayList<Vector>();
     _s = new ArrayList<Vector>();
     for (int i = 0; i < _vertices.size(); i++) {
@@ -135,8 +136,9 @@ public class SphericalPolygon extends ConeConstraint {
   protected int _findSlice(Vector L) {
     //Check if visible point is inside
     //1. Find i s.t p_i = S_i . L >= 0 and p_j = S_j . L < 0 with j = i + 1
-    for (int i = 0; i < _vertices.size(); i++) {
-      if (Vector.dot(_s.get(i), L) >= 0 && Vector.dot(_s.get((i + 1) % _vertices.size()), L) < 0) {
+    int size = _vertices.size();
+    for (int i = 0; i < size; i++) {
+      if (Vector.dot(_s.get(i), L) >= 0 && Vector.dot(_s.get(i + 1 == size ? 0 : i + 1), L) < 0) {
         return  i;
       }
     }
@@ -145,32 +147,26 @@ public class SphericalPolygon extends ConeConstraint {
 
   protected Vector _closestPoint(Vector point) {
     float minDist = Float.MAX_VALUE;
-    Vector target = new Vector();
+    float[] p = point._vector;
+    float tx = 0, ty = 0, tz = 0;
     for (int i = 0, j = _vertices.size() - 1; i < _vertices.size(); j = i++) {
-      Vector projection;
-      float dist;
-      Vector v_i = _vertices.get(i);
-      Vector v_j = _vertices.get(j);
-      Vector edge = Vector.subtract(v_i, v_j);
+      float[] v_i = _vertices.get(i)._vector;
+      float[] v_j = _vertices.get(j)._vector;
+      float ex = v_i[0] - v_j[0], ey = v_i[1] - v_j[1], ez = v_i[2] - v_j[2];
       //Get distance to line
-      float t = Vector.dot(edge, Vector.subtract(point, v_j));
-      t /= edge.magnitude() * edge.magnitude();
-      if (t < 0) {
-        dist = Vector.distance(v_j, point);
-        projection = v_j.get();
-      } else if (t > 1) {
-        dist = Vector.distance(v_i, point);
-        projection = v_i.get();
-      } else {
-        projection = Vector.add(v_j, Vector.multiply(edge, t));
-        dist = Vector.subtract(point, projection).magnitude();
-      }
+      float t = ex * (p[0] - v_j[0]) + ey * (p[1] - v_j[1]) + ez * (p[2] - v_j[2]);
+      t /= ex * ex + ey * ey + ez * ez;
+      t = t < 0 ? 0 : t > 1 ? 1 : t;
+      float x = v_j[0] + ex * t, y = v_j[1] + ey * t, z = v_j[2] + ez * t;
+      float dist = (p[0] - x) * (p[0] - x) + (p[1] - y) * (p[1] - y) + (p[2] - z) * (p[2] - z);
       if (dist < minDist) {
         minDist = dist;
-        target = projection;
+        tx = x;
+        ty = y;
+        tz = z;
       }
     }
-    return target;
+    return new Vector(tx, ty, tz);
   }
 
   protected void _setVertices(float down, float up, float left, float right, int detail){
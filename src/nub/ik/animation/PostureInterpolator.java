@@ -1,5 +1,6 @@
 package nub.ik.animation;
 
+import nub.core.Animator;
 import nub.core.Interpolator;
 import nub.core.Node;
 import nub.processing.TimingTask;
@@ -74,6 +75,20 @@ public class PostureInterpolator {
     return _postures.size();
   }
 
+  /**
+   * Returns the i-th key posture.
+   */
+  public Posture keyPosture(int i) {
+    return _postures.get(i)._posture;
+  }
+
+  /**
+   * Returns the time of the i-th key posture.
+   */
+  public float keyTime(int i) {
+    return _postures.get(i)._time;
+  }
+
   public Task task() {
     return _task;
   }
@@ -260,6 +275,21 @@ public class PostureInterpolator {
   }
 
 
+  /**
+   * Adds the skeleton joint interpolators to the {@code animator} as a single group, which
+   * is then evaluated in one pass together with those of other skeletons sharing the same
+   * clock. The joint local transformations are written straight into the skeleton joints.
+   *
+   * @see Animator#add(List, List, Runnable)
+   */
+  public void addTo(Animator animator) {
+    List<Node> joints = new ArrayList<Node>(skeleton().BFS());
+    List<Interpolator> interpolators = new ArrayList<Interpolator>();
+    for (Node joint : joints)
+      interpolators.add(_interpolators.get(joint));
+    animator.add(joints, interpolators, _skeleton::restoreTargetsState);
+  }
+
   public void interpolate(float time) {
     for (Node joint : skeleton().BFS()) {
       Interpolator interpolator = _interpolators.get(joint);
@@ -539,6 +539,27 @@ public class Skeleton {
     }
   }
 
+  /**
+   * Enables or disables the adaptive mode of all the skeleton solvers.
+   * @see Solver#enableAdaptive(boolean)
+   */
+  public void enableAdaptiveIK(boolean enable){
+    for(Solver s : _solvers.values()){
+      s.enableAdaptive(enable);
+    }
+  }
+
+  /**
+   * Sets the wall-clock budget of all the skeleton solvers. Pass the same budget to several
+   * skeletons to bound the time their IK takes per frame.
+   * @see Solver#setBudget(Solver.Budget)
+   */
+  public void setIKBudget(Solver.Budget budget){
+    for(Solver s : _solvers.values()){
+      s.setBudget(budget);
+    }
+  }
+
 
   public void disableIK() {
     for (Solver solver : _solvers.values()) {
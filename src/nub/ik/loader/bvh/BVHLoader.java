@@ -16,6 +16,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -23,6 +24,13 @@ import java.util.List;
  * This class must be used to load a bvh file and
  * generate an animation.
  * <p>
+ * By default each frame is parsed into a {@link Posture}, i.e., a detached copy of the
+ * whole skeleton. In compact mode (see {@link #BVHLoader(String, Node, boolean)}) the motion
+ * channels are instead streamed into a single {@code float[]} (see {@link #motion()}) of
+ * {@link #frames()} rows by {@link #channels()} columns, and a frame is applied to the
+ * {@link #skeleton()} joints directly by channel index (see {@link #applyFrame(int)}),
+ * which is the way to go for long captures.
+ * <p>
  * For more info look at http://www.dcs.shef.ac.uk/intranet/research/public/resmes/CS0111.pdf
  * Created by sebchaparr on 23/03/18.
  */
@@ -37,15 +45,54 @@ public class BVHLoader {
     protected int _currentPosture;
     protected boolean _loop;
     protected float _radius;
+    protected float _frameTime;
+    //Compact mode: frames x channels motion block
+    public static final int XPOSITION = 0, YPOSITION = 1, ZPOSITION = 2, XROTATION = 3, YROTATION = 4, ZROTATION = 5;
+    //Rotation quaternion components, not found in bvh files but used by the MotionClip format
+    public static final int XQUATERNION = 6, YQUATERNION = 7, ZQUATERNION = 8, WQUATERNION = 9;
+    protected boolean _compact;
+    protected float[] _motion;
+    protected int _channels;
+    protected int[] _channelTypes;
+    protected Node[] _nodes;
+    protected int[] _offsets;
+    protected float[] _scratch = new float[7];
+    //Tokenizer
+    protected char[] _chars = new char[1 << 16];
+    protected int _charIndex, _charCount;
+    protected char[] _token = new char[64];
+    protected float _value;
+    protected static final double[] _POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
 
 
     public BVHLoader(String path, Node reference) {
+        this(path, reference, false);
+    }
+
+    public BVHLoader(String path, Scene scene, Node reference) {
+        this(path, scene, reference, false);
+    }
+
+    /**
+     * Loads the bvh file at {@code path}. If {@code compact} is {@code true} the motion is kept
+     * in a single {@code float[]} (see {@link #motion()}) instead of a list of {@link Posture}s.
+     *
+     * @see #applyFrame(int)
+     */
+    public BVHLoader(String path, Node reference, boolean compact) {
         _radius = 5f;
+        _compact = compact;
         _setup(path, reference);
     }
 
-    public BVHLoader(String path, Scene scene, Node reference) {
+    /**
+     * Same as {@link #BVHLoader(String, Node, boolean)} but the joint radius is taken
+     * from the {@code scene} radius.
+     */
+    public BVHLoader(String path, Scene scene, Node reference, boolean compact) {
         _radius = scene.radius() * 0.01f;
+        _compact = compact;
         _setup(path, reference);
     }
 
@@ -56,6 +103,8 @@ public class BVHLoader {
     public class Properties {
         protected String _name;
         protected int channels;
+        //index of the first channel of the joint within a frame
+        protected int _offset;
         protected List<String> _channelType;
 
         Properties(String name) {
@@ -71,10 +120,85 @@ public class BVHLoader {
         public boolean addChannelType(String type) {
             return _channelType.add(type);
         }
+
+        public int offset() {
+            return _offset;
+        }
     }
 
+    /**
+     * Returns the number of frames. Same as {@link #frames()}.
+     */
     public int postures() {
-        return _postures.size();
+        return _compact ? _frames : _postures.size();
+    }
+
+    /**
+     * Returns the frame time (in seconds) declared by the file.
+     */
+    public float frameTime() {
+        return _frameTime;
+    }
+
+    /**
+     * Returns whether or not the motion is kept in compact form.
+     *
+     * @see #motion()
+     */
+    public boolean isCompact() {
+        return _compact;
+    }
+
+    /**
+     * Returns the number of frames read.
+     */
+    public int frames() {
+        return postures();
+    }
+
+    /**
+     * Returns the number of motion channels of a frame, i.e., the sum of the
+     * channels of all the joints.
+     */
+    public int channels() {
+        return _channels;
+    }
+
+    /**
+     * Returns the channel types (one of {@link #XPOSITION}, {@link #YPOSITION}, {@link #ZPOSITION},
+     * {@link #XROTATION}, {@link #YROTATION} or {@link #ZROTATION}) in frame order.
+     */
+    public int[] channelTypes() {
+        return _channelTypes;
+    }
+
+    /**
+     * Returns the joints having motion channels in frame order. The channels of the
+     * i-th joint start at {@code offsets()[i]} and end at {@code offsets()[i + 1]}.
+     *
+     * @see #offsets()
+     */
+    public Node[] channelJoints() {
+        return _nodes;
+    }
+
+    /**
+     * Returns the index of the first channel of each joint (see {@link #channelJoints()}),
+     * followed by {@link #channels()}.
+     */
+    public int[] offsets() {
+        return _offsets;
+    }
+
+    /**
+     * Returns the motion block in compact mode, i.e., the channel values in file units (degrees
+     * for rotations) of all frames laid out frame by frame: the value of channel {@code c} at
+     * frame {@code f} is {@code motion()[f * channels() + c]}. Returns {@code null} otherwise.
+     *
+     * @see #isCompact()
+     */
+    public float[] motion() {
+        return _motion;
     }
 
     public int currentPosture() {
@@ -94,7 +218,61 @@ public class BVHLoader {
         _skeleton = new Skeleton(reference);
         _postures = new ArrayList<Posture>();
         _readHeader(path);
-        _saveFrames();
+        _indexChannels();
+        if (_compact)
+            _readMotion();
+        else
+            _saveFrames();
+    }
+
+    /**
+     * Assigns each joint its channel offset within a frame, following the same (depth-first)
+     * order of the file.
+     */
+    protected void _indexChannels() {
+        List<Node> nodes = new ArrayList<Node>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        List<Integer> types = new ArrayList<Integer>();
+        _channels = 0;
+        if (_skeleton.reference() != null) {
+            for (Node node : Scene.branch(_skeleton.reference())) {
+                Properties properties = _joint.get(node.id());
+                if (properties == null || properties._channelType.isEmpty()) continue;
+                properties._offset = _channels;
+                nodes.add(node);
+                offsets.add(_channels);
+                for (String channel : properties._channelType) {
+                    types.add(_channelType(channel));
+                    _channels++;
+                }
+            }
+        }
+        _nodes = nodes.toArray(new Node[0]);
+        _offsets = new int[nodes.size() + 1];
+        for (int i = 0; i < nodes.size(); i++)
+            _offsets[i] = offsets.get(i);
+        _offsets[nodes.size()] = _channels;
+        _channelTypes = new int[types.size()];
+        for (int i = 0; i < types.size(); i++)
+            _channelTypes[i] = types.get(i);
+    }
+
+    protected static int _channelType(String channel) {
+        switch (channel) {
+            case "XPOSITION":
+                return XPOSITION;
+            case "YPOSITION":
+                return YPOSITION;
+            case "ZPOSITION":
+                return ZPOSITION;
+            case "XROTATION":
+                return XROTATION;
+            case "YROTATION":
+                return YROTATION;
+            case "ZROTATION":
+                return ZROTATION;
+        }
+        return -1;
     }
 
 
@@ -188,8 +366,13 @@ public class BVHLoader {
                 }
             } else if (expression[0].equals("FRAMES")) {
                 _frames = Integer.valueOf(expression[1]);
-            } else if (expression[0].equals("FRAME_TIME")) {
-                _period = Integer.valueOf(expression[1]);
+            } else if (line.startsWith("FRAME TIME") || line.startsWith("FRAME_TIME")) {
+                String[] tokens = line.split("[\\s:]+");
+                try {
+                    _frameTime = Float.valueOf(tokens[tokens.length - 1]);
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                }
             } else if (expression.length >= 2) {
                 if ((expression[0] + " " + expression[1]).equals("END SITE")) {
                     boneBraceOpened = false;
@@ -295,11 +478,240 @@ public class BVHLoader {
         return true;
     }
 
+    /**
+     * Streams the motion section into the compact {@link #motion()} block. Values are parsed
+     * straight from the file characters, without creating a String per line or per value.
+     * An incomplete trailing frame is discarded.
+     */
+    protected void _readMotion() {
+        if (_buffer == null || _channels == 0) {
+            _motion = new float[0];
+            return;
+        }
+        float[] motion = new float[(_frames > 0 ? _frames : 1024) * _channels];
+        int count = 0;
+        try {
+            while (_nextFloat()) {
+                if (count == motion.length)
+                    motion = Arrays.copyOf(motion, motion.length * 2);
+                motion[count++] = _value;
+            }
+            _buffer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        _frames = count / _channels;
+        _motion = motion.length == _frames * _channels ? motion : Arrays.copyOf(motion, _frames * _channels);
+    }
+
+    /**
+     * Reads the next whitespace delimited value into {@code _value}. Returns {@code false}
+     * at the end of the file.
+     */
+    protected boolean _nextFloat() throws IOException {
+        int length = 0;
+        while (true) {
+            if (_charIndex == _charCount) {
+                _charCount = _buffer.read(_chars, 0, _chars.length);
+                _charIndex = 0;
+                if (_charCount <= 0) {
+                    _charCount = 0;
+                    if (length == 0) return false;
+                    break;
+                }
+            }
+            char c = _chars[_charIndex++];
+            if (c <= ' ') {
+                if (length == 0) continue;
+                break;
+            }
+            if (length == _token.length)
+                _token = Arrays.copyOf(_token, length * 2);
+            _token[length++] = c;
+        }
+        _value = _parseFloat(_token, length);
+        return true;
+    }
+
+    /**
+     * Parses a decimal number (optionally in scientific notation) from the first
+     * {@code length} characters of {@code token}. Falls back to {@link Float#parseFloat(String)}
+     * for the numbers out of the fast path range (more than 18 significant digits or
+     * exponents beyond 22) and for anything else, e.g., {@code NaN}.
+     */
+    protected static float _parseFloat(char[] token, int length) {
+        int i = 0;
+        boolean negative = false;
+        if (token[0] == '-' || token[0] == '+') {
+            negative = token[0] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0, exponent = 0;
+        boolean valid = false;
+        for (; i < length && token[i] >= '0' && token[i] <= '9'; i++, valid = true) {
+            mantissa = mantissa * 10 + (token[i] - '0');
+            if (mantissa > 0) digits++;
+        }
+        if (i < length && token[i] == '.')
+            for (i++; i < length && token[i] >= '0' && token[i] <= '9'; i++, valid = true) {
+                mantissa = mantissa * 10 + (token[i] - '0');
+                if (mantissa > 0) digits++;
+                exponent--;
+            }
+        if (valid && i < length && (token[i] == 'e' || token[i] == 'E')) {
+            int j = i + 1, sign = 1, value = 0;
+            if (j < length && (token[j] == '-' || token[j] == '+'))
+                sign = token[j++] == '-' ? -1 : 1;
+            boolean expDigits = false;
+            for (; j < length && token[j] >= '0' && token[j] <= '9' && value < 1000; j++, expDigits = true)
+                value = value * 10 + (token[j] - '0');
+            if (expDigits) {
+                exponent += sign * value;
+                i = j;
+            }
+        }
+        if (!valid || i != length || digits > 18 || exponent < -22 || exponent > 22)
+            return Float.parseFloat(new String(token, 0, length));
+        double value = exponent < 0 ? mantissa / _POWERS[-exponent] : mantissa * _POWERS[exponent];
+        return (float) (negative ? -value : value);
+    }
+
+    /**
+     * Applies the {@code frame} of the compact {@link #motion()} to the {@link #skeleton()} joints,
+     * bypassing their constraints. The joints are updated in place by channel index, i.e., without
+     * creating intermediate nodes nor quaternions. Use {@link #postureAt(int)} to apply a frame
+     * regardless of the loader mode.
+     *
+     * @see #isCompact()
+     */
+    public void applyFrame(int frame) {
+        if (!_compact) {
+            System.out.println("Warning: applyFrame requires the compact mode. Nothing done!");
+            return;
+        }
+        if (frame < 0 || frame >= _frames) return;
+        int base = frame * _channels;
+        for (int i = 0; i < _nodes.length; i++) {
+            Node node = _nodes[i];
+            int mask = _channelState(_motion, base + _offsets[i], _channelTypes, _offsets[i], _offsets[i + 1] - _offsets[i], _scratch);
+            _applyState(node, mask, _scratch);
+        }
+        _skeleton.restoreTargetsState();
+    }
+
+    /**
+     * Sets the {@code node} translation ({@code state[0..2]}) and / or rotation ({@code state[3..6]})
+     * in place according to {@code mask} (see {@link #_channelState(float[], int, int[], int, int, float[])}),
+     * bypassing the node constraint. The rotation sign is chosen to be the shortest rotation with
+     * respect to the current one (see {@link #_readNextFrame()}).
+     */
+    protected static void _applyState(Node node, int mask, float[] state) {
+        if (mask == 0) return;
+        Constraint constraint = node.constraint();
+        node.setConstraint(null);
+        if ((mask & 1) != 0) {
+            node.translation().set(state[0], state[1], state[2]);
+            node.setTranslation(node.translation());
+        }
+        if ((mask & 2) != 0) {
+            Quaternion rotation = node.rotation();
+            float sign = rotation._quaternion[0] * state[3] + rotation._quaternion[1] * state[4]
+                    + rotation._quaternion[2] * state[5] + rotation._quaternion[3] * state[6] < 0 ? -1 : 1;
+            rotation._quaternion[0] = sign * state[3];
+            rotation._quaternion[1] = sign * state[4];
+            rotation._quaternion[2] = sign * state[5];
+            rotation._quaternion[3] = sign * state[6];
+            node.setRotation(rotation);
+        }
+        node.setConstraint(constraint);
+    }
+
+    /**
+     * Converts the {@code count} channel values found at {@code motion[from]} (whose types are found at
+     * {@code types[typeFrom]}) into a translation, stored at {@code target[0..2]}, and a rotation
+     * quaternion, stored at {@code target[3..6]}. Euler rotations are composed in channel order,
+     * whereas quaternion components (see {@link #XQUATERNION}) are taken as they are, so they
+     * shouldn't be mixed with Euler channels.
+     * Returns a bit mask telling whether the channels define a translation (1) and / or a rotation (2).
+     */
+    protected static int _channelState(float[] motion, int from, int[] types, int typeFrom, int count, float[] target) {
+        target[0] = target[1] = target[2] = 0;
+        target[3] = target[4] = target[5] = 0;
+        target[6] = 1;
+        int mask = 0;
+        for (int c = 0; c < count; c++) {
+            int type = types[typeFrom + c];
+            float value = motion[from + c];
+            if (type >= XPOSITION && type <= ZPOSITION) {
+                target[type] = value;
+                mask |= 1;
+            } else if (type >= XROTATION && type <= ZROTATION) {
+                _composeAxisAngle(target, type - XROTATION, (float) Math.toRadians(value));
+                mask |= 2;
+            } else if (type >= XQUATERNION && type <= WQUATERNION) {
+                target[3 + type - XQUATERNION] = value;
+                mask |= 2;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Composes the quaternion stored at {@code q[3..6]} with the rotation of {@code angle}
+     * radians around the x (0), y (1) or z (2) {@code axis}.
+     */
+    protected static void _composeAxisAngle(float[] q, int axis, float angle) {
+        float s = (float) Math.sin(angle / 2.0f), c = (float) Math.cos(angle / 2.0f);
+        float x = q[3], y = q[4], z = q[5], w = q[6];
+        switch (axis) {
+            case 0:
+                q[3] = w * s + c * x;
+                q[4] = c * y + z * s;
+                q[5] = c * z - y * s;
+                q[6] = w * c - x * s;
+                break;
+            case 1:
+                q[3] = c * x - z * s;
+                q[4] = w * s + c * y;
+                q[5] = c * z + x * s;
+                q[6] = w * c - y * s;
+                break;
+            case 2:
+                q[3] = c * x + y * s;
+                q[4] = c * y - x * s;
+                q[5] = w * s + c * z;
+                q[6] = w * c - z * s;
+                break;
+        }
+    }
+
+    /**
+     * Returns the rotation of the given joint at the given {@code frame}, regardless of the
+     * loader mode.
+     */
+    protected Quaternion _rotation(int frame, Node node) {
+        if (!_compact)
+            return _postures.get(frame).jointState(_skeleton.jointName(node)).rotation();
+        Properties properties = _joint.get(node.id());
+        if (properties == null || (_channelState(_motion, frame * _channels + properties._offset, _channelTypes, properties._offset, properties.channels, _scratch) & 2) == 0)
+            return node.rotation().get();
+        return new Quaternion(_scratch[3], _scratch[4], _scratch[5], _scratch[6]);
+    }
+
+    /**
+     * Applies the next frame to the {@link #skeleton()}. In compact mode frames can't
+     * be removed, so {@code remove} is ignored.
+     */
     public void nextPosture(boolean remove) {
-        if (_currentPosture >= _postures.size()) {
+        if (_currentPosture >= postures()) {
             if (_loop) _currentPosture = 0;
             else return;
         }
+        if (_compact) {
+            applyFrame(_currentPosture++);
+            return;
+        }
         _postures.get(_currentPosture).loadValues(_skeleton);
         if (remove) _postures.remove(_currentPosture);
         if (!remove) _currentPosture++;
@@ -310,10 +722,11 @@ public class BVHLoader {
     }
 
     public void postureAt(int idx) {
-        if (idx >= _postures.size()) {
+        if (idx >= postures()) {
             return;
         }
-        _postures.get(idx).loadValues(_skeleton);
+        if (_compact) applyFrame(idx);
+        else _postures.get(idx).loadValues(_skeleton);
         _currentPosture = idx;
     }
 
@@ -337,11 +750,9 @@ public class BVHLoader {
                 return centroid;
             }
         }
-        String name = _skeleton.jointName(node);
         Quaternion restRotation = node.rotation().get();
-        for (int i = 0; i < _postures.size(); i++) {
-            Node keyNode = _postures.get(i).jointState(name);
-            Quaternion delta = Quaternion.compose(restRotation.inverse(), keyNode.rotation());
+        for (int i = 0; i < postures(); i++) {
+            Quaternion delta = Quaternion.compose(restRotation.inverse(), _rotation(i, node));
             delta.normalize();
             rest.add(delta.rotate(init));
         }
@@ -350,7 +761,7 @@ public class BVHLoader {
             rest = init;
 
 
-        rest.multiply(1f / (_postures.size() + 1));
+        rest.multiply(1f / (postures() + 1));
         rest.normalize();
         return rest.get();
     }
@@ -377,10 +788,8 @@ public class BVHLoader {
         float minTwist = 0, maxTwist = 0;
         float upAngle = 0, downAngle = 0, leftAngle = 0, rightAngle = 0;
 
-        String name = _skeleton.jointName(node);
-        for (int i = 0; i < _postures.size(); i++) {
-            Node keyNode = _postures.get(i).jointState(name);
-            Quaternion delta = Quaternion.compose(restRotation.inverse(), keyNode.rotation());
+        for (int i = 0; i < postures(); i++) {
+            Quaternion delta = Quaternion.compose(restRotation.inverse(), _rotation(i, node));
             delta.normalize();
             if (Quaternion.dot(delta, restRotation) < 0) {
                 delta.negate();
@@ -0,0 +1,369 @@
+package nub.ik.loader.bvh;
+
+import nub.core.Node;
+import nub.ik.animation.Posture;
+import nub.ik.animation.PostureInterpolator;
+import nub.ik.animation.Skeleton;
+import nub.processing.Scene;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MotionClip is a compact binary motion file which is memory-mapped when read, so that
+ * large motion libraries load in no time and the same file pages may be shared among
+ * processes.
+ * <p>
+ * The file (little-endian) is made of a header holding the joint hierarchy, followed by
+ * a contiguous block of {@code float} channel values laid out frame by frame:
+ * <pre>
+ * {@code
+ * int magic ('NUBC'), int version
+ * int joints, int frames, int channels, float frameTime, int keyed
+ * for each joint (parents first):
+ *   int nameLength, byte[nameLength] (utf-8, padded to a multiple of 4), int parent (-1 for roots)
+ *   float tx, ty, tz, qx, qy, qz, qw (rest translation and rotation)
+ *   int channelCount, int[channelCount] channelTypes
+ * float[frames] times (only if keyed)
+ * float[frames * channels] motion
+ * }
+ * </pre>
+ * Channel types are those of the {@link BVHLoader}, i.e., bvh clips keep their Euler channels
+ * (see {@link #save(BVHLoader, String)}), while posture based clips store a translation and
+ * a rotation quaternion per joint (see {@link #save(PostureInterpolator, String)}).
+ * <p>
+ * Frames are applied (see {@link #applyFrame(int)}) by reading the channel values right
+ * from the mapped file into the skeleton joints, i.e., the motion block is never copied
+ * into the heap.
+ */
+public class MotionClip {
+    public static final int MAGIC = 0x4E554243, VERSION = 1;
+    protected String _path;
+    protected String[] _names;
+    protected int[] _parents;
+    protected float[] _rest;
+    protected int[] _offsets;
+    protected int[] _channelTypes;
+    protected int _frames, _channels;
+    protected float _frameTime;
+    protected FloatBuffer _times;
+    protected FloatBuffer _motion;
+    protected Skeleton _skeleton;
+    protected Node[] _nodes;
+    protected float[] _row;
+    protected float[] _scratch = new float[7];
+
+    /**
+     * Memory-maps the clip found at {@code path}. Use {@link #bind(Skeleton)} or
+     * {@link #buildSkeleton(Node)} before applying its frames.
+     */
+    public MotionClip(String path) throws IOException {
+        _path = path;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            throw new IOException("Not a motion clip: " + path);
+        int joints = buffer.getInt();
+        _frames = buffer.getInt();
+        _channels = buffer.getInt();
+        _frameTime = buffer.getFloat();
+        boolean keyed = buffer.getInt() != 0;
+        _names = new String[joints];
+        _parents = new int[joints];
+        _rest = new float[7 * joints];
+        _offsets = new int[joints + 1];
+        _channelTypes = new int[_channels];
+        for (int i = 0, c = 0; i < joints; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            buffer.position(buffer.position() + _padding(name.length));
+            _names[i] = new String(name, StandardCharsets.UTF_8);
+            _parents[i] = buffer.getInt();
+            for (int j = 0; j < 7; j++)
+                _rest[7 * i + j] = buffer.getFloat();
+            _offsets[i] = c;
+            int count = buffer.getInt();
+            for (int j = 0; j < count; j++)
+                _channelTypes[c++] = buffer.getInt();
+        }
+        _offsets[joints] = _channels;
+        if (keyed) {
+            _times = _block(buffer, _frames);
+            buffer.position(buffer.position() + 4 * _frames);
+        }
+        _motion = _block(buffer, _frames * _channels);
+        _row = new float[_channels];
+    }
+
+    /**
+     * Returns a little-endian float view of the next {@code size} floats of the {@code buffer}.
+     */
+    protected static FloatBuffer _block(ByteBuffer buffer, int size) {
+        ByteBuffer block = buffer.slice();
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer result = block.asFloatBuffer();
+        result.limit(size);
+        return result;
+    }
+
+    protected static int _padding(int length) {
+        return (4 - length % 4) % 4;
+    }
+
+    /**
+     * Returns the file path of the clip.
+     */
+    public String path() {
+        return _path;
+    }
+
+    /**
+     * Returns the joint names, parents first.
+     */
+    public String[] names() {
+        return _names;
+    }
+
+    /**
+     * Returns the index of the parent of each joint (see {@link #names()}), or -1 for the roots.
+     */
+    public int[] parents() {
+        return _parents;
+    }
+
+    /**
+     * Returns the number of frames of the clip.
+     */
+    public int frames() {
+        return _frames;
+    }
+
+    /**
+     * Returns the number of channels of a frame.
+     */
+    public int channels() {
+        return _channels;
+    }
+
+    /**
+     * Returns the frame time in seconds (0 for keyed clips).
+     *
+     * @see #time(int)
+     */
+    public float frameTime() {
+        return _frameTime;
+    }
+
+    /**
+     * Returns the time of the given {@code frame} in seconds.
+     */
+    public float time(int frame) {
+        return _times == null ? frame * _frameTime : _times.get(frame);
+    }
+
+    /**
+     * Returns the (read-only) mapped motion block. The value of channel {@code c} at frame
+     * {@code f} is {@code motion().get(f * channels() + c)}.
+     */
+    public FloatBuffer motion() {
+        return _motion;
+    }
+
+    /**
+     * Returns the skeleton the clip is bound to.
+     *
+     * @see #bind(Skeleton)
+     */
+    public Skeleton skeleton() {
+        return _skeleton;
+    }
+
+    /**
+     * Binds the clip to the {@code skeleton} joints having the same names than the clip ones.
+     * Clip joints not found in the skeleton are ignored when applying a frame.
+     */
+    public void bind(Skeleton skeleton) {
+        _skeleton = skeleton;
+        _nodes = new Node[_names.length];
+        for (int i = 0; i < _names.length; i++)
+            _nodes[i] = skeleton.joint(_names[i]);
+    }
+
+    /**
+     * Builds a skeleton having the clip hierarchy and rest pose, attached to the {@code reference}
+     * node, and binds the clip to it.
+     *
+     * @see #bind(Skeleton)
+     */
+    public Skeleton buildSkeleton(Node reference) {
+        Skeleton skeleton = new Skeleton(reference);
+        for (int i = 0; i < _names.length; i++) {
+            Node joint = _parents[i] == -1 ? skeleton.addJoint(_names[i], -1, 5) : skeleton.addJoint(_names[i], _names[_parents[i]], -1, 5);
+            joint.setTranslation(_rest[7 * i], _rest[7 * i + 1], _rest[7 * i + 2]);
+            joint.setRotation(_rest[7 * i + 3], _rest[7 * i + 4], _rest[7 * i + 5], _rest[7 * i + 6]);
+        }
+        bind(skeleton);
+        return skeleton;
+    }
+
+    /**
+     * Applies the {@code frame} to the bound skeleton joints (bypassing their constraints),
+     * reading its channel values straight from the mapped file.
+     *
+     * @see #bind(Skeleton)
+     */
+    public void applyFrame(int frame) {
+        if (_skeleton == null) {
+            System.out.println("Warning: the clip isn't bound to any skeleton. Nothing done!");
+            return;
+        }
+        if (frame < 0 || frame >= _frames) return;
+        int base = frame * _channels;
+        for (int c = 0; c < _channels; c++)
+            _row[c] = _motion.get(base + c);
+        for (int i = 0; i < _nodes.length; i++) {
+            if (_nodes[i] == null) continue;
+            int mask = BVHLoader._channelState(_row, _offsets[i], _channelTypes, _offsets[i], _offsets[i + 1] - _offsets[i], _scratch);
+            BVHLoader._applyState(_nodes[i], mask, _scratch);
+        }
+        _skeleton.restoreTargetsState();
+    }
+
+    /**
+     * Saves the {@code loader} motion as a clip at {@code path}. Compact loaders (see
+     * {@link BVHLoader#isCompact()}) keep their channels as they are, otherwise each
+     * posture is stored as a joint translation and rotation quaternion.
+     */
+    public static void save(BVHLoader loader, String path) throws IOException {
+        Skeleton skeleton = loader.skeleton();
+        List<Node> joints = _joints(skeleton);
+        if (loader.isCompact()) {
+            int[] counts = new int[joints.size()];
+            for (int i = 0; i < joints.size(); i++) {
+                BVHLoader.Properties properties = loader.joint().get(joints.get(i).id());
+                counts[i] = properties == null ? 0 : properties.channels;
+            }
+            _save(path, skeleton, joints, counts, loader.channelTypes(), loader.frameTime(), null, loader.frames(), loader.motion());
+        } else {
+            List<Posture> postures = new ArrayList<Posture>();
+            for (int i = 0; i < loader.postures(); i++)
+                postures.add(loader._postures.get(i));
+            _save(path, skeleton, joints, loader.frameTime(), null, postures);
+        }
+    }
+
+    /**
+     * Saves the {@code interpolator} key postures as a keyed clip at {@code path}, i.e., each
+     * frame holds a key posture (as joint translations and rotation quaternions) and its time.
+     */
+    public static void save(PostureInterpolator interpolator, String path) throws IOException {
+        List<Posture> postures = new ArrayList<Posture>();
+        float[] times = new float[interpolator.size()];
+        for (int i = 0; i < interpolator.size(); i++) {
+            postures.add(interpolator.keyPosture(i));
+            times[i] = interpolator.keyTime(i);
+        }
+        _save(path, interpolator.skeleton(), _joints(interpolator.skeleton()), 0, times, postures);
+    }
+
+    /**
+     * Returns the skeleton joints in depth-first order, i.e., that of the bvh channels.
+     */
+    protected static List<Node> _joints(Skeleton skeleton) {
+        List<Node> joints = new ArrayList<Node>();
+        for (Node node : Scene.branch(skeleton.reference()))
+            if (node != skeleton.reference() && skeleton.names().containsKey(node))
+                joints.add(node);
+        return joints;
+    }
+
+    /**
+     * Saves the {@code postures} as frames of a translation and a rotation quaternion per joint.
+     */
+    protected static void _save(String path, Skeleton skeleton, List<Node> joints, float frameTime, float[] times, List<Posture> postures) throws IOException {
+        int[] counts = new int[joints.size()];
+        int[] types = new int[7 * joints.size()];
+        float[] motion = new float[postures.size() * types.length];
+        for (int i = 0; i < joints.size(); i++) {
+            counts[i] = 7;
+            for (int j = 0; j < 7; j++)
+                types[7 * i + j] = j < 3 ? BVHLoader.XPOSITION + j : BVHLoader.XQUATERNION + j - 3;
+        }
+        int k = 0;
+        for (Posture posture : postures)
+            for (Node joint : joints) {
+                Node state = posture.jointState(skeleton.jointName(joint));
+                if (state == null) state = joint;
+                for (int j = 0; j < 3; j++)
+                    motion[k++] = state.translation()._vector[j];
+                for (int j = 0; j < 4; j++)
+                    motion[k++] = state.rotation()._quaternion[j];
+            }
+        _save(path, skeleton, joints, counts, types, frameTime, times, postures.size(), motion);
+    }
+
+    protected static void _save(String path, Skeleton skeleton, List<Node> joints, int[] counts, int[] types, float frameTime, float[] times, int frames, float[] motion) throws IOException {
+        int channels = types.length;
+        byte[][] names = new byte[joints.size()][];
+        int size = 7 * 4;
+        for (int i = 0; i < joints.size(); i++) {
+            names[i] = skeleton.jointName(joints.get(i)).getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[i].length + _padding(names[i].length) + 4 + 7 * 4 + 4 + 4 * counts[i];
+        }
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.putInt(joints.size()).putInt(frames).putInt(channels).putFloat(frameTime).putInt(times == null ? 0 : 1);
+        for (int i = 0, c = 0; i < joints.size(); i++) {
+            Node joint = joints.get(i);
+            header.putInt(names[i].length).put(names[i]);
+            for (int j = 0; j < _padding(names[i].length); j++)
+                header.put((byte) 0);
+            header.putInt(joint.reference() == skeleton.reference() ? -1 : joints.indexOf(joint.reference()));
+            for (int j = 0; j < 3; j++)
+                header.putFloat(joint.translation()._vector[j]);
+            for (int j = 0; j < 4; j++)
+                header.putFloat(joint.rotation()._quaternion[j]);
+            header.putInt(counts[i]);
+            for (int j = 0; j < counts[i]; j++)
+                header.putInt(types[c++]);
+        }
+        header.flip();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining())
+                channel.write(header);
+            if (times != null)
+                _write(channel, times, frames);
+            _write(channel, motion, frames * channels);
+        }
+    }
+
+    /**
+     * Writes the first {@code size} floats of {@code data} in chunks.
+     */
+    protected static void _write(FileChannel channel, float[] data, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer floats = buffer.asFloatBuffer();
+        for (int i = 0; i < size; ) {
+            int count = Math.min(floats.capacity(), size - i);
+            floats.clear();
+            floats.put(data, i, count);
+            buffer.clear();
+            buffer.limit(4 * count);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            i += count;
+        }
+    }
+}
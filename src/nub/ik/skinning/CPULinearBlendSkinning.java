@@ -8,11 +8,22 @@ import nub.processing.Scene;
 import processing.core.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
+ * Linear blend skinning computed on the CPU.
+ * <p>
+ * Vertex rest positions, joint indices and weights are kept in flat arrays. On each
+ * {@link #updateParams()} a 3x4 matrix is computed per joint and the vertices are then
+ * skinned in ranges of {@link #chunk()} vertices, in parallel on the common fork-join pool
+ * (see {@link #enableParallel(boolean)}), into the {@link #vertices()} array which is
+ * finally written back with one pass per shape, over its contiguous range of vertices,
+ * skipping the vertices that didn't move.
+ * <p>
  * Created by sebchaparr on 11/03/18.
  */
 public class CPULinearBlendSkinning implements Skinning {
@@ -20,13 +31,26 @@ public class CPULinearBlendSkinning implements Skinning {
   protected List<PShape> _shapes;
   protected List<Node> _skeleton;
   //Shader information
-  protected Quaternion[] _initialOrientations;
+  protected Quaternion[] _initialOrientations, _initialInverses;
   protected Vector[] _initialPositions;
-  protected Quaternion[] _currentOrientations;
-  protected Vector[] _currentPositions;
   protected Map<Node, Integer> _ids;
   protected List<Vertex> _vertices;
   protected Node _reference, _renderMesh;
+  //Packed information: 3 coordinates, _influences joints and weights per vertex, and a 3x4 matrix per joint
+  protected int _influences;
+  protected int _count;
+  //whether or not the _vertices (or their weights) changed since they were last packed
+  protected boolean _dirty = true;
+  protected float[] _restVertices, _skinnedVertices, _writtenVertices, _weights, _matrices;
+  protected int[] _joints, _vertexIds;
+  protected PShape[] _vertexShapes;
+  //contiguous vertex ranges sharing the same shape: [_rangeOffsets[r], _rangeOffsets[r + 1]) belongs to _rangeShapes[r]
+  protected PShape[] _rangeShapes;
+  protected int[] _rangeOffsets;
+  protected boolean _parallel = true;
+  protected int _chunk = 4096;
+  protected Vector _position = new Vector();
+  protected Quaternion _orientation = new Quaternion(), _rotation = new Quaternion();
 
   protected class Vertex {
     protected int[] _joints;
@@ -42,32 +66,6 @@ public class CPULinearBlendSkinning implements Skinning {
       _weights = weights;
       _initial = shape.getVertex(_vertexId).copy();
     }
-
-    protected void _applyTransformation() {
-      Vector curPos = new Vector(_initial.x, _initial.y, _initial.z);
-
-      Vector normal = new Vector(_shape.getNormalX(_vertexId),
-          _shape.getNormalY(_vertexId), _shape.getNormalZ(_vertexId));
-
-      Vector v = new Vector();
-      Vector n = new Vector();
-      for (int i = 0; i < _joints.length; i++) {
-        int idx = _joints[i];
-        if (_weights[i] == 0) continue;
-        Quaternion quat = _currentOrientations[idx];
-        Vector pos = _initialPositions[idx];
-        Vector off = _currentPositions[idx];
-        Vector u = Vector.subtract(curPos, pos);
-        u = quat.rotate(u);
-        u.add(pos);
-        u.add(off);
-        u.multiply(_weights[i]);
-        v.add(u);
-        n.add(Vector.multiply(quat.rotate(normal), _weights[i]));
-      }
-
-      _shape.setVertex(_vertexId, v.x(), v.y(), v.z());
-    }
   }
 
   public CPULinearBlendSkinning(List<Node> skeleton, String shape, String texture, float factor) {
@@ -87,6 +85,21 @@ public class CPULinearBlendSkinning implements Skinning {
   }
 
   public CPULinearBlendSkinning(List<Node> skeleton, String shape, String texture, float factor, boolean quad) {
+    this(skeleton, shape, texture, factor, quad, 3);
+  }
+
+  public CPULinearBlendSkinning(Skeleton skeleton, String shape, String texture, float factor, boolean quad, int influences) {
+    this(skeleton.BFS(), shape, texture, factor, quad, influences);
+    _reference = skeleton.reference();
+    _renderMesh.setReference(_reference);
+  }
+
+  /**
+   * Binds the {@code shape} mesh to the {@code skeleton}, each vertex being influenced by its
+   * nearest {@code influences} bones (see {@link SkinningWeights}).
+   */
+  public CPULinearBlendSkinning(List<Node> skeleton, String shape, String texture, float factor, boolean quad, int influences) {
+    _influences = Math.max(1, influences);
     this._shapes = new ArrayList<>();
     _ids = new HashMap<>();
     _skeleton = skeleton;
@@ -99,9 +112,9 @@ public class CPULinearBlendSkinning implements Skinning {
             }*/
     }
     _initialOrientations = new Quaternion[joints];
+    _initialInverses = new Quaternion[joints];
     _initialPositions = new Vector[joints];
-    _currentOrientations = new Quaternion[joints];
-    _currentPositions = new Vector[joints];
+    _matrices = new float[12 * joints];
 
     _vertices = new ArrayList<Vertex>();
     _shapes.add(createShape(Scene.pApplet.g, Scene.pApplet.g.loadShape(shape), texture, factor, quad));
@@ -130,6 +143,13 @@ public class CPULinearBlendSkinning implements Skinning {
     return _ids;
   }
 
+  /**
+   * Returns the number of bones influencing each vertex.
+   */
+  public int influences() {
+    return _influences;
+  }
+
   public void setReference(Node reference) {
     _reference = reference;
   }
@@ -140,25 +160,240 @@ public class CPULinearBlendSkinning implements Skinning {
       Vector v = _skeleton.get(i).position();
       Quaternion q = _skeleton.get(i).orientation();
       _initialOrientations[i] = q;
+      _initialInverses[i] = q.inverse();
       _initialPositions[i] = v.get();
     }
   }
 
+  /**
+   * Returns the skinned vertex coordinates (x, y, z per vertex, in creation order) computed
+   * by the last {@link #updateParams()}. Useful to upload them in bulk, e.g., to a custom vertex buffer.
+   */
+  public float[] vertices() {
+    return _skinnedVertices;
+  }
+
+  /**
+   * Returns the number of skinned vertices.
+   */
+  public int vertexCount() {
+    return _count;
+  }
+
+  /**
+   * Returns whether or not vertices are skinned in parallel.
+   *
+   * @see #enableParallel(boolean)
+   */
+  public boolean isParallel() {
+    return _parallel;
+  }
+
+  /**
+   * Same as {@code enableParallel(true)}.
+   *
+   * @see #enableParallel(boolean)
+   */
+  public void enableParallel() {
+    enableParallel(true);
+  }
+
+  /**
+   * Same as {@code enableParallel(false)}.
+   *
+   * @see #enableParallel(boolean)
+   */
+  public void disableParallel() {
+    enableParallel(false);
+  }
+
+  /**
+   * Enables or disables skinning the vertex ranges (see {@link #chunk()}) in parallel. Meshes
+   * with less than two ranges of vertices are always skinned sequentially.
+   */
+  public void enableParallel(boolean enable) {
+    _parallel = enable;
+  }
+
+  /**
+   * Returns the number of vertices skinned by a single (parallel) task. Default is 4096.
+   */
+  public int chunk() {
+    return _chunk;
+  }
+
+  /**
+   * Sets the number of vertices skinned by a single (parallel) task.
+   */
+  public void setChunk(int chunk) {
+    if (chunk < 1) {
+      System.out.println("Warning: chunk should be positive. Nothing done!");
+      return;
+    }
+    _chunk = chunk;
+  }
+
+  /**
+   * Sets the bones (given by their index in the {@link #skeleton()}, or -1 for none) and the
+   * weights influencing the {@code vertex}-th vertex (in creation order). Only the first
+   * {@link #influences()} of them are used. The packed data is rebuilt at the next
+   * {@link #updateParams()}.
+   */
+  public void setWeights(int vertex, int[] joints, float[] weights) {
+    if (joints.length != weights.length) {
+      System.out.println("Warning: joints and weights should have the same length. Nothing done!");
+      return;
+    }
+    Vertex v = _vertices.get(vertex);
+    v._joints = joints.clone();
+    v._weights = weights.clone();
+    _invalidate();
+  }
+
+  /**
+   * Internal use. Marks the {@code _vertices} information as changed, so that it's packed again
+   * at the next {@link #updateParams()}. Call it after modifying the vertices (or their weights) directly.
+   */
+  protected void _invalidate() {
+    _dirty = true;
+  }
+
+  /**
+   * Packs the {@code _vertices} information into flat arrays.
+   */
+  protected void _pack() {
+    _dirty = false;
+    _count = _vertices.size();
+    _restVertices = new float[3 * _count];
+    _skinnedVertices = new float[3 * _count];
+    _joints = new int[_influences * _count];
+    _weights = new float[_influences * _count];
+    _vertexIds = new int[_count];
+    _vertexShapes = new PShape[_count];
+    for (int i = 0; i < _count; i++) {
+      Vertex vertex = _vertices.get(i);
+      _restVertices[3 * i] = vertex._initial.x;
+      _restVertices[3 * i + 1] = vertex._initial.y;
+      _restVertices[3 * i + 2] = vertex._initial.z;
+      for (int j = 0; j < _influences; j++) {
+        // discard the influences of missing (-1) joints
+        boolean valid = j < vertex._joints.length && vertex._joints[j] >= 0 && vertex._weights[j] != 0;
+        _joints[_influences * i + j] = valid ? vertex._joints[j] : 0;
+        _weights[_influences * i + j] = valid ? vertex._weights[j] : 0;
+      }
+      _vertexIds[i] = vertex._vertexId;
+      _vertexShapes[i] = vertex._shape;
+    }
+    _writtenVertices = new float[3 * _count];
+    Arrays.fill(_writtenVertices, Float.NaN);
+    int ranges = 0;
+    for (int i = 0; i < _count; i++)
+      if (i == 0 || _vertexShapes[i] != _vertexShapes[i - 1])
+        ranges++;
+    _rangeShapes = new PShape[ranges];
+    _rangeOffsets = new int[ranges + 1];
+    for (int i = 0, r = 0; i < _count; i++)
+      if (i == 0 || _vertexShapes[i] != _vertexShapes[i - 1]) {
+        _rangeShapes[r] = _vertexShapes[i];
+        _rangeOffsets[r++] = i;
+      }
+    _rangeOffsets[ranges] = _count;
+  }
+
   @Override
   public void updateParams() {
-    //TODO: IT COULD BE DONE WITH LESS OPERATIONS
+    if (_dirty || _count != _vertices.size())
+      _pack();
+    // v' = R (v - p0) + p, where R = q q0^-1 takes the joint from its initial orientation q0 to
+    // its current one q, and p0 and p are the initial and current joint positions
     for (int i = 0; i < _skeleton.size(); i++) {
-      Vector v = Vector.subtract(_skeleton.get(i).position(), _initialPositions[i]);
-      Quaternion q = Quaternion.compose(_skeleton.get(i).orientation(), _initialOrientations[i].inverse());
-      _currentPositions[i] = v;
-      _currentOrientations[i] = q;
+      Node joint = _skeleton.get(i);
+      joint.position(_position);
+      joint.orientation(_orientation);
+      Quaternion.compose(_orientation, _initialInverses[i], _rotation);
+      _rotation.normalize();
+      _matrix(_matrices, i, _rotation, _initialPositions[i], _position);
     }
-    for (Vertex vertex : _vertices) {
-      vertex._applyTransformation();
+    int chunks = (_count + _chunk - 1) / _chunk;
+    if (_parallel && chunks > 1)
+      IntStream.range(0, chunks).parallel().forEach(chunk -> _skin(chunk * _chunk, Math.min(_count, (chunk + 1) * _chunk)));
+    else
+      _skin(0, _count);
+    for (int r = 0; r < _rangeShapes.length; r++)
+      _write(r);
+  }
+
+  /**
+   * Writes the skinned vertices of the {@code r}-th range back to its shape, skipping those
+   * that didn't move since they were last written. Note that PShape has no bulk vertex setter
+   * that keeps its tessellation ({@code setPath} re-tessellates it), hence the vertices are
+   * set one by one, but shape by shape over contiguous ranges of the packed arrays.
+   */
+  protected void _write(int r) {
+    PShape shape = _rangeShapes[r];
+    for (int i = _rangeOffsets[r]; i < _rangeOffsets[r + 1]; i++) {
+      int k = 3 * i;
+      float x = _skinnedVertices[k], y = _skinnedVertices[k + 1], z = _skinnedVertices[k + 2];
+      if (x == _writtenVertices[k] && y == _writtenVertices[k + 1] && z == _writtenVertices[k + 2])
+        continue;
+      shape.setVertex(_vertexIds[i], x, y, z);
+      _writtenVertices[k] = x;
+      _writtenVertices[k + 1] = y;
+      _writtenVertices[k + 2] = z;
     }
+  }
 
+  /**
+   * Stores into {@code m} the rows of the {@code i}-th joint 3x4 matrix, i.e., the {@code rotation}
+   * matrix and the {@code position - rotation * initial} translation.
+   */
+  protected static void _matrix(float[] m, int i, Quaternion rotation, Vector initial, Vector position) {
+    float x = rotation.x(), y = rotation.y(), z = rotation.z(), w = rotation.w();
+    int k = 12 * i;
+    m[k] = 1 - 2 * (y * y + z * z);
+    m[k + 1] = 2 * (x * y - w * z);
+    m[k + 2] = 2 * (x * z + w * y);
+    m[k + 4] = 2 * (x * y + w * z);
+    m[k + 5] = 1 - 2 * (x * x + z * z);
+    m[k + 6] = 2 * (y * z - w * x);
+    m[k + 8] = 2 * (x * z - w * y);
+    m[k + 9] = 2 * (y * z + w * x);
+    m[k + 10] = 1 - 2 * (x * x + y * y);
+    for (int r = 0; r < 3; r++)
+      m[k + 4 * r + 3] = position._vector[r] - (m[k + 4 * r] * initial._vector[0] + m[k + 4 * r + 1] * initial._vector[1] + m[k + 4 * r + 2] * initial._vector[2]);
   }
 
+  /**
+   * Skins the vertices in {@code [from, to)} into {@link #vertices()}.
+   */
+  protected void _skin(int from, int to) {
+    float[] m = _matrices;
+    for (int i = from; i < to; i++) {
+      float vx = _restVertices[3 * i], vy = _restVertices[3 * i + 1], vz = _restVertices[3 * i + 2];
+      float x = 0, y = 0, z = 0;
+      for (int j = _influences * i; j < _influences * (i + 1); j++) {
+        float weight = _weights[j];
+        if (weight == 0) continue;
+        int k = 12 * _joints[j];
+        x += weight * (m[k] * vx + m[k + 1] * vy + m[k + 2] * vz + m[k + 3]);
+        y += weight * (m[k + 4] * vx + m[k + 5] * vy + m[k + 6] * vz + m[k + 7]);
+        z += weight * (m[k + 8] * vx + m[k + 9] * vy + m[k + 10] * vz + m[k + 11]);
+      }
+      _skinnedVertices[3 * i] = x;
+      _skinnedVertices[3 * i + 1] = y;
+      _skinnedVertices[3 * i + 2] = z;
+    }
+  }
+
+  /**
+   * Returns the 3 nearest bones of the {@code branch} to the {@code vector} and their weights, as
+   * {@code {joint0, joint1, joint2, weight0, weight1, weight2}}, by testing every bone.
+   *
+   * @deprecated The weights are computed in bulk by {@link SkinningWeights#compute(float[], int[], float[])}
+   * when the shape is created, using any number of {@link #influences()}. Use {@link #setWeights(int, int[], float[])}
+   * to redefine them.
+   */
+  @Deprecated
   public float[] addWeights(List<Node> branch, PVector vector) {
     Vector position = new Vector(vector.x, vector.y, vector.z);
     float total_dist = 0.f;
@@ -254,38 +489,24 @@ public class CPULinearBlendSkinning implements Skinning {
     s.noStroke();
     s.texture(tex);
     s.textureMode(PConstants.NORMAL);
-    if (r.getChildCount() == 0) {
-      for (int j = 0; j < r.getVertexCount(); j++) {
-        PVector p = r.getVertex(j).mult(scaleFactor);
-        PVector n = r.getNormal(j);
-        float u = r.getTextureU(j);
-        float v = r.getTextureV(j);
+    float[] vertices = SkinningWeights.vertices(r, scaleFactor);
+    int[] joints = new int[_influences * vertices.length / 3];
+    float[] weights = new float[joints.length];
+    new SkinningWeights(_skeleton, _ids, _influences).compute(vertices, joints, weights);
+    int vc = 0;
+    for (int i = 0; i < Math.max(1, r.getChildCount()); i++) {
+      PShape child = r.getChildCount() == 0 ? r : r.getChild(i);
+      for (int j = 0; j < child.getVertexCount(); j++) {
+        PVector n = child.getNormal(j);
         s.normal(n.x, n.y, n.z);
-        float[] params = addWeights(_skeleton, p);
-        s.vertex(p.x, p.y, p.z, u, v);
+        s.vertex(vertices[3 * vc], vertices[3 * vc + 1], vertices[3 * vc + 2], child.getTextureU(j), child.getTextureV(j));
         //create vertex
-        _vertices.add(new Vertex(s, j, new int[]{(int) params[0],
-            (int) params[1], (int) params[2]}, new float[]{params[3], params[4], params[5]}));
-      }
-    } else {
-      int vc = 0;
-      for (int i = 0; i < r.getChildCount(); i++) {
-        for (int j = 0; j < r.getChild(i).getVertexCount(); j++) {
-          PVector p = r.getChild(i).getVertex(j).mult(scaleFactor);
-          PVector n = r.getChild(i).getNormal(j);
-          float u = r.getChild(i).getTextureU(j);
-          float v = r.getChild(i).getTextureV(j);
-          s.normal(n.x, n.y, n.z);
-
-          float[] params = addWeights(_skeleton, p);
-          s.vertex(p.x, p.y, p.z, u, v);
-          //create vertex
-          _vertices.add(new Vertex(s, vc, new int[]{(int) params[0],
-              (int) params[1], (int) params[2]}, new float[]{params[3], params[4], params[5]}));
-          vc++;
-        }
+        _vertices.add(new Vertex(s, vc, Arrays.copyOfRange(joints, _influences * vc, _influences * (vc + 1)),
+            Arrays.copyOfRange(weights, _influences * vc, _influences * (vc + 1))));
+        vc++;
       }
     }
+    _invalidate();
     s.endShape();
     return s;
   }
@@ -5,16 +5,28 @@ import nub.ik.animation.Skeleton;
 import nub.primitives.Quaternion;
 import nub.primitives.Vector;
 import nub.processing.Scene;
+import nub.timing.TimingHandler;
 import processing.core.*;
 import processing.opengl.PShader;
 
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Linear blend skinning computed on the GPU.
+ * <p>
+ * Joint transformations are sent to the skinning shader as a matrix palette, i.e., three
+ * {@code vec4} rows of a 3x4 matrix per joint, whose size is set to the number of joints
+ * when the shader is loaded, so that skeletons having hundreds of joints are supported
+ * (up to a third of the {@code GL_MAX_VERTEX_UNIFORM_VECTORS} of the graphics card).
+ * The palette is only recomputed and uploaded when some joint has been modified (see
+ * {@link Node#lastUpdate()}) since the previous upload.
+ * <p>
  * Created by sebchaparr on 11/03/18.
  */
 public class GPULinearBlendSkinning implements Skinning {
@@ -23,12 +35,15 @@ public class GPULinearBlendSkinning implements Skinning {
   protected List<Node> _skeleton;
   //Shader information
   protected PShader _shader;
-  protected Quaternion[] _initialOrientations;
+  protected Quaternion[] _initialOrientations, _initialInverses;
   protected Vector[] _initialPositions;
-  protected float[] _initialPositionsArray;
-  protected float[] _positionsArray;
-  protected float[] _orientationsArray;
+  protected float[] _palette;
+  protected long _lastUpload = -1;
+  protected int _influences = 3;
+  protected Vector _position = new Vector();
+  protected Quaternion _orientation = new Quaternion(), _rotation = new Quaternion();
   protected Map<Node, Integer> _ids;
+  protected List<Node> _ancestors = new ArrayList<>(); //non-joint ancestors of the skeleton (e.g., its reference)
   protected final String _fragmentPath = "frag.glsl";
   protected final String _vertexPath = "skinning.glsl";
   protected Node _reference, _renderMesh;
@@ -47,12 +62,11 @@ public class GPULinearBlendSkinning implements Skinning {
     }
 
     _initialOrientations = new Quaternion[joints];
+    _initialInverses = new Quaternion[joints];
     _initialPositions = new Vector[joints];
-    _initialPositionsArray = new float[joints * 3];
-    _positionsArray = new float[joints * 3];
-    _orientationsArray = new float[joints * 4];
+    _palette = new float[joints * 12];
     PApplet pApplet = Scene.pApplet;
-    _shader = pApplet.loadShader(_fragmentPath, _vertexPath);
+    _shader = _loadShader(pApplet, joints);
     _shapes.add(shape);
     initParams();
 
@@ -85,6 +99,23 @@ public class GPULinearBlendSkinning implements Skinning {
   }
 
   public GPULinearBlendSkinning(List<Node> skeleton, String shape, String texture, float factor, boolean quad) {
+    this(skeleton, shape, texture, factor, quad, 3);
+  }
+
+  public GPULinearBlendSkinning(Skeleton skeleton, String shape, String texture, float factor, boolean quad, int influences) {
+    this(skeleton.BFS(), shape, texture, factor, quad, influences);
+    _reference = skeleton.reference();
+    _renderMesh.setReference(_reference);
+  }
+
+  /**
+   * Binds the {@code shape} mesh to the {@code skeleton}, each vertex being influenced by its
+   * nearest {@code influences} bones (see {@link SkinningWeights}), which should be in {@code [1..4]}.
+   */
+  public GPULinearBlendSkinning(List<Node> skeleton, String shape, String texture, float factor, boolean quad, int influences) {
+    if (influences < 1 || influences > 4)
+      System.out.println("Warning: the number of influences should be in [1..4]. Clamping it!");
+    _influences = Math.max(1, Math.min(4, influences));
     PGraphics pg = Scene.pApplet.g;
     this._shapes = new ArrayList<>();
     _ids = new HashMap<>();
@@ -96,12 +127,11 @@ public class GPULinearBlendSkinning implements Skinning {
       _skeleton.get(i)._boneColor = c;
     }
     _initialOrientations = new Quaternion[joints];
+    _initialInverses = new Quaternion[joints];
     _initialPositions = new Vector[joints];
-    _initialPositionsArray = new float[joints * 3];
-    _positionsArray = new float[joints * 3];
-    _orientationsArray = new float[joints * 4];
+    _palette = new float[joints * 12];
     PApplet pApplet = pg.parent;
-    _shader = pApplet.loadShader(_fragmentPath, _vertexPath);
+    _shader = _loadShader(pApplet, joints);
     _shapes.add(createShape(pg, pg.loadShape(shape), texture, factor, quad));
     initParams();
 
@@ -112,6 +142,32 @@ public class GPULinearBlendSkinning implements Skinning {
   }
 
 
+  /**
+   * Loads the skinning shader having a matrix palette of {@code joints} matrices.
+   */
+  protected PShader _loadShader(PApplet pApplet, int joints) {
+    String[] source = pApplet.loadStrings(_vertexPath);
+    for (int i = 0; i < source.length; i++)
+      if (source[i].startsWith("#define MAX_BONES"))
+        source[i] = "#define MAX_BONES " + Math.max(1, joints);
+    try {
+      File file = File.createTempFile("skinning", ".glsl");
+      file.deleteOnExit();
+      pApplet.saveStrings(file.getAbsolutePath(), source);
+      return pApplet.loadShader(_fragmentPath, file.getAbsolutePath());
+    } catch (IOException e) {
+      e.printStackTrace();
+      return pApplet.loadShader(_fragmentPath, _vertexPath);
+    }
+  }
+
+  /**
+   * Returns the number of bones influencing each vertex.
+   */
+  public int influences() {
+    return _influences;
+  }
+
   public PShader shader() {
     return _shader;
   }
@@ -143,32 +199,46 @@ public class GPULinearBlendSkinning implements Skinning {
       Vector v = _skeleton.get(i).position();
       Quaternion q = _skeleton.get(i).orientation();
       _initialOrientations[i] = q;
+      _initialInverses[i] = q.inverse();
       _initialPositions[i] = v.get();
-      _initialPositionsArray[i * 3 + 0] = v.x();
-      _initialPositionsArray[i * 3 + 1] = v.y();
-      _initialPositionsArray[i * 3 + 2] = v.z();
     }
-    _shader.set("bonePositionOrig", _initialPositionsArray);
     _shader.set("boneLength", _skeleton.size());
     _shader.set("paintMode", -1);
+    _lastUpload = -1;
+    _ancestors.clear();
+    for (Node joint : _skeleton) {
+      for (Node ancestor = joint.reference(); ancestor != null && !_ids.containsKey(ancestor); ancestor = ancestor.reference())
+        if (!_ancestors.contains(ancestor))
+          _ancestors.add(ancestor);
+    }
   }
 
+  /**
+   * Uploads the joint matrix palette to the shader, only if some joint, or some of the
+   * non-joint ancestors of the skeleton (e.g., its reference), has been modified since the
+   * previous upload. Call {@link #initParams()} again if the skeleton is re-parented.
+   *
+   * @see Node#lastUpdate()
+   */
   @Override
   public void updateParams() {
-    //TODO: IT COULD BE DONE WITH LESS OPERATIONS
+    boolean modified = _lastUpload < 0;
+    for (int i = 0; i < _skeleton.size() && !modified; i++)
+      modified = _skeleton.get(i).lastUpdate() >= _lastUpload;
+    for (int i = 0; i < _ancestors.size() && !modified; i++)
+      modified = _ancestors.get(i).lastUpdate() >= _lastUpload;
+    if (!modified)
+      return;
     for (int i = 0; i < _skeleton.size(); i++) {
-      Vector v = Vector.subtract(_skeleton.get(i).position(), _initialPositions[i]);
-      Quaternion q = Quaternion.compose(_skeleton.get(i).orientation(), _initialOrientations[i].inverse());
-      _positionsArray[i * 3 + 0] = v.x();
-      _positionsArray[i * 3 + 1] = v.y();
-      _positionsArray[i * 3 + 2] = v.z();
-      _orientationsArray[i * 4 + 0] = q.x();
-      _orientationsArray[i * 4 + 1] = q.y();
-      _orientationsArray[i * 4 + 2] = q.z();
-      _orientationsArray[i * 4 + 3] = q.w();
+      Node joint = _skeleton.get(i);
+      joint.position(_position);
+      joint.orientation(_orientation);
+      Quaternion.compose(_orientation, _initialInverses[i], _rotation);
+      _rotation.normalize();
+      CPULinearBlendSkinning._matrix(_palette, i, _rotation, _initialPositions[i], _position);
     }
-    _shader.set("bonePosition", _positionsArray);
-    _shader.set("boneRotation", _orientationsArray);
+    _shader.set("bones", _palette, 4);
+    _lastUpload = TimingHandler.frameCount;
   }
 
   public void paintAllJoints() {
@@ -280,34 +350,27 @@ public class GPULinearBlendSkinning implements Skinning {
     s.noStroke();
     s.texture(tex);
     s.textureMode(PConstants.NORMAL);
-    if (r.getChildCount() == 0) {
-      for (int j = 0; j < r.getVertexCount(); j++) {
-        PVector p = r.getVertex(j).mult(scaleFactor);
-        System.out.println("scale " + scaleFactor);
-        System.out.println("v " + p);
-        PVector n = r.getNormal(j);
-        float u = r.getTextureU(j);
-        float v = r.getTextureV(j);
+    float[] vertices = SkinningWeights.vertices(r, scaleFactor);
+    int[] joints = new int[_influences * vertices.length / 3];
+    float[] weights = new float[joints.length];
+    new SkinningWeights(_skeleton, _ids, _influences).compute(vertices, joints, weights);
+    // the shader joints and weights attributes are vec4, unused influences get a null weight
+    float[] jointAttribute = new float[4], weightAttribute = new float[4];
+    int vc = 0;
+    for (int i = 0; i < Math.max(1, r.getChildCount()); i++) {
+      PShape child = r.getChildCount() == 0 ? r : r.getChild(i);
+      for (int j = 0; j < child.getVertexCount(); j++) {
+        PVector n = child.getNormal(j);
         s.normal(n.x, n.y, n.z);
-        float[] params = addWeights(_skeleton, p);
-        s.attrib("joints", params[0] * 1.f, params[1] * 1.f, params[2] * 1.f);
-        s.attrib("weights", params[3], params[4], params[5]);
-        s.vertex(p.x, p.y, p.z, u, v);
-      }
-    } else {
-      for (int i = 0; i < r.getChildCount(); i++) {
-        for (int j = 0; j < r.getChild(i).getVertexCount(); j++) {
-          PVector p = r.getChild(i).getVertex(j).mult(scaleFactor);
-          PVector n = r.getChild(i).getNormal(j);
-          float u = r.getChild(i).getTextureU(j);
-          float v = r.getChild(i).getTextureV(j);
-          s.normal(n.x, n.y, n.z);
-          float[] params = addWeights(_skeleton, p);
-          s.attrib("joints", params[0] * 1.f, params[1] * 1.f, params[2] * 1.f);
-          s.attrib("weights", params[3], params[4], params[5]);
-
-          s.vertex(p.x, p.y, p.z, u, v);
+        for (int k = 0; k < 4; k++) {
+          boolean valid = k < _influences && joints[_influences * vc + k] >= 0;
+          jointAttribute[k] = valid ? joints[_influences * vc + k] : 0;
+          weightAttribute[k] = valid ? weights[_influences * vc + k] : 0;
         }
+        s.attrib("joints", jointAttribute);
+        s.attrib("weights", weightAttribute);
+        s.vertex(vertices[3 * vc], vertices[3 * vc + 1], vertices[3 * vc + 2], child.getTextureU(j), child.getTextureV(j));
+        vc++;
       }
     }
     s.endShape();
@@ -0,0 +1,336 @@
+package nub.ik.skinning;
+
+import nub.core.Node;
+import nub.primitives.Vector;
+import processing.core.PShape;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the automatic skinning weights of a mesh, i.e., for each vertex its nearest
+ * {@link #influences()} bones and their weights, which are inversely proportional to the
+ * 10th power of the vertex-bone distance (see {@link CPULinearBlendSkinning#addWeights(List, processing.core.PVector)}).
+ * <p>
+ * A bone is the segment joining a joint to its reference joint and it is assigned to the
+ * latter. Bones are indexed in a bounding volume hierarchy so that a vertex query only
+ * visits the bones near to it, and the vertices are processed in parallel on the common
+ * fork-join pool. Results are cached on disk (see {@link #setCacheDirectory(String)}), keyed
+ * by a hash of the vertices, the bones and the number of influences, so that binding the
+ * same mesh to the same skeleton is instant on subsequent runs.
+ */
+public class SkinningWeights {
+  protected static String _cacheDirectory = new File(System.getProperty("java.io.tmpdir"), "nub-skinning").getPath();
+  protected static final int _MAGIC = 0x4E555357;
+  protected int _influences;
+  // bone segments (6 floats each) and the index of the joint they are assigned to
+  protected float[] _segments;
+  protected int[] _joints;
+  // bounding volume hierarchy: per node bounds (6 floats), children (or first bone and bone count for leaves)
+  protected float[] _bounds;
+  protected int[] _left, _right, _start, _count;
+  protected int[] _order;
+  protected int _nodes;
+  protected static final int _LEAF = 4;
+
+  /**
+   * Indexes the bones of the {@code skeleton} joints whose reference is found in {@code ids},
+   * which maps each joint to the index its influences are reported with.
+   */
+  public SkinningWeights(List<Node> skeleton, Map<Node, Integer> ids, int influences) {
+    _influences = Math.max(1, influences);
+    List<Node> bones = new ArrayList<Node>();
+    for (Node joint : skeleton) {
+      if (ids.get(joint.reference()) == null) continue;
+      if (joint.translation().magnitude() <= Float.MIN_VALUE) continue;
+      bones.add(joint);
+    }
+    _segments = new float[6 * bones.size()];
+    _joints = new int[bones.size()];
+    for (int i = 0; i < bones.size(); i++) {
+      Vector parent = bones.get(i).reference().position();
+      Vector position = bones.get(i).position();
+      for (int j = 0; j < 3; j++) {
+        _segments[6 * i + j] = parent._vector[j];
+        _segments[6 * i + 3 + j] = position._vector[j];
+      }
+      _joints[i] = ids.get(bones.get(i).reference());
+    }
+    _build();
+  }
+
+  /**
+   * Returns the number of influences (bones) per vertex.
+   */
+  public int influences() {
+    return _influences;
+  }
+
+  /**
+   * Returns the directory where weights are cached, or {@code null} if caching is disabled.
+   */
+  public static String cacheDirectory() {
+    return _cacheDirectory;
+  }
+
+  /**
+   * Sets the directory where weights are cached. Pass {@code null} to disable caching.
+   * Default is {@code nub-skinning} within the {@code java.io.tmpdir} directory.
+   */
+  public static void setCacheDirectory(String directory) {
+    _cacheDirectory = directory;
+  }
+
+  /**
+   * Returns the coordinates (x, y, z per vertex) of the {@code shape} vertices, or of the vertices
+   * of its children if it has any, scaled by {@code scale}.
+   */
+  public static float[] vertices(PShape shape, float scale) {
+    int count = 0;
+    for (int i = 0; i < Math.max(1, shape.getChildCount()); i++)
+      count += (shape.getChildCount() == 0 ? shape : shape.getChild(i)).getVertexCount();
+    float[] vertices = new float[3 * count];
+    int k = 0;
+    for (int i = 0; i < Math.max(1, shape.getChildCount()); i++) {
+      PShape child = shape.getChildCount() == 0 ? shape : shape.getChild(i);
+      for (int j = 0; j < child.getVertexCount(); j++) {
+        vertices[k++] = child.getVertexX(j) * scale;
+        vertices[k++] = child.getVertexY(j) * scale;
+        vertices[k++] = child.getVertexZ(j) * scale;
+      }
+    }
+    return vertices;
+  }
+
+  protected void _build() {
+    int bones = _joints.length;
+    _order = new int[bones];
+    for (int i = 0; i < bones; i++)
+      _order[i] = i;
+    int capacity = Math.max(1, 2 * bones);
+    _bounds = new float[6 * capacity];
+    _left = new int[capacity];
+    _right = new int[capacity];
+    _start = new int[capacity];
+    _count = new int[capacity];
+    _nodes = 0;
+    float[] centroids = new float[3 * bones];
+    for (int i = 0; i < bones; i++)
+      for (int j = 0; j < 3; j++)
+        centroids[3 * i + j] = (_segments[6 * i + j] + _segments[6 * i + 3 + j]) / 2;
+    _build(0, bones, centroids);
+  }
+
+  /**
+   * Builds the node holding the bones {@code _order[from..to)} by splitting them at the
+   * median centroid of the longest axis. Returns the node index.
+   */
+  protected int _build(int from, int to, float[] centroids) {
+    int node = _nodes++;
+    float[] b = _bounds;
+    b[6 * node] = b[6 * node + 1] = b[6 * node + 2] = Float.MAX_VALUE;
+    b[6 * node + 3] = b[6 * node + 4] = b[6 * node + 5] = -Float.MAX_VALUE;
+    for (int i = from; i < to; i++)
+      for (int j = 0; j < 3; j++) {
+        int bone = _order[i];
+        b[6 * node + j] = Math.min(b[6 * node + j], Math.min(_segments[6 * bone + j], _segments[6 * bone + 3 + j]));
+        b[6 * node + 3 + j] = Math.max(b[6 * node + 3 + j], Math.max(_segments[6 * bone + j], _segments[6 * bone + 3 + j]));
+      }
+    if (to - from <= _LEAF) {
+      _start[node] = from;
+      _count[node] = to - from;
+      return node;
+    }
+    int axis = 0;
+    for (int j = 1; j < 3; j++)
+      if (b[6 * node + 3 + j] - b[6 * node + j] > b[6 * node + 3 + axis] - b[6 * node + axis])
+        axis = j;
+    int middle = (from + to) / 2;
+    _select(from, to - 1, middle, axis, centroids);
+    _left[node] = _build(from, middle, centroids);
+    _right[node] = _build(middle, to, centroids);
+    return node;
+  }
+
+  /**
+   * Partially sorts {@code _order[from..to]} so that its {@code k}-th element is the one having
+   * the k-th centroid along the {@code axis} (quickselect).
+   */
+  protected void _select(int from, int to, int k, int axis, float[] centroids) {
+    while (from < to) {
+      float pivot = centroids[3 * _order[(from + to) >>> 1] + axis];
+      int i = from, j = to;
+      while (i <= j) {
+        while (centroids[3 * _order[i] + axis] < pivot) i++;
+        while (centroids[3 * _order[j] + axis] > pivot) j--;
+        if (i <= j) {
+          int swap = _order[i];
+          _order[i++] = _order[j];
+          _order[j--] = swap;
+        }
+      }
+      if (k <= j) to = j;
+      else if (k >= i) from = i;
+      else return;
+    }
+  }
+
+  /**
+   * Returns the squared distance from the point to the bone segment.
+   */
+  protected float _distance(int bone, float x, float y, float z) {
+    float[] s = _segments;
+    float ax = s[6 * bone], ay = s[6 * bone + 1], az = s[6 * bone + 2];
+    float lx = s[6 * bone + 3] - ax, ly = s[6 * bone + 4] - ay, lz = s[6 * bone + 5] - az;
+    float px = x - ax, py = y - ay, pz = z - az;
+    float u = (px * lx + py * ly + pz * lz) / (lx * lx + ly * ly + lz * lz);
+    u = Math.max(0, Math.min(1, u));
+    px -= u * lx;
+    py -= u * ly;
+    pz -= u * lz;
+    return px * px + py * py + pz * pz;
+  }
+
+  /**
+   * Returns the squared distance from the point to the node bounds.
+   */
+  protected float _distance(float[] bounds, int node, float x, float y, float z) {
+    float dx = Math.max(0, Math.max(bounds[6 * node] - x, x - bounds[6 * node + 3]));
+    float dy = Math.max(0, Math.max(bounds[6 * node + 1] - y, y - bounds[6 * node + 4]));
+    float dz = Math.max(0, Math.max(bounds[6 * node + 2] - z, z - bounds[6 * node + 5]));
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /**
+   * Stores the nearest bones of the vertex {@code (x, y, z)} into {@code joints[offset..offset + influences())}
+   * and their weights into {@code weights}. Missing bones are reported as joint {@code -1} with a null weight.
+   * {@code distances} ({@code influences()} long) and {@code stack} are scratch arrays.
+   */
+  protected void _weights(float x, float y, float z, int[] joints, float[] weights, int offset, float[] distances, int[] stack) {
+    int k = _influences;
+    for (int i = 0; i < k; i++) {
+      distances[i] = Float.MAX_VALUE;
+      joints[offset + i] = -1;
+    }
+    if (_joints.length > 0) {
+      int top = 0;
+      stack[top++] = 0;
+      while (top > 0) {
+        int node = stack[--top];
+        if (_distance(_bounds, node, x, y, z) > distances[k - 1]) continue;
+        if (_count[node] > 0) {
+          for (int i = _start[node]; i < _start[node] + _count[node]; i++) {
+            int bone = _order[i];
+            float distance = _distance(bone, x, y, z);
+            if (distance >= distances[k - 1]) continue;
+            int l = k - 1;
+            for (; l > 0 && distances[l - 1] > distance; l--) {
+              distances[l] = distances[l - 1];
+              joints[offset + l] = joints[offset + l - 1];
+            }
+            distances[l] = distance;
+            joints[offset + l] = bone;
+          }
+        } else {
+          // visit the nearest child first
+          int left = _left[node], right = _right[node];
+          boolean leftFirst = _distance(_bounds, left, x, y, z) <= _distance(_bounds, right, x, y, z);
+          stack[top++] = leftFirst ? right : left;
+          stack[top++] = leftFirst ? left : right;
+        }
+      }
+    }
+    // w_i = (1 / d_i^10) / sum_j (1 / d_j^10), evaluated as (d_0 / d_i)^10 to avoid overflows
+    double nearest = distances[0], total = 0;
+    for (int i = 0; i < k; i++) {
+      double weight = 0;
+      if (joints[offset + i] != -1)
+        weight = nearest == 0 ? (distances[i] == 0 ? 1 : 0) : Math.pow(nearest / distances[i], 5);
+      weights[offset + i] = (float) weight;
+      total += weight;
+    }
+    for (int i = 0; i < k; i++) {
+      weights[offset + i] = total > 0 ? (float) (weights[offset + i] / total) : 0;
+      if (joints[offset + i] != -1)
+        joints[offset + i] = _joints[joints[offset + i]];
+    }
+  }
+
+  /**
+   * Computes the weights of the {@code vertices} (x, y, z per vertex) in parallel, or loads them
+   * from the cache, into {@code joints} (the joint indices) and {@code weights}, both having
+   * {@link #influences()} entries per vertex.
+   */
+  public void compute(float[] vertices, int[] joints, float[] weights) {
+    int count = vertices.length / 3;
+    File cache = _cacheDirectory == null ? null : new File(_cacheDirectory, Long.toHexString(_hash(vertices)) + ".weights");
+    if (cache != null && _load(cache, count, joints, weights))
+      return;
+    int chunk = 1024;
+    IntStream.range(0, (count + chunk - 1) / chunk).parallel().forEach(c -> {
+      float[] distances = new float[_influences];
+      int[] stack = new int[2 * _nodes + 1];
+      for (int i = c * chunk; i < Math.min(count, (c + 1) * chunk); i++)
+        _weights(vertices[3 * i], vertices[3 * i + 1], vertices[3 * i + 2], joints, weights, _influences * i, distances, stack);
+    });
+    if (cache != null)
+      _save(cache, count, joints, weights);
+  }
+
+  /**
+   * Returns a 64-bit FNV-1a hash of the vertices, bones and influences.
+   */
+  protected long _hash(float[] vertices) {
+    long hash = 0xcbf29ce484222325L;
+    hash = _hash(hash, _influences);
+    hash = _hash(hash, vertices.length);
+    for (float value : vertices)
+      hash = _hash(hash, Float.floatToIntBits(value));
+    for (float value : _segments)
+      hash = _hash(hash, Float.floatToIntBits(value));
+    for (int joint : _joints)
+      hash = _hash(hash, joint);
+    return hash;
+  }
+
+  protected static long _hash(long hash, int value) {
+    for (int i = 0; i < 4; i++) {
+      hash ^= (value >>> (8 * i)) & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  protected boolean _load(File file, int count, int[] joints, float[] weights) {
+    if (!file.exists()) return false;
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (input.readInt() != _MAGIC || input.readInt() != count || input.readInt() != _influences)
+        return false;
+      for (int i = 0; i < joints.length; i++)
+        joints[i] = input.readInt();
+      for (int i = 0; i < weights.length; i++)
+        weights[i] = input.readFloat();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  protected void _save(File file, int count, int[] joints, float[] weights) {
+    file.getParentFile().mkdirs();
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      output.writeInt(_MAGIC);
+      output.writeInt(count);
+      output.writeInt(_influences);
+      for (int joint : joints)
+        output.writeInt(joint);
+      for (float weight : weights)
+        output.writeFloat(weight);
+    } catch (IOException e) {
+      System.out.println("Warning: skinning weights couldn't be cached at " + file.getPath());
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package nub.ik.solver;
+
+import nub.core.Node;
+import nub.core.constraint.Constraint;
+import nub.primitives.Quaternion;
+import nub.primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An array-backed snapshot of the state of a set of nodes (e.g., one or several kinematic
+ * chains), meant to save and restore intermediate solver configurations without creating
+ * objects. The local rotations and translations of the nodes, together with their world
+ * orientations and positions (taken from the {@link NodeInformation} caches when the nodes
+ * are added through them), are kept in contiguous float arrays (4 floats per quaternion,
+ * i.e., {@code x, y, z, w}, and 3 per vector) which only grow when a larger snapshot is taken.
+ * <p>
+ * Since the arrays are reused, snapshots should be recycled, either by calling
+ * {@link #save(List)} again or by obtaining them from a {@link Pool}.
+ */
+public class ChainSnapshot {
+  /**
+   * A stack-like pool of snapshots, e.g., to keep the nested states of a recursive search.
+   */
+  public static class Pool {
+    protected List<ChainSnapshot> _free = new ArrayList<ChainSnapshot>();
+
+    /**
+     * Returns an empty snapshot, either a released one or a new one if there's none.
+     *
+     * @see #release(ChainSnapshot)
+     */
+    public ChainSnapshot acquire() {
+      if (_free.isEmpty()) return new ChainSnapshot();
+      ChainSnapshot snapshot = _free.remove(_free.size() - 1);
+      snapshot.clear();
+      return snapshot;
+    }
+
+    /**
+     * Returns the {@code snapshot} to the pool.
+     *
+     * @see #acquire()
+     */
+    public void release(ChainSnapshot snapshot) {
+      _free.add(snapshot);
+    }
+  }
+
+  protected int _size;
+  protected Node[] _nodes;
+  protected NodeInformation[] _information; //null entries for nodes added without information
+  protected float[] _rotations, _translations, _orientations, _positions;
+  //used to read the world state of the nodes added without information
+  protected Quaternion _quaternion = new Quaternion();
+  protected Vector _vector = new Vector();
+
+  public ChainSnapshot() {
+    this(8);
+  }
+
+  /**
+   * Creates an empty snapshot with room for {@code capacity} nodes.
+   */
+  public ChainSnapshot(int capacity) {
+    _allocate(Math.max(capacity, 1));
+  }
+
+  protected void _allocate(int capacity) {
+    Node[] nodes = new Node[capacity];
+    NodeInformation[] information = new NodeInformation[capacity];
+    float[] rotations = new float[4 * capacity], translations = new float[3 * capacity];
+    float[] orientations = new float[4 * capacity], positions = new float[3 * capacity];
+    if (_nodes != null) {
+      System.arraycopy(_nodes, 0, nodes, 0, _size);
+      System.arraycopy(_information, 0, information, 0, _size);
+      System.arraycopy(_rotations, 0, rotations, 0, 4 * _size);
+      System.arraycopy(_translations, 0, translations, 0, 3 * _size);
+      System.arraycopy(_orientations, 0, orientations, 0, 4 * _size);
+      System.arraycopy(_positions, 0, positions, 0, 3 * _size);
+    }
+    _nodes = nodes;
+    _information = information;
+    _rotations = rotations;
+    _translations = translations;
+    _orientations = orientations;
+    _positions = positions;
+  }
+
+  protected void _ensureCapacity(int capacity) {
+    if (capacity > _nodes.length) _allocate(Math.max(capacity, 2 * _nodes.length));
+  }
+
+  /**
+   * Returns the number of nodes in the snapshot.
+   */
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * Empties the snapshot (keeping its arrays).
+   */
+  public void clear() {
+    for (int i = 0; i < _size; i++) {
+      _nodes[i] = null;
+      _information[i] = null;
+    }
+    _size = 0;
+  }
+
+  /**
+   * Same as {@code clear()} followed by {@code add(chain)}.
+   *
+   * @see #add(List)
+   */
+  public void save(List<? extends NodeInformation> chain) {
+    clear();
+    add(chain);
+  }
+
+  /**
+   * Appends the state of the nodes of the {@code chain}, taking their world orientations and
+   * positions from their caches.
+   */
+  public void add(List<? extends NodeInformation> chain) {
+    _ensureCapacity(_size + chain.size());
+    for (NodeInformation information : chain) {
+      add(information);
+    }
+  }
+
+  /**
+   * Appends the state of the {@code information} node, taking its world orientation and
+   * position from its caches.
+   */
+  public void add(NodeInformation information) {
+    int i = _add(information.node());
+    _information[i] = information;
+    System.arraycopy(information.orientationCache()._quaternion, 0, _orientations, 4 * i, 4);
+    System.arraycopy(information.positionCache()._vector, 0, _positions, 3 * i, 3);
+  }
+
+  /**
+   * Same as {@code clear()} followed by {@code addNodes(chain)}.
+   *
+   * @see #addNodes(List)
+   */
+  public void saveNodes(List<? extends Node> chain) {
+    clear();
+    addNodes(chain);
+  }
+
+  /**
+   * Appends the state of the {@code chain} nodes, computing their world orientations and
+   * positions.
+   */
+  public void addNodes(List<? extends Node> chain) {
+    _ensureCapacity(_size + chain.size());
+    for (Node node : chain) {
+      add(node);
+    }
+  }
+
+  /**
+   * Appends the state of the {@code node}, computing its world orientation and position.
+   */
+  public void add(Node node) {
+    int i = _add(node);
+    System.arraycopy(node.orientation(_quaternion)._quaternion, 0, _orientations, 4 * i, 4);
+    System.arraycopy(node.position(_vector)._vector, 0, _positions, 3 * i, 3);
+  }
+
+  /**
+   * Appends the given state of the {@code node}, i.e., its local {@code rotation} and
+   * {@code translation}, and its world {@code orientation} and {@code position}.
+   */
+  public void add(Node node, Quaternion rotation, Vector translation, Quaternion orientation, Vector position) {
+    _ensureCapacity(_size + 1);
+    int i = _size++;
+    _nodes[i] = node;
+    System.arraycopy(rotation._quaternion, 0, _rotations, 4 * i, 4);
+    System.arraycopy(translation._vector, 0, _translations, 3 * i, 3);
+    System.arraycopy(orientation._quaternion, 0, _orientations, 4 * i, 4);
+    System.arraycopy(position._vector, 0, _positions, 3 * i, 3);
+  }
+
+  /**
+   * Appends the state kept by the {@code state}, which is restored (see {@link #restore()})
+   * into its node and the node {@link NodeInformation} caches.
+   */
+  public void add(NodeState state) {
+    add(state._nodeInformation.node(), state._rotation, state._translation, state._orientation, state._position);
+    _information[_size - 1] = state._nodeInformation;
+  }
+
+  protected int _add(Node node) {
+    _ensureCapacity(_size + 1);
+    int i = _size++;
+    _nodes[i] = node;
+    System.arraycopy(node.rotation()._quaternion, 0, _rotations, 4 * i, 4);
+    System.arraycopy(node.translation()._vector, 0, _translations, 3 * i, 3);
+    return i;
+  }
+
+  /**
+   * Restores the saved state: the local rotation and translation of every node (bypassing its
+   * constraint) and, for the nodes added through their {@link NodeInformation}, their caches.
+   * Values are written into the node (and cache) objects, so no object is created.
+   */
+  public void restore() {
+    for (int i = 0; i < _size; i++) {
+      restore(i);
+    }
+  }
+
+  /**
+   * Restores the state of the {@code i}-th node of the snapshot.
+   *
+   * @see #restore()
+   */
+  public void restore(int i) {
+    Node node = _nodes[i];
+    Constraint constraint = node.constraint();
+    node.setConstraint(null);
+    Quaternion rotation = node.rotation();
+    Vector translation = node.translation();
+    System.arraycopy(_rotations, 4 * i, rotation._quaternion, 0, 4);
+    System.arraycopy(_translations, 3 * i, translation._vector, 0, 3);
+    //notify the node (and its descendants) about the change
+    node.setRotation(rotation);
+    node.setTranslation(translation);
+    node.setConstraint(constraint);
+    NodeInformation information = _information[i];
+    if (information != null) {
+      System.arraycopy(_orientations, 4 * i, information.orientationCache()._quaternion, 0, 4);
+      System.arraycopy(_positions, 3 * i, information.positionCache()._vector, 0, 3);
+    }
+  }
+
+  /**
+   * Makes this snapshot a copy of {@code other}.
+   */
+  public void set(ChainSnapshot other) {
+    clear();
+    _ensureCapacity(other._size);
+    _size = other._size;
+    System.arraycopy(other._nodes, 0, _nodes, 0, _size);
+    System.arraycopy(other._information, 0, _information, 0, _size);
+    System.arraycopy(other._rotations, 0, _rotations, 0, 4 * _size);
+    System.arraycopy(other._translations, 0, _translations, 0, 3 * _size);
+    System.arraycopy(other._orientations, 0, _orientations, 0, 4 * _size);
+    System.arraycopy(other._positions, 0, _positions, 0, 3 * _size);
+  }
+
+  /**
+   * Returns the saved local rotation of the {@code i}-th node into {@code target} (a new
+   * quaternion if it's null).
+   */
+  public Quaternion rotation(int i, Quaternion target) {
+    if (target == null) target = new Quaternion();
+    System.arraycopy(_rotations, 4 * i, target._quaternion, 0, 4);
+    return target;
+  }
+
+  /**
+   * Returns the saved world position of the {@code i}-th node into {@code target} (a new
+   * vector if it's null).
+   */
+  public Vector position(int i, Vector target) {
+    if (target == null) target = new Vector();
+    target.set(_positions[3 * i], _positions[3 * i + 1], _positions[3 * i + 2]);
+    return target;
+  }
+
+  /**
+   * Returns the sum of the {@link Context#quaternionDistance(Quaternion, Quaternion)} between
+   * the saved world orientations of this snapshot and those of {@code other}, node by node.
+   */
+  public float orientationDistance(ChainSnapshot other) {
+    float distance = 0;
+    int size = Math.min(_size, other._size);
+    for (int i = 0; i < size; i++) {
+      float dot = 0;
+      for (int k = 0; k < 4; k++) {
+        dot += _orientations[4 * i + k] * other._orientations[4 * i + k];
+      }
+      dot = Math.max(Math.min(dot, 1), -1);
+      distance += 1 - dot * dot;
+    }
+    return distance;
+  }
+}
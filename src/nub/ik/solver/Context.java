@@ -41,6 +41,8 @@ public class Context {
   //This structures allows to find the world position /orientation of a Node using the sufficient operations
   protected List<NodeInformation> _chainInformation, _usableChainInformation; //Keep position / orientation information
   protected Node _target, _worldTarget, _previousTarget; //Target to reach
+  protected Vector _targetVelocity = new Vector(); //Target displacement between the two last solver resets
+  protected float _targetPrediction = 0;
 
   protected boolean _direction = false;
   //Important parameters for orientation solution
@@ -62,6 +64,10 @@ public class Context {
 
   protected boolean _singleStep = false;
 
+  //Packed (float arrays) copy of the usable chain that heuristics may iterate over instead of the NodeInformation caches
+  protected PackedChain _packedChain;
+  protected boolean _packing = false;
+
 
   public float searchingAreaRadius() {
     if (_radiusRelativeToBoneAverage) return _searchingAreaRadius * _avgLength;
@@ -226,6 +232,49 @@ public class Context {
     _previousTarget = previousTarget;
   }
 
+  /**
+   * Returns the target displacement between the two last times the solver was reset, i.e.,
+   * the target velocity (per reset) when the target is moved continuously.
+   *
+   * @see #setTargetPrediction(float)
+   */
+  public Vector targetVelocity() {
+    return _targetVelocity;
+  }
+
+  /**
+   * Internal use. Updates the {@link #targetVelocity()} from the {@link #previousTarget()}.
+   * Should be called before the previous target gets replaced by the current one.
+   */
+  protected void _updateTargetVelocity() {
+    if (_target != null && _previousTarget != null) {
+      Vector.subtract(_target.position(), _previousTarget.position(), _targetVelocity);
+    } else {
+      _targetVelocity.reset();
+    }
+  }
+
+  /**
+   * Returns the factor by which the {@link #targetVelocity()} is extrapolated when placing the
+   * world target the solver actually tries to reach. Default is 0, i.e., no prediction.
+   *
+   * @see #setTargetPrediction(float)
+   */
+  public float targetPrediction() {
+    return _targetPrediction;
+  }
+
+  /**
+   * Sets the {@link #targetPrediction()} factor. When it's greater than 0 the solver aims at
+   * {@code target + targetPrediction * targetVelocity}, which helps a moving end effector keep
+   * up with targets that are dragged interactively or driven by motion capture data. Once the
+   * target stops moving the solver is reset again, which zeroes the velocity so that the actual
+   * target is reached.
+   */
+  public void setTargetPrediction(float prediction) {
+    _targetPrediction = prediction;
+  }
+
   public float avgLength() {
     return _avgLength;
   }
@@ -348,6 +397,31 @@ public class Context {
     return _topToBottom;
   }
 
+  /**
+   * Returns the packed representation of the usable chain. Heuristics supporting it load it
+   * at the beginning of an iteration and store it back into the usable chain at its end
+   * (see {@link nub.ik.solver.heuristic.Heuristic#finish()}).
+   */
+  public PackedChain packedChain() {
+    if (_packedChain == null) {
+      _packedChain = new PackedChain(_usableChain.size());
+    }
+    return _packedChain;
+  }
+
+  /**
+   * Defines whether or not the heuristics are allowed to work on the {@link #packedChain()}
+   * during the current iteration. It is set by the solver, since it is only safe when all the
+   * actions of the iteration are performed by the same heuristic.
+   */
+  public void setPacking(boolean packing) {
+    _packing = packing;
+  }
+
+  public boolean packing() {
+    return _packing;
+  }
+
 
   /*Error measures*/
   public static float positionError(Vector eff, Vector target) {
@@ -414,7 +488,9 @@ public class Context {
     //Set values of worldTarget and worldEndEffector
     if (_target != null) {
       worldTarget().setRotation(target().orientation().get());
-      worldTarget().setPosition(target().position().get());
+      Vector position = target().position().get();
+      if (_targetPrediction != 0) position.add(Vector.multiply(_targetVelocity, _targetPrediction));
+      worldTarget().setPosition(position);
     }
   }
 
@@ -496,6 +572,11 @@ public class Context {
     return copy;
   }
 
+  /**
+   * @deprecated Use a {@link ChainSnapshot} (see {@link ChainSnapshot#save(List)}), which
+   * doesn't create an object per node.
+   */
+  @Deprecated
   public static List<NodeState> saveState(List<? extends NodeInformation> chain){
     List<NodeState> state = new ArrayList<NodeState>();
     for(NodeInformation  nodeInformation : chain){
@@ -504,16 +585,16 @@ public class Context {
     return state;
   }
 
+  /**
+   * @deprecated Use a {@link ChainSnapshot} (see {@link ChainSnapshot#restore()}).
+   */
+  @Deprecated
   public static void restoreState(List<NodeState> state){
+    ChainSnapshot snapshot = new ChainSnapshot(state.size());
     for(NodeState nodeState : state){
-      Node node = nodeState._nodeInformation.node();
-      Constraint constraint = node.constraint();
-      node.setConstraint(null);
-      node.setRotation(nodeState._rotation.get());
-      node.setTranslation(nodeState._translation.get());
-      node.setConstraint(constraint);
-      nodeState._nodeInformation.setCache(nodeState._position.get(), nodeState._orientation.get());
+      snapshot.add(nodeState);
     }
+    snapshot.restore();
   }
 
   public void printInfo(){
@@ -1,10 +1,12 @@
 package nub.ik.solver;
 
 import nub.core.Node;
+import nub.core.constraint.Constraint;
 import nub.ik.solver.heuristic.*;
 import nub.primitives.Quaternion;
 import nub.primitives.Vector;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class GHIK extends Solver {
@@ -27,6 +29,9 @@ public class GHIK extends Solver {
     protected int _stepCounter;
     protected int _totalDeadlock = 0;
     protected boolean _enableTwist; //Apply a twisting movement after each step
+    protected boolean _enablePacking = true; //Allow the heuristic to iterate over the packed chain (see PackedChain)
+    protected boolean _warmStart = false; //Seed each solve with the last solution found (see enableWarmStart)
+    protected Quaternion[] _solution; //Rotations of the last solution written into the chain
 
     public void enableDeadLockResolution(boolean enable) {
         _enableDeadLockResolution = enable;
@@ -111,6 +116,63 @@ public class GHIK extends Solver {
         _enableTwist = enable;
     }
 
+    public boolean enablePacking() {
+        return _enablePacking;
+    }
+
+    /**
+     * Allows the heuristics supporting it (e.g., CCD and TRIK on unconstrained chains) to
+     * iterate over the packed float-array representation of the chain (see
+     * {@link Context#packedChain()}) instead of the NodeInformation caches. Packing is never
+     * used when twisting is enabled or in single step mode. Enabled by default, since it
+     * yields the same solutions (up to float rounding) without per-joint allocations.
+     */
+    public void enablePacking(boolean enable) {
+        _enablePacking = enable;
+    }
+
+    /**
+     * Returns whether or not each solve is seeded with the last solution found.
+     *
+     * @see #enableWarmStart(boolean)
+     */
+    public boolean isWarmStart() {
+        return _warmStart;
+    }
+
+    /**
+     * Same as {@code enableWarmStart(true)}.
+     *
+     * @see #enableWarmStart(boolean)
+     */
+    public void enableWarmStart() {
+        enableWarmStart(true);
+    }
+
+    /**
+     * Same as {@code enableWarmStart(false)}.
+     *
+     * @see #enableWarmStart(boolean)
+     */
+    public void disableWarmStart() {
+        enableWarmStart(false);
+    }
+
+    /**
+     * When enabled, the rotations of the last configuration written into the chain (see
+     * {@link #_update()}) are kept, and the usable chain is seeded with them each time the
+     * target changes, even if the chain was modified meanwhile (e.g., by an animation). Since
+     * consecutive targets are usually close to each other (interactive dragging, motion
+     * capture retargeting) the solver then converges in a few iterations. It's often combined
+     * with target prediction (see {@link Context#setTargetPrediction(float)}).
+     *
+     * @see #isWarmStart()
+     */
+    public void enableWarmStart(boolean enable) {
+        _warmStart = enable;
+        if (!enable) _solution = null;
+    }
+
     public boolean direction() {
         return _context.direction();
     }
@@ -132,6 +194,7 @@ public class GHIK extends Solver {
         if (_stepCounter == 0) {
             if (_context.target() == null) return true; //As no target is specified there is no need to solve IK
             _current = 10e10f; //Keep the current error
+            _context.setPacking(false);
             _heuristic.prepare();
         } else if (_stepCounter < _context.endEffectorId() + 1) {
             int i = context().topToBottom() ? _stepCounter - 1 : _context.endEffectorId() - _stepCounter;
@@ -159,13 +222,14 @@ public class GHIK extends Solver {
         if (_context.target() == null) return true;
         if (_context.singleStep()) return _iterateStepByStep();
         _current = 10e10f; //Keep the current error
+        _context.setPacking(_enablePacking && !_enableTwist);
         _heuristic.prepare();
         if (context().topToBottom()) {
             for (int i = 0; i < _context.endEffectorId(); i++) {
                 _heuristic.applyActions(i);
                 if (_enableTwist) _twistHeuristic.applyActions(i);
-                //update next joint cache based on current one
-                _context.usableChainInformation().get(i + 1).updateCacheUsingReference();
+                //update next joint cache based on current one (the packed chain keeps its own)
+                if (!_heuristic.packed()) _context.usableChainInformation().get(i + 1).updateCacheUsingReference();
             }
         } else {
             for (int i = _context.endEffectorId() - 1; i >= 0; i--) {
@@ -173,6 +237,7 @@ public class GHIK extends Solver {
                 _heuristic.applyActions(i);
             }
         }
+        _heuristic.finish();
 
         if (_swapOrder) {
             context().setTopToBottom(!context().topToBottom());
@@ -222,25 +287,66 @@ public class GHIK extends Solver {
         return _best;
     }
 
+    @Override
+    protected float _convergenceError() {
+        return Math.min(_best, _current);
+    }
+
     @Override
     protected void _update() {
         //if(IKSolver.debugERROR) showInfo("Begin Update " + "iteration " + _iterations, _context);
         if (_context.singleStep()) System.out.println("Current : " + _current + " best " + _best);
         if (_current < _best) {
             for (int i = 0; i < _context.endEffectorId() + 1; i++) {
-                _context.chain().get(i).rotation()._quaternion[0] = _context.usableChain().get(i).rotation()._quaternion[0];
-                _context.chain().get(i).rotation()._quaternion[1] = _context.usableChain().get(i).rotation()._quaternion[1];
-                _context.chain().get(i).rotation()._quaternion[2] = _context.usableChain().get(i).rotation()._quaternion[2];
-                _context.chain().get(i).rotation()._quaternion[3] = _context.usableChain().get(i).rotation()._quaternion[3];
-                if(i > 0)_context.chainInformation().get(i).updateCacheUsingReference();
-                else _context.chainInformation().get(i).setCache(_context.chainInformation().get(i).node().position().get(),
-                        _context.chainInformation().get(i).node().orientation().get());
+                Node node = _context.chain().get(i);
+                Constraint constraint = node.constraint();
+                node.setConstraint(null);
+                //copy the best rotation in place (and notify the node about it)
+                Quaternion rotation = node.rotation();
+                rotation.set(_context.usableChain().get(i).rotation());
+                node.setRotation(rotation);
+                node.setConstraint(constraint);
+                NodeInformation information = _context.chainInformation().get(i);
+                if(i > 0) information.updateCacheUsingReference();
+                else information.setCacheFromNode();
             }
             //if(IKSolver.debugERROR) showInfo("End Update " + "iteration " + _iterations, _context);
             _best = _current;
+            if (_warmStart) _saveSolution();
         }
     }
 
+    /**
+     * Internal use. Keeps the rotations of the chain (up to the end effector) as the warm start
+     * solution.
+     */
+    protected void _saveSolution() {
+        int size = _context.endEffectorId() + 1;
+        if (_solution == null || _solution.length != size) {
+            _solution = new Quaternion[size];
+            for (int i = 0; i < size; i++) _solution[i] = new Quaternion();
+        }
+        for (int i = 0; i < size; i++) {
+            _solution[i].set(_context.chain().get(i).rotation());
+        }
+    }
+
+    /**
+     * Internal use. Seeds the usable chain with the warm start solution (see {@link #enableWarmStart(boolean)}).
+     */
+    protected void _loadSolution() {
+        for (int i = 0; i < _solution.length; i++) {
+            Node node = _context.usableChain().get(i);
+            Constraint constraint = node.constraint();
+            node.setConstraint(null);
+            Quaternion rotation = node.rotation();
+            rotation.set(_solution[i]);
+            node.setRotation(rotation);
+            node.setConstraint(constraint);
+        }
+        NodeInformation._updateCache(_context.usableChainInformation());
+    }
+
     @Override
     protected boolean _changed() {
         if (_context.target() == null) {
@@ -249,17 +355,24 @@ public class GHIK extends Solver {
         } else if (_context.previousTarget() == null) {
             return true;
         }
-        return !(_context.previousTarget().position().matches(_context.target().position()) && _context.previousTarget().orientation().matches(_context.target().orientation()));
+        boolean moved = !(_context.previousTarget().position().matches(_context.target().position()) && _context.previousTarget().orientation().matches(_context.target().orientation()));
+        //a predicted target that stopped moving should be aimed at again (the reset zeroes the target velocity)
+        return moved || (_context.targetPrediction() != 0 && _context.targetVelocity().squaredNorm() > 0);
     }
 
     @Override
     protected void _reset() {
+        _context._updateTargetVelocity();
         _context.setPreviousTarget(_context.target() == null ? null : Node.detach(_context.target().position().get(), _context.target().orientation().get(), 1));
         //Copy original state into chain
         _context.copyChainState(_context.chainInformation(), _context.usableChainInformation());
         //Update cache
         NodeInformation._updateCache(_context.chainInformation());
-        NodeInformation._copyCache(_context.chainInformation(), _context.usableChainInformation());
+        if (_warmStart && _solution != null && _solution.length == _context.endEffectorId() + 1) {
+            _loadSolution();
+        } else {
+            NodeInformation._copyCache(_context.chainInformation(), _context.usableChainInformation());
+        }
 
         _iterations = 0;
         _totalDeadlock = 0;
@@ -295,6 +408,18 @@ public class GHIK extends Solver {
         return _context.target();
     }
 
+    @Override
+    public Node head() {
+        return _context.chain().get(0);
+    }
+
+    @Override
+    public List<Node> targets() {
+        List<Node> targets = new ArrayList<Node>();
+        if (_context.target() != null) targets.add(_context.target());
+        return targets;
+    }
+
     public boolean changed() {
         return _changed();
     }
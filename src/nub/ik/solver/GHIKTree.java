@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
 
 public class GHIKTree extends Solver {
   protected static class TreeNode {
@@ -19,6 +20,9 @@ public class GHIKTree extends Solver {
     protected GHIK _solver;
     protected float _weight = 1.f;
     protected boolean _outerTarget = false;
+    //Parent rotation deferred while solving siblings in parallel (see moveParent)
+    protected boolean _deferParentRotation = false;
+    protected Quaternion _parentRotation;
 
     public TreeNode() {
       _children = new ArrayList<TreeNode>();
@@ -61,12 +65,15 @@ public class GHIKTree extends Solver {
 
   protected TreeNode _root;
   protected GHIK.HeuristicMode _mode;
-  protected List<List<NodeState>> _initial, _bestSubchains;
+  //array-backed states of all the subchains, kept in breadth-first order (see _subtrees())
+  protected ChainSnapshot _initial = new ChainSnapshot(), _best = new ChainSnapshot(), _candidate = new ChainSnapshot();
+  protected List<TreeNode> _subtrees;
   protected float _bestVal = 99999f, _bestDist = 999999f;
   protected boolean _innerChains = false;
 
   protected HashMap<Node, Node> _endEffectorMap = new HashMap<>();
   protected float _distanceFactor = 2;
+  protected boolean _parallel = false;
 
 
   public GHIKTree(Node root) {
@@ -255,10 +262,63 @@ public class GHIKTree extends Solver {
     Vector v2 = subbase.location(solver.target().position());
     Quaternion q = new Quaternion(v1, v2);
     q = new Quaternion(q.axis(), q.angle() * 0.2f);
+    //Siblings solved in parallel must not modify the shared parent
+    if (node._deferParentRotation) {
+      node._parentRotation = q;
+      return;
+    }
     //Rotate parent
     subbase.rotate(q);
   }
 
+  /**
+   * Enables or (disables) the concurrent solving of sibling subtrees according to {@code enable}.
+   * Disabled by default.
+   * <p>
+   * Sibling subtrees (e.g., the legs of a creature) only interact through their shared parent
+   * node. When enabled, they're solved in parallel on the common fork-join pool, each one
+   * working on its own (disjoint) chains and their detached usable copies, while the rotations
+   * that each subtree would apply to the shared parent (see {@link #moveParent(TreeNode)}) are
+   * deferred and merged once all the siblings are done.
+   */
+  public void enableParallelism(boolean enable) {
+    _parallel = enable;
+  }
+
+  /**
+   * Returns whether or not sibling subtrees are solved in parallel.
+   *
+   * @see #enableParallelism(boolean)
+   */
+  public boolean isParallelismEnabled() {
+    return _parallel;
+  }
+
+  /**
+   * Solves the children subtrees of the given tree node in parallel. The parent node (and its
+   * ancestors) caches, as well as those of the targets, are refreshed before forking, so that
+   * the siblings only read them; the deferred parent rotations are applied afterwards, in
+   * children order.
+   */
+  protected void _solveChildrenInParallel(TreeNode treeNode) {
+    Node subbase = treeNode._solver.context().chain().get(treeNode._solver.context().chain().size() - 1);
+    subbase.position();
+    for (Node target : _endEffectorMap.values()) target.position();
+    List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+    for (TreeNode child : treeNode._children()) {
+      child._deferParentRotation = true;
+      tasks.add(ForkJoinTask.adapt(() -> _solve(child)));
+    }
+    ForkJoinTask.invokeAll(tasks);
+    for (TreeNode child : treeNode._children()) {
+      child._deferParentRotation = false;
+      if (child._parentRotation != null) {
+        subbase.rotate(child._parentRotation);
+        child._parentRotation = null;
+      }
+    }
+  }
+
   protected boolean _solve(TreeNode treeNode) {
     if (treeNode._children == null || treeNode._children.isEmpty()) {
       GHIK solver = treeNode._solver;
@@ -280,8 +340,12 @@ public class GHIKTree extends Solver {
       return true;
     }
     GHIK solver = treeNode._solver;
-    for (TreeNode child : treeNode._children()) {
-      _solve(child);
+    if (_parallel && treeNode._children().size() > 1) {
+      _solveChildrenInParallel(treeNode);
+    } else {
+      for (TreeNode child : treeNode._children()) {
+        _solve(child);
+      }
     }
     solver.reset();
     List<Vector> effs = new ArrayList<Vector>();
@@ -341,6 +405,11 @@ public class GHIKTree extends Solver {
     _updateToBest();
   }
 
+  @Override
+  protected float _convergenceError() {
+    return _bestVal;
+  }
+
   protected boolean _changed(TreeNode treeNode) {
     if (treeNode == null) return false;
     if (treeNode._solver().changed() && treeNode._children().isEmpty()) return true;
@@ -441,10 +510,16 @@ public class GHIKTree extends Solver {
     addTarget(endEffector, target);
   }
 
+  @Override
   public Node head() {
     return (Node) _root._solver().context().chain().get(0);
   }
 
+  @Override
+  public List<Node> targets() {
+    return new ArrayList<Node>(_endEffectorMap.values());
+  }
+
 
   protected boolean _addTarget(TreeNode treeNode, Node endEffector, Node target) {
     if (treeNode == null) return false;
@@ -492,6 +567,78 @@ public class GHIKTree extends Solver {
     }
   }
 
+  @Override
+  public void enableAdaptive(boolean enable) {
+    super.enableAdaptive(enable);
+    _enableAdaptive(enable, _root);
+  }
+
+  protected void _enableAdaptive(boolean enable, TreeNode node) {
+    node._solver.enableAdaptive(enable);
+    for (TreeNode child : node._children()) {
+      _enableAdaptive(enable, child);
+    }
+  }
+
+  @Override
+  public void setMinImprovement(float minImprovement) {
+    super.setMinImprovement(minImprovement);
+    _setMinImprovement(minImprovement, _root);
+  }
+
+  protected void _setMinImprovement(float minImprovement, TreeNode node) {
+    node._solver.setMinImprovement(minImprovement);
+    for (TreeNode child : node._children()) {
+      _setMinImprovement(minImprovement, child);
+    }
+  }
+
+  @Override
+  public void setPatience(int patience) {
+    super.setPatience(patience);
+    _setPatience(patience, _root);
+  }
+
+  protected void _setPatience(int patience, TreeNode node) {
+    node._solver.setPatience(patience);
+    for (TreeNode child : node._children()) {
+      _setPatience(patience, child);
+    }
+  }
+
+  /**
+   * Enables or disables the warm start of all the chain solvers.
+   *
+   * @see GHIK#enableWarmStart(boolean)
+   */
+  public void enableWarmStart(boolean enable) {
+    _enableWarmStart(enable, _root);
+  }
+
+  protected void _enableWarmStart(boolean enable, TreeNode node) {
+    node._solver.enableWarmStart(enable);
+    for (TreeNode child : node._children()) {
+      _enableWarmStart(enable, child);
+    }
+  }
+
+  /**
+   * Sets the target prediction factor of the leaf chains, i.e., of those reaching the targets
+   * given by the user (inner chains targets are computed by the tree at each iteration).
+   *
+   * @see Context#setTargetPrediction(float)
+   */
+  public void setTargetPrediction(float prediction) {
+    _setTargetPrediction(prediction, _root);
+  }
+
+  protected void _setTargetPrediction(float prediction, TreeNode node) {
+    if (node._children().isEmpty()) node._solver.context().setTargetPrediction(prediction);
+    for (TreeNode child : node._children()) {
+      _setTargetPrediction(prediction, child);
+    }
+  }
+
   public void setChainTimesPerFrame(int timesPerFrame) {
     _setChainTimesPerFrame(timesPerFrame, _root);
   }
@@ -531,64 +678,70 @@ public class GHIKTree extends Solver {
 
   }
 
-  protected List<List<NodeState>> _obtainSubchains(){
-    List<List<NodeState>> subchains = new ArrayList<>();
-    List<TreeNode> frontier = new ArrayList<>();
-    frontier.add(_root);
-    while(!frontier.isEmpty()){
-      TreeNode current = frontier.remove(0);
-      if(current._children != null) frontier.addAll(current._children);
-      subchains.add(Context.saveState(current._solver.context().chainInformation()));
+  /**
+   * Returns the tree nodes in breadth-first order, i.e., the order in which their chains
+   * states are kept in the snapshots.
+   */
+  protected List<TreeNode> _subtrees(){
+    if(_subtrees == null){
+      _subtrees = new ArrayList<>();
+      _subtrees.add(_root);
+      for(int i = 0; i < _subtrees.size(); i++){
+        TreeNode current = _subtrees.get(i);
+        if(current._children != null) _subtrees.addAll(current._children);
+      }
     }
-    return subchains;
+    return _subtrees;
   }
 
-  protected void _saveInitial(){
-    _initial = _obtainSubchains();
-  }
-
-  protected float distance(List<List<NodeState>> stateA, List<List<NodeState>> stateB){
-    float dist = 0;
-    for(int i = 0; i < stateA.size(); i++){
-      List<NodeState> sa = stateA.get(i);
-      List<NodeState> sb = stateB.get(i);
-      float d = 0;
-      for(int j = 0; j < sa.size(); j++){
-        NodeState na = sa.get(j);
-        NodeState nb = sb.get(j);
-        d += Context.quaternionDistance(na.orientation(), nb.orientation());
-      }
-      dist += d;
+  protected void _obtainSubchains(ChainSnapshot snapshot){
+    snapshot.clear();
+    for(TreeNode current : _subtrees()){
+      snapshot.add(current._solver.context().chainInformation());
     }
-    return dist / stateA.size();
+  }
+
+  protected void _saveInitial(){
+    _obtainSubchains(_initial);
+  }
+
+  protected float distance(ChainSnapshot stateA, ChainSnapshot stateB){
+    return stateA.orientationDistance(stateB) / _subtrees().size();
   }
 
 
   protected void _updateToBest(){
-    for(List<NodeState> state : _bestSubchains){
-      Context.restoreState(state);
-    }
+    _best.restore();
+  }
+
+  /**
+   * Keeps the candidate snapshot as the best one (the previous best becomes the next candidate).
+   */
+  protected void _keepCandidate(){
+    ChainSnapshot best = _best;
+    _best = _candidate;
+    _candidate = best;
   }
 
   protected float _trust = 1f;
   protected void _saveBest(){
     float curError = error(_root._solver.direction());
     if(Math.abs(curError - _bestVal) < _maxError*2){
-      List<List<NodeState>> sc = _obtainSubchains();
-      float dist = distance(sc, _initial);
+      _obtainSubchains(_candidate);
+      float dist = distance(_candidate, _initial);
       if(dist < _bestDist){
         _bestVal = curError;
-        _bestSubchains = sc;
+        _keepCandidate();
         _bestDist = dist;
         _trust = 1;
       } else{
         _trust *= 0.8f;
       }
     } else if(curError < _bestVal){
-      List<List<NodeState>> sc = _obtainSubchains();
-      float dist = distance(sc, _initial);
+      _obtainSubchains(_candidate);
+      float dist = distance(_candidate, _initial);
       _bestVal = curError;
-      _bestSubchains = sc;
+      _keepCandidate();
       _bestDist = dist;
       _trust = 1;
     } else{
@@ -36,6 +36,17 @@ public class NodeInformation {
     setOrientationCache(orientation);
   }
 
+  //Sets the cache to the node world position and orientation, reusing the cache objects
+  public void setCacheFromNode() {
+    if (_positionCache == null || _orientationCache == null) {
+      setCache(_node.position(), _node.orientation());
+      return;
+    }
+    _node.position(_positionCache);
+    _node.orientation(_orientationCache);
+    _orientationCache.normalize();
+  }
+
   public Node node() {
     return _node;
   }
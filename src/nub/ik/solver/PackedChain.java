@@ -0,0 +1,412 @@
+package nub.ik.solver;
+
+import nub.core.Node;
+import nub.core.constraint.Constraint;
+import nub.primitives.Quaternion;
+import nub.primitives.Vector;
+
+import java.util.List;
+
+/**
+ * A packed representation of a kinematic chain, where the world positions, world orientations,
+ * local rotations, local translations and lengths of the joints are kept in contiguous float
+ * arrays (3 floats per vector and 4 per quaternion, i.e., {@code x, y, z, w}), and the joint
+ * constraints are referenced by index.
+ * <p>
+ * Solvers convert from nodes to the packed chain with {@link #load(List)} and back with
+ * {@link #store(List)} (and {@link #storeCache(List)}) only at the solve boundaries, so that the per-iteration work done by
+ * the heuristics (see {@link #rotate(int, float, float, float, float, int)} and
+ * {@link #location(int, float, float, float, float[])}) is cache friendly and allocation free.
+ */
+public class PackedChain {
+  protected int _size;
+  protected float[] _positions;
+  protected float[] _orientations;
+  protected float[] _rotations;
+  protected float[] _translations;
+  protected float[] _lengths;
+  protected int[] _constraintIndices; //-1 when the joint is unconstrained
+  protected Constraint[] _constraints;
+  protected int _constraintCount;
+  //world transformation of the chain head reference: position (3) and orientation (4)
+  protected float[] _reference = new float[7];
+  //scratch objects used to read the nodes without allocating
+  protected Vector _vector = new Vector();
+  protected Quaternion _quaternion = new Quaternion();
+
+  public PackedChain(int size) {
+    _allocate(size);
+  }
+
+  protected void _allocate(int size) {
+    _size = size;
+    _positions = new float[3 * size];
+    _orientations = new float[4 * size];
+    _rotations = new float[4 * size];
+    _translations = new float[3 * size];
+    _lengths = new float[size];
+    _constraintIndices = new int[size];
+    _constraints = new Constraint[size];
+    _constraintCount = 0;
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * Joint world positions, 3 floats per joint.
+   */
+  public float[] positions() {
+    return _positions;
+  }
+
+  /**
+   * Joint world orientations, 4 floats per joint.
+   */
+  public float[] orientations() {
+    return _orientations;
+  }
+
+  /**
+   * Joint local rotations, 4 floats per joint.
+   */
+  public float[] rotations() {
+    return _rotations;
+  }
+
+  /**
+   * Joint local translations, 3 floats per joint.
+   */
+  public float[] translations() {
+    return _translations;
+  }
+
+  /**
+   * Distance of each joint to its reference (i.e., the magnitude of its translation).
+   */
+  public float[] lengths() {
+    return _lengths;
+  }
+
+  /**
+   * Returns the index of the {@code i}-th joint constraint in {@link #constraints()}, or -1
+   * if the joint is unconstrained.
+   */
+  public int constraintIndex(int i) {
+    return _constraintIndices[i];
+  }
+
+  /**
+   * Returns the distinct constraints of the chain. Only the first {@link #constraintCount()}
+   * entries are meaningful.
+   */
+  public Constraint[] constraints() {
+    return _constraints;
+  }
+
+  public int constraintCount() {
+    return _constraintCount;
+  }
+
+  /**
+   * Returns the {@code i}-th joint constraint or {@code null} if the joint is unconstrained.
+   */
+  public Constraint constraint(int i) {
+    return _constraintIndices[i] == -1 ? null : _constraints[_constraintIndices[i]];
+  }
+
+  /**
+   * Returns {@code true} if no joint of the chain is constrained.
+   */
+  public boolean isUnconstrained() {
+    return _constraintCount == 0;
+  }
+
+  /**
+   * Reads the local transformations and constraints of the {@code chain} nodes, together
+   * with the world transformation of the chain head reference, and computes the joints
+   * world positions and orientations. The chain is reallocated only if its size changed.
+   */
+  public void load(List<? extends Node> chain) {
+    if (chain.size() != _size)
+      _allocate(chain.size());
+    Node reference = chain.get(0).reference();
+    if (reference != null) {
+      reference.position(_vector);
+      reference.orientation(_quaternion);
+      _reference[0] = _vector.x();
+      _reference[1] = _vector.y();
+      _reference[2] = _vector.z();
+      _reference[3] = _quaternion.x();
+      _reference[4] = _quaternion.y();
+      _reference[5] = _quaternion.z();
+      _reference[6] = _quaternion.w();
+      _normalize(_reference, 3);
+    } else {
+      _reference[0] = _reference[1] = _reference[2] = 0;
+      _reference[3] = _reference[4] = _reference[5] = 0;
+      _reference[6] = 1;
+    }
+    _constraintCount = 0;
+    for (int i = 0; i < _size; i++) {
+      Node node = chain.get(i);
+      Vector t = node.translation();
+      Quaternion r = node.rotation();
+      _translations[3 * i] = t.x();
+      _translations[3 * i + 1] = t.y();
+      _translations[3 * i + 2] = t.z();
+      _lengths[i] = t.magnitude();
+      _rotations[4 * i] = r.x();
+      _rotations[4 * i + 1] = r.y();
+      _rotations[4 * i + 2] = r.z();
+      _rotations[4 * i + 3] = r.w();
+      _constraintIndices[i] = _index(node.constraint());
+    }
+    update(0);
+  }
+
+  protected int _index(Constraint constraint) {
+    if (constraint == null)
+      return -1;
+    for (int j = 0; j < _constraintCount; j++)
+      if (_constraints[j] == constraint)
+        return j;
+    _constraints[_constraintCount] = constraint;
+    return _constraintCount++;
+  }
+
+  /**
+   * Writes the local rotations of the packed chain back into the {@code chain} nodes. Joint
+   * constraints are not applied, since the packed chain is supposed to have already taken
+   * them into account.
+   */
+  public void store(List<? extends Node> chain) {
+    for (int i = 0; i < _size; i++) {
+      Node node = chain.get(i);
+      Constraint constraint = node.constraint();
+      node.setConstraint(null);
+      node.setRotation(_rotations[4 * i], _rotations[4 * i + 1], _rotations[4 * i + 2], _rotations[4 * i + 3]);
+      node.setConstraint(constraint);
+    }
+  }
+
+  /**
+   * Writes the world positions and orientations of the packed chain into the position and
+   * orientation caches of the {@code information} list, which should refer to the nodes the
+   * chain was loaded from.
+   */
+  public void storeCache(List<NodeInformation> information) {
+    for (int i = 0; i < _size; i++) {
+      NodeInformation nodeInformation = information.get(i);
+      if (nodeInformation._positionCache == null || nodeInformation._orientationCache == null) {
+        nodeInformation.setCache(position(i, new Vector()), orientation(i, new Quaternion()));
+      } else {
+        position(i, nodeInformation._positionCache);
+        orientation(i, nodeInformation._orientationCache);
+      }
+    }
+  }
+
+  /**
+   * Updates the world positions and orientations of the joints {@code from, ..., size() - 1}
+   * assuming the one of joint {@code from - 1} (or of the head reference) is up to date.
+   */
+  public void update(int from) {
+    for (int i = from; i < _size; i++)
+      updateJoint(i);
+  }
+
+  /**
+   * Updates the world position and orientation of the {@code i}-th joint from the ones of
+   * its reference, i.e., the {@code (i-1)}-th joint or the head reference.
+   */
+  public void updateJoint(int i) {
+    float[] p = i == 0 ? _reference : _positions;
+    float[] o = i == 0 ? _reference : _orientations;
+    int pi = i == 0 ? 0 : 3 * (i - 1);
+    int oi = i == 0 ? 3 : 4 * (i - 1);
+    _rotate(o, oi, _translations[3 * i], _translations[3 * i + 1], _translations[3 * i + 2], _positions, 3 * i);
+    _positions[3 * i] += p[pi];
+    _positions[3 * i + 1] += p[pi + 1];
+    _positions[3 * i + 2] += p[pi + 2];
+    _multiply(o, oi, _rotations, 4 * i, _orientations, 4 * i);
+    _normalize(_orientations, 4 * i);
+  }
+
+  /**
+   * Rotates the {@code i}-th joint by the local rotation {@code (x, y, z, w)}, i.e., its
+   * rotation becomes {@code rotation * delta}, and updates its world orientation. The world
+   * position and orientation of the {@code dependent} joint (e.g., the end effector) are
+   * updated accordingly, while those of the joints in between are left untouched and should
+   * be refreshed with {@link #updateJoint(int)} before being used. Pass -1 as
+   * {@code dependent} to only update the {@code i}-th joint.
+   */
+  public void rotate(int i, float x, float y, float z, float w, int dependent) {
+    int oi = 4 * i;
+    //world rotation q = O_i * delta * O_i^-1
+    float ox = _orientations[oi], oy = _orientations[oi + 1], oz = _orientations[oi + 2], ow = _orientations[oi + 3];
+    float qw = ow * w - ox * x - oy * y - oz * z;
+    float qx = ow * x + w * ox + oy * z - oz * y;
+    float qy = ow * y + w * oy - ox * z + oz * x;
+    float qz = ow * z + w * oz + ox * y - oy * x;
+    //compose with the inverse of the (unit) orientation
+    float rw = qw * ow + qx * ox + qy * oy + qz * oz;
+    float rx = -qw * ox + ow * qx - qy * oz + qz * oy;
+    float ry = -qw * oy + ow * qy + qx * oz - qz * ox;
+    float rz = -qw * oz + ow * qz - qx * oy + qy * ox;
+    //local rotation
+    float lx = _rotations[oi], ly = _rotations[oi + 1], lz = _rotations[oi + 2], lw = _rotations[oi + 3];
+    _rotations[oi + 3] = lw * w - lx * x - ly * y - lz * z;
+    _rotations[oi] = lw * x + w * lx + ly * z - lz * y;
+    _rotations[oi + 1] = lw * y + w * ly - lx * z + lz * x;
+    _rotations[oi + 2] = lw * z + w * lz + lx * y - ly * x;
+    _normalize(_rotations, oi);
+    //world orientation
+    _orientations[oi] = qx;
+    _orientations[oi + 1] = qy;
+    _orientations[oi + 2] = qz;
+    _orientations[oi + 3] = qw;
+    _normalize(_orientations, oi);
+    if (dependent < 0 || dependent == i)
+      return;
+    int di = 4 * dependent;
+    float dx = _orientations[di], dy = _orientations[di + 1], dz = _orientations[di + 2], dw = _orientations[di + 3];
+    _orientations[di + 3] = rw * dw - rx * dx - ry * dy - rz * dz;
+    _orientations[di] = rw * dx + dw * rx + ry * dz - rz * dy;
+    _orientations[di + 1] = rw * dy + dw * ry - rx * dz + rz * dx;
+    _orientations[di + 2] = rw * dz + dw * rz + rx * dy - ry * dx;
+    _normalize(_orientations, di);
+    int pi = 3 * i, pd = 3 * dependent;
+    _rotate(rx, ry, rz, rw, _positions[pd] - _positions[pi], _positions[pd + 1] - _positions[pi + 1], _positions[pd + 2] - _positions[pi + 2], _positions, pd);
+    _positions[pd] += _positions[pi];
+    _positions[pd + 1] += _positions[pi + 1];
+    _positions[pd + 2] += _positions[pi + 2];
+  }
+
+  /**
+   * Stores into {@code target[0..2]} the coordinates of the world point {@code (x, y, z)}
+   * expressed in the {@code i}-th joint frame, and returns {@code target}.
+   */
+  public float[] location(int i, float x, float y, float z, float[] target) {
+    int pi = 3 * i, oi = 4 * i;
+    float[] o = _orientations;
+    //rotate by the inverse (conjugate) of the unit orientation
+    float ox = -o[oi], oy = -o[oi + 1], oz = -o[oi + 2], ow = o[oi + 3];
+    float vx = x - _positions[pi], vy = y - _positions[pi + 1], vz = z - _positions[pi + 2];
+    _rotate(ox, oy, oz, ow, vx, vy, vz, target, 0);
+    return target;
+  }
+
+  /**
+   * Stores the world position of the {@code i}-th joint into {@code target}.
+   */
+  public Vector position(int i, Vector target) {
+    target.set(_positions[3 * i], _positions[3 * i + 1], _positions[3 * i + 2]);
+    return target;
+  }
+
+  /**
+   * Stores the world orientation of the {@code i}-th joint into {@code target}.
+   */
+  public Quaternion orientation(int i, Quaternion target) {
+    target.setX(_orientations[4 * i]);
+    target.setY(_orientations[4 * i + 1]);
+    target.setZ(_orientations[4 * i + 2]);
+    target.setW(_orientations[4 * i + 3]);
+    return target;
+  }
+
+  // Allocation free quaternion arithmetic on packed arrays
+
+  /**
+   * Stores the product {@code a * b} at {@code target[ti..ti+3]}. Target may alias the operands.
+   */
+  public static void _multiply(float[] a, int ai, float[] b, int bi, float[] target, int ti) {
+    float ax = a[ai], ay = a[ai + 1], az = a[ai + 2], aw = a[ai + 3];
+    float bx = b[bi], by = b[bi + 1], bz = b[bi + 2], bw = b[bi + 3];
+    target[ti + 3] = aw * bw - ax * bx - ay * by - az * bz;
+    target[ti] = aw * bx + bw * ax + ay * bz - az * by;
+    target[ti + 1] = aw * by + bw * ay - ax * bz + az * bx;
+    target[ti + 2] = aw * bz + bw * az + ax * by - ay * bx;
+  }
+
+  /**
+   * Normalizes the quaternion at {@code q[qi..qi+3]}.
+   */
+  public static void _normalize(float[] q, int qi) {
+    float norm = (float) Math.sqrt(q[qi] * q[qi] + q[qi + 1] * q[qi + 1] + q[qi + 2] * q[qi + 2] + q[qi + 3] * q[qi + 3]);
+    if (norm == 0)
+      return;
+    q[qi] /= norm;
+    q[qi + 1] /= norm;
+    q[qi + 2] /= norm;
+    q[qi + 3] /= norm;
+  }
+
+  /**
+   * Stores at {@code target[ti..ti+2]} the image of {@code (x, y, z)} by the (unit) quaternion
+   * at {@code q[qi..qi+3]}.
+   */
+  public static void _rotate(float[] q, int qi, float x, float y, float z, float[] target, int ti) {
+    _rotate(q[qi], q[qi + 1], q[qi + 2], q[qi + 3], x, y, z, target, ti);
+  }
+
+  protected static void _rotate(float qx, float qy, float qz, float qw, float x, float y, float z, float[] target, int ti) {
+    float q00 = 2.0f * qx * qx;
+    float q11 = 2.0f * qy * qy;
+    float q22 = 2.0f * qz * qz;
+    float q01 = 2.0f * qx * qy;
+    float q02 = 2.0f * qx * qz;
+    float q03 = 2.0f * qx * qw;
+    float q12 = 2.0f * qy * qz;
+    float q13 = 2.0f * qy * qw;
+    float q23 = 2.0f * qz * qw;
+    target[ti] = (1.0f - q11 - q22) * x + (q01 - q23) * y + (q02 + q13) * z;
+    target[ti + 1] = (q01 + q23) * x + (1.0f - q22 - q00) * y + (q12 - q03) * z;
+    target[ti + 2] = (q02 - q13) * x + (q12 + q03) * y + (1.0f - q11 - q00) * z;
+  }
+
+  /**
+   * Stores at {@code target[ti..ti+3]} the rotation that transforms {@code from} into the
+   * direction of {@code to}. Packed counterpart of {@link Quaternion#fromTo(Vector, Vector)}.
+   */
+  public static void _fromTo(float fx, float fy, float fz, float tx, float ty, float tz, float[] target, int ti) {
+    float fromSqNorm = fx * fx + fy * fy + fz * fz;
+    float toSqNorm = tx * tx + ty * ty + tz * tz;
+    if (fromSqNorm == 0 || toSqNorm == 0) {
+      target[ti] = target[ti + 1] = target[ti + 2] = 0;
+      target[ti + 3] = 1;
+      return;
+    }
+    float ax = fy * tz - fz * ty;
+    float ay = fz * tx - fx * tz;
+    float az = fx * ty - fy * tx;
+    float axisSqNorm = ax * ax + ay * ay + az * az;
+    if (axisSqNorm == 0) {
+      // aligned vectors, pick any axis orthogonal to from (see Vector.orthogonalVector)
+      if (Math.abs(fy) >= 0.9f * Math.abs(fx) && Math.abs(fz) >= 0.9f * Math.abs(fx)) {
+        ax = 0;
+        ay = -fz;
+        az = fy;
+      } else if (Math.abs(fx) >= 0.9f * Math.abs(fy) && Math.abs(fz) >= 0.9f * Math.abs(fy)) {
+        ax = -fz;
+        ay = 0;
+        az = fx;
+      } else {
+        ax = -fy;
+        ay = fx;
+        az = 0;
+      }
+    }
+    float angle = (float) Math.asin((float) Math.sqrt(axisSqNorm / (fromSqNorm * toSqNorm)));
+    if (fx * tx + fy * ty + fz * tz < 0)
+      angle = (float) Math.PI - angle;
+    float norm = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+    float sin = (float) Math.sin(angle / 2.0f);
+    target[ti] = sin * ax / norm;
+    target[ti + 1] = sin * ay / norm;
+    target[ti + 2] = sin * az / norm;
+    target[ti + 3] = (float) Math.cos(angle / 2.0f);
+  }
+}
@@ -12,14 +12,24 @@
 package nub.ik.solver;
 
 import nub.core.Node;
+import nub.timing.TimingHandler;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Solver is a convenient class to solve IK problem,
  * Given a Chain or a Tree Structure of Nodes, this class will
  * solve the configuration that the Nodes must have to reach
  * a desired position.
+ * <p>
+ * By default each {@link #solve()} call performs {@code timesPerFrame} iterations until
+ * {@link #maxIterations()} is reached. In adaptive mode (see {@link #enableAdaptive()}) the
+ * solver also stops as soon as the error stalls, i.e., when it hasn't improved by more than
+ * {@link #minImprovement()} (relative to the previous iteration) during {@link #patience()}
+ * consecutive iterations. Several solvers may also share a per frame wall-clock {@link Budget}
+ * (see {@link #setBudget(Budget)}), so that no iteration starts once the budget is exhausted.
  */
 
 public abstract class Solver {
@@ -36,6 +46,89 @@ public abstract class Solver {
   protected boolean _accumulate = false;
   protected float _accumulatedError = 0; //TODO : Remove this
   protected int _accumulatedTimes = 0; //TODO : Remove this
+  protected boolean _adaptive = false;
+  protected float _minImprovement = 0.01f;
+  protected int _patience = 2;
+  protected int _stalls = 0;
+  protected float _lastError = Float.NaN;
+  protected Budget _budget;
+
+  /**
+   * A wall-clock time budget per frame, meant to be shared by several solvers (e.g., those of
+   * all the skeletons in a scene, see {@link Solver#setBudget(Budget)}). The spent time is
+   * reset when a new frame begins, i.e., whenever {@link TimingHandler#frameCount} changes,
+   * or explicitly with {@link #reset()} (e.g., when the solvers aren't driven by the
+   * {@link TimingHandler}). It's safe to use it from parallel solvers.
+   */
+  public static class Budget {
+    // shared by the solvers using the budget, which may run in different threads
+    protected volatile long _nanos;
+    protected AtomicLong _frame = new AtomicLong(-1);
+    protected AtomicLong _spent = new AtomicLong();
+
+    /**
+     * Defines a budget of {@code milliseconds} per frame.
+     */
+    public Budget(float milliseconds) {
+      setTime(milliseconds);
+    }
+
+    /**
+     * Returns the budget time per frame in milliseconds.
+     */
+    public float time() {
+      return _nanos / 1e6f;
+    }
+
+    /**
+     * Sets the budget time per frame in milliseconds.
+     */
+    public void setTime(float milliseconds) {
+      _nanos = (long) (milliseconds * 1e6f);
+    }
+
+    /**
+     * Returns the time spent during the current frame in milliseconds.
+     */
+    public float spent() {
+      _renew();
+      return _spent.get() / 1e6f;
+    }
+
+    /**
+     * Returns whether or not the budget of the current frame is exhausted.
+     */
+    public boolean isExhausted() {
+      _renew();
+      return _spent.get() >= _nanos;
+    }
+
+    /**
+     * Resets the time spent during the current frame.
+     */
+    public void reset() {
+      _spent.set(0);
+    }
+
+    /**
+     * Internal use. Adds {@code nanos} to the time spent during the current frame.
+     */
+    protected void _spend(long nanos) {
+      _renew();
+      _spent.addAndGet(nanos);
+    }
+
+    /**
+     * Internal use. Resets the spent time when a new frame begins.
+     */
+    protected void _renew() {
+      long frame = TimingHandler.frameCount;
+      long last = _frame.get();
+      // only the thread advancing the frame resets the spent time
+      if (last != frame && _frame.compareAndSet(last, frame))
+        _spent.set(0);
+    }
+  }
 
   /*Getters and setters*/
   public int lastIteration() {
@@ -66,6 +159,111 @@ public abstract class Solver {
     _timesPerFrame = timesPerFrame;
   }
 
+  /**
+   * Returns whether or not the solver stops iterating once the error stalls.
+   *
+   * @see #enableAdaptive()
+   * @see #disableAdaptive()
+   * @see #enableAdaptive(boolean)
+   */
+  public boolean isAdaptive() {
+    return _adaptive;
+  }
+
+  /**
+   * Enables the adaptive mode, in which the solver stops iterating (until the next change)
+   * once the error hasn't improved by more than {@link #minImprovement()} during
+   * {@link #patience()} consecutive iterations. Note that {@link #maxIterations()} still
+   * bounds the number of iterations.
+   *
+   * @see #isAdaptive()
+   * @see #disableAdaptive()
+   * @see #enableAdaptive(boolean)
+   */
+  public void enableAdaptive() {
+    enableAdaptive(true);
+  }
+
+  /**
+   * Disables the adaptive mode.
+   *
+   * @see #isAdaptive()
+   * @see #enableAdaptive()
+   * @see #enableAdaptive(boolean)
+   */
+  public void disableAdaptive() {
+    enableAdaptive(false);
+  }
+
+  /**
+   * Enables or disables the adaptive mode according to {@code enable}.
+   *
+   * @see #isAdaptive()
+   * @see #enableAdaptive()
+   * @see #disableAdaptive()
+   */
+  public void enableAdaptive(boolean enable) {
+    _adaptive = enable;
+  }
+
+  /**
+   * Returns the minimum relative error improvement an iteration should achieve not to be
+   * considered a stall. Default is 0.01, i.e., 1%.
+   *
+   * @see #enableAdaptive()
+   */
+  public float minImprovement() {
+    return _minImprovement;
+  }
+
+  /**
+   * Sets the {@link #minImprovement()}.
+   */
+  public void setMinImprovement(float minImprovement) {
+    _minImprovement = minImprovement;
+  }
+
+  /**
+   * Returns the number of consecutive stalled iterations after which an adaptive solver
+   * stops. Default is 2.
+   *
+   * @see #enableAdaptive()
+   */
+  public int patience() {
+    return _patience;
+  }
+
+  /**
+   * Sets the {@link #patience()}.
+   */
+  public void setPatience(int patience) {
+    if (patience < 1) {
+      System.out.println("Warning: patience should be at least 1. Nothing done!");
+      return;
+    }
+    _patience = patience;
+  }
+
+  /**
+   * Returns the wall-clock budget shared by this solver, or {@code null} (the default) if
+   * there's none.
+   *
+   * @see #setBudget(Budget)
+   */
+  public Budget budget() {
+    return _budget;
+  }
+
+  /**
+   * Sets the wall-clock {@code budget} (which may be shared among several solvers) bounding
+   * the time {@link #solve()} spends per frame. Pass {@code null} to remove it.
+   *
+   * @see #budget()
+   */
+  public void setBudget(Budget budget) {
+    _budget = budget;
+  }
+
   public void hasChanged(boolean change) {
     _change_temp = change;
   }
@@ -100,6 +298,8 @@ public abstract class Solver {
       _last_iteration = 0;
       _accumulate = true;
       _change_temp = false;
+      _stalls = 0;
+      _lastError = Float.NaN;
     }
 
     if (_iterations >= _maxIterations) {
@@ -109,8 +309,14 @@ public abstract class Solver {
     _frameCounter += _timesPerFrame;
 
     while (Math.floor(_frameCounter) > 0) {
+      if (_budget != null && _budget.isExhausted()) {
+        //resume on next frame
+        _frameCounter = 0;
+        break;
+      }
+      long start = _budget != null ? System.nanoTime() : 0;
       //Returns a boolean that indicates if a termination condition has been accomplished
-      if (_iterate()) {
+      if (_iterate() || _stalled()) {
         _last_iteration = _iterations + 1;
         _iterations = _maxIterations;
         _frameCounter = 0;
@@ -119,6 +325,8 @@ public abstract class Solver {
         _last_iteration = _iterations;
         _frameCounter -= 1;
       }
+      if (_budget != null)
+        _budget._spend(System.nanoTime() - start);
     }
 
     if (_iterations >= _maxIterations) {
@@ -134,5 +342,44 @@ public abstract class Solver {
     return false;
   }
 
+  /**
+   * Internal use. Returns whether or not the error of an adaptive solver has stalled after
+   * the last iteration.
+   *
+   * @see #enableAdaptive()
+   */
+  protected boolean _stalled() {
+    if (!_adaptive)
+      return false;
+    float error = _convergenceError();
+    if (!Float.isNaN(_lastError) && _lastError - error <= _minImprovement * _lastError)
+      _stalls++;
+    else
+      _stalls = 0;
+    _lastError = error;
+    return _stalls >= _patience;
+  }
+
+  /**
+   * Internal use. Returns the error the adaptive mode tracks after each iteration. Default is
+   * {@link #error()}, but solvers that only update the nodes once per {@link #solve()} call
+   * (see {@link #_update()}) should return the error of their best configuration so far.
+   *
+   * @see #enableAdaptive()
+   */
+  protected float _convergenceError() {
+    return error();
+  }
+
   public abstract void setTarget(Node endEffector, Node target);
+
+  /**
+   * Returns the first node of the structure (chain or tree) handled by the solver.
+   */
+  public abstract Node head();
+
+  /**
+   * Returns the targets the solver tries to reach.
+   */
+  public abstract List<Node> targets();
 }
@@ -0,0 +1,151 @@
+/****************************************************************************************
+ * nub
+ * Copyright (c) 2019 National University of Colombia, https://visualcomputing.github.io/
+ * @author Sebastian Chaparro, https://github.com/sechaparroc
+ * @author Jean Pierre Charalambos, https://github.com/VisualComputing
+ *
+ * All rights reserved. A 2D or 3D scene graph library providing eye, input and timing
+ * handling to a third party (real or non-real time) renderer. Released under the terms
+ * of the GPL v3.0 which is available at http://www.gnu.org/licenses/gpl.html
+ ****************************************************************************************/
+
+package nub.ik.solver;
+
+import nub.core.Node;
+import nub.ik.animation.Skeleton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A SolverPool solves a batch of independent IK structures (e.g., the {@link Skeleton}s
+ * of a crowd) in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * Each solver only modifies the nodes of the structure it handles (see {@link Solver#head()}),
+ * hence solvers whose structures overlap are rejected by {@link #add(Solver)}. Before
+ * forking, {@link #solve()} refreshes, from the calling (render) thread, the cached world
+ * transformations of the nodes the solvers share in read-only fashion (the head
+ * ancestors and the {@link Solver#targets()}), and it returns only after all solvers
+ * are done, so that the scene graph is never accessed concurrently by the render thread
+ * and the solvers, and the solvers results are visible to it afterwards.
+ * <p>
+ * Solvers added to the pool should not be executed elsewhere, e.g., through
+ * {@link nub.core.Graph#executeSolver(Solver)}.
+ */
+public class SolverPool {
+  protected ForkJoinPool _pool;
+  protected List<Solver> _solvers = new ArrayList<Solver>();
+
+  /**
+   * Same as {@code this(ForkJoinPool.commonPool())}.
+   */
+  public SolverPool() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a solver pool which runs its solvers on the given fork-join {@code pool}.
+   */
+  public SolverPool(ForkJoinPool pool) {
+    _pool = pool;
+  }
+
+  /**
+   * Returns the fork-join pool running the solvers.
+   */
+  public ForkJoinPool pool() {
+    return _pool;
+  }
+
+  /**
+   * Returns the solvers handled by this pool.
+   */
+  public List<Solver> solvers() {
+    return _solvers;
+  }
+
+  /**
+   * Adds the solver to the pool. Returns {@code false} (and nothing is done) if the structure
+   * handled by the {@code solver} overlaps with that of a solver already in the pool, or if
+   * some of their {@link Solver#targets()} belongs to the other structure. Set the solver
+   * targets before adding it.
+   */
+  public boolean add(Solver solver) {
+    if (solver == null || _solvers.contains(solver))
+      return false;
+    for (Solver other : _solvers)
+      if (_overlaps(solver.head(), other.head()) || _reads(solver, other) || _reads(other, solver)) {
+        System.out.println("Warning: solver structure overlaps with a solver already in the pool. Nothing done!");
+        return false;
+      }
+    return _solvers.add(solver);
+  }
+
+  /**
+   * Adds all the {@link Skeleton#solvers()} to the pool. The skeleton solver tasks are
+   * stopped (see {@link Skeleton#disableIK()}) since they are driven by the pool from now on.
+   *
+   * @see #add(Solver)
+   */
+  public void add(Skeleton skeleton) {
+    skeleton.disableIK();
+    for (Solver solver : skeleton.solvers())
+      add(solver);
+  }
+
+  /**
+   * Removes the solver from the pool.
+   */
+  public boolean remove(Solver solver) {
+    return _solvers.remove(solver);
+  }
+
+  /**
+   * Removes all the {@link Skeleton#solvers()} from the pool.
+   */
+  public void remove(Skeleton skeleton) {
+    for (Solver solver : skeleton.solvers())
+      remove(solver);
+  }
+
+  /**
+   * Returns {@code true} if a node is an ancestor of (or the same as) the other one.
+   */
+  protected static boolean _overlaps(Node node1, Node node2) {
+    for (Node node = node1; node != null; node = node.reference())
+      if (node == node2)
+        return true;
+    for (Node node = node2; node != null; node = node.reference())
+      if (node == node1)
+        return true;
+    return false;
+  }
+
+  /**
+   * Returns {@code true} if some of the {@code reader} targets belongs to the structure
+   * handled by the {@code writer}.
+   */
+  protected static boolean _reads(Solver reader, Solver writer) {
+    for (Node target : reader.targets())
+      for (Node node = target; node != null; node = node.reference())
+        if (node == writer.head())
+          return true;
+    return false;
+  }
+
+  /**
+   * Performs a {@link Solver#solve()} step on all the solvers in parallel and returns once
+   * all of them are done. Call it from the render thread, e.g., once per frame.
+   */
+  public void solve() {
+    // refresh the caches of the read-only shared nodes, so that the solvers don't update them concurrently
+    for (Solver solver : _solvers) {
+      if (solver.head().reference() != null)
+        solver.head().reference().position();
+      for (Node target : solver.targets())
+        target.position();
+    }
+    _pool.submit(() -> _solvers.parallelStream().forEach(Solver::solve)).join();
+  }
+}
@@ -4,6 +4,7 @@ import nub.core.Node;
 import nub.core.constraint.Constraint;
 import nub.ik.solver.Context;
 import nub.ik.solver.NodeInformation;
+import nub.ik.solver.PackedChain;
 import nub.ik.solver.Solver;
 import nub.primitives.Quaternion;
 import nub.primitives.Vector;
@@ -13,8 +14,9 @@ import java.util.List;
 
 public class FABRIKChain extends Solver {
   protected Context _context;
-  protected  ArrayList<Vector> _positions = new ArrayList<>();
-  protected ArrayList<Float> _distances = new ArrayList<>();
+  //joint positions and distances are kept in the packed chain float arrays
+  protected PackedChain _packed;
+  protected Vector _vector = new Vector();
 
   //Steady state algorithm
   protected float _current = 10e10f, _best = 10e10f, _previousBest = 10e10f;
@@ -36,14 +38,37 @@ public class FABRIKChain extends Solver {
     this._context = new Context(chain, target, false);
     _context.setSolver(this);
     _context.setSingleStep(false);
+    _packed = new PackedChain(chain.size());
   }
 
   public FABRIKChain(List<? extends Node> chain) {
     this(chain, null);
   }
 
+  /**
+   * Returns a copy of the joint positions found by the last iteration.
+   */
   public ArrayList<Vector> _positions() {
-    return _positions;
+    ArrayList<Vector> positions = new ArrayList<>();
+    for (int i = 0; i < _packed.size(); i++) {
+      positions.add(_position(i));
+    }
+    return positions;
+  }
+
+  protected Vector _position(int i) {
+    return _packed.position(i, new Vector());
+  }
+
+  protected void _setPosition(int i, Vector position) {
+    _setPosition(i, position.x(), position.y(), position.z());
+  }
+
+  protected void _setPosition(int i, float x, float y, float z) {
+    float[] positions = _packed.positions();
+    positions[3 * i] = x;
+    positions[3 * i + 1] = y;
+    positions[3 * i + 2] = z;
   }
 
   public Context context() {
@@ -58,62 +83,73 @@ public class FABRIKChain extends Solver {
     return _workInOrientationSpace;
   }
 
-  protected Vector _move(Vector u, Vector v, float distance){
-    float r = Vector.distance(u, v);
+  //Moves the j-th position towards the u-th one, such that their distance becomes the given one, and returns the displacement
+  protected float _move(int u, int j, float distance){
+    float[] p = _packed.positions();
+    int a = 3 * u, b = 3 * j;
+    float dx = p[b] - p[a], dy = p[b + 1] - p[a + 1], dz = p[b + 2] - p[a + 2];
+    float r = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
     float lambda_i = distance / r;
-    Vector new_u = Vector.multiply(u, 1.f - lambda_i);
-    new_u.add(Vector.multiply(v, lambda_i));
-    return new_u;
+    float x = p[a] + lambda_i * dx, y = p[a + 1] + lambda_i * dy, z = p[a + 2] + lambda_i * dz;
+    float change = (float) Math.sqrt((x - p[b]) * (x - p[b]) + (y - p[b + 1]) * (y - p[b + 1]) + (z - p[b + 2]) * (z - p[b + 2]));
+    p[b] = x;
+    p[b + 1] = y;
+    p[b + 2] = z;
+    return change;
+  }
+
+  protected void _copyPosition(int from, int to){
+    float[] p = _packed.positions();
+    p[3 * to] = p[3 * from];
+    p[3 * to + 1] = p[3 * from + 1];
+    p[3 * to + 2] = p[3 * from + 2];
   }
 
   protected float _forwardReaching(){
     float change = 0;
     List<NodeInformation> chain = _context.usableChainInformation();
+    float[] distances = _packed.lengths();
     int n = _context.usableChainInformation().size();
     for(int i = n - 2; i >= 0; i--){
-      Vector pos_i = _positions.get(i);
-      Vector pos_i1 = _positions.get(i + 1);
-      float dist_i = _distances.get(i + 1);
+      float dist_i = distances[i + 1];
       if(dist_i <= 10e-4){
-        _positions.set(i, pos_i1.get());
+        _copyPosition(i + 1, i);
         continue;
       }
       if(chain.get(i+1).node().constraint() != null && i < n - 2){
-        pos_i = applyForwardConstraint(i);
+        _setPosition(i, applyForwardConstraint(i));
       }
-      _positions.set(i, _move(pos_i1, pos_i, dist_i));
-      change += Vector.distance(pos_i, _positions.get(i));
+      change += _move(i + 1, i, dist_i);
     }
     return change;
   }
 
   protected void _backwardReachingUnconstrained(){ //Assume that all axis are aligned
     List<NodeInformation> chain = _context.usableChainInformation();
+    float[] p = _packed.positions();
+    float[] distances = _packed.lengths();
     for(int i = 0; i < chain.size() - 1; i++){
-      Vector pos_i = _positions.get(i);
-      Vector pos_i1 = _positions.get(i + 1);
-      float dist_i = _distances.get(i + 1);
+      float dist_i = distances[i + 1];
       if(dist_i <= 10e-4){
-        _positions.set(i+1, _positions.get(i));
+        _copyPosition(i, i + 1);
         continue;
       }
-      Vector new_pos_i1 = _move(pos_i, pos_i1, dist_i);
-      _positions.set(i+1, new_pos_i1);
+      _move(i, i + 1, dist_i);
       //update node
-      //chain.get(i+1).updateCacheUsingReference();
-      chain.get(i+1).node().setTranslation(Vector.subtract(new_pos_i1, pos_i));
-      chain.get(i+1).setPositionCache(new_pos_i1);
-      //chain.get(i+1).setPositionWithCache(_positions.get(i+1));
+      int a = 3 * i, b = 3 * (i + 1);
+      chain.get(i+1).node().setTranslation(p[b] - p[a], p[b + 1] - p[a + 1], p[b + 2] - p[a + 2]);
+      chain.get(i+1).positionCache().set(p[b], p[b + 1], p[b + 2]);
     }
   }
 
   protected void _backwardReachingConstrained(){
     List<NodeInformation> chain = _context.usableChainInformation();
+    float[] distances = _packed.lengths();
     for(int i = 0; i < chain.size() - 1; i++){
-      Vector pos_i1 = _positions.get(i + 1);
-      float dist_i = _distances.get(i + 1);
+      Vector pos_i1 = _position(i + 1);
+      float dist_i = distances[i + 1];
       if(dist_i <= 10e-4){
-        _positions.set(i+1, _positions.get(i));
+        _copyPosition(i, i + 1);
         //update node orientation
         chain.get(i+1).updateCacheUsingReference();
         continue;
@@ -128,7 +164,7 @@ public class FABRIKChain extends Solver {
       chain.get(i).rotateAndUpdateCache(delta, true);
       //Update cache of next Node
       chain.get(i+1).updateCacheUsingReference();
-      _positions.set(i+1, chain.get(i+1).positionCache());
+      _setPosition(i + 1, chain.get(i+1).positionCache());
     }
   }
 
@@ -141,13 +177,12 @@ public class FABRIKChain extends Solver {
     //NodeInformation._updateCache(_context.usableChainInformation());
 
     //Core algorithm
-    Node end = context().endEffectorInformation().node();
     Vector initial = chain.get(0).positionCache();
     //Assume that end effector reaches target
-    _positions.set(chain.size() - 1, context().target().position().get());
+    _setPosition(chain.size() - 1, context().target().position(_vector));
     _forwardReaching();
     //Restore root position
-    _positions.set(0, initial);
+    _setPosition(0, initial);
     if(!_workInOrientationSpace){
       _backwardReachingUnconstrained();
     }
@@ -197,9 +232,9 @@ public class FABRIKChain extends Solver {
     NodeInformation j_i = context().usableChainInformation().get(i);
     NodeInformation j_i1 = context().usableChainInformation().get(i+1);
     NodeInformation j_i2 = context().usableChainInformation().get(i+2);
-    Vector o = _positions.get(i);
-    Vector p = _positions.get(i+1);
-    Vector q = _positions.get(i+2);
+    Vector o = _position(i);
+    Vector p = _position(i+1);
+    Vector q = _position(i+2);
     //Convenient transformations to use local constraints in forward stage
     Constraint c_i1 = j_i1.node().constraint();
     Vector x = j_i1.locationWithCache(j_i);
@@ -228,18 +263,29 @@ public class FABRIKChain extends Solver {
   protected void _update() {
     if (_current < _best) {
       for (int i = 0; i < _context.endEffectorId() + 1; i++) {
+        //copy the best configuration in place (and notify the node about it)
+        Node node = _context.chain().get(i);
         if(!_workInOrientationSpace) {
-          _context.chain().get(i).setTranslation(_context.usableChain().get(i).translation().get());
+          if (node.constraint() != null) {
+            //the constraint acts on the translation delta
+            node.setTranslation(_context.usableChain().get(i).translation().get());
+          } else {
+            Vector translation = node.translation();
+            translation.set(_context.usableChain().get(i).translation());
+            node.setTranslation(translation);
+          }
         } else {
-          _context.chain().get(i).rotation()._quaternion[0] = _context.usableChain().get(i).rotation()._quaternion[0];
-          _context.chain().get(i).rotation()._quaternion[1] = _context.usableChain().get(i).rotation()._quaternion[1];
-          _context.chain().get(i).rotation()._quaternion[2] = _context.usableChain().get(i).rotation()._quaternion[2];
-          _context.chain().get(i).rotation()._quaternion[3] = _context.usableChain().get(i).rotation()._quaternion[3];
+          Constraint constraint = node.constraint();
+          node.setConstraint(null);
+          Quaternion rotation = node.rotation();
+          rotation.set(_context.usableChain().get(i).rotation());
+          node.setRotation(rotation);
+          node.setConstraint(constraint);
         }
 
-        if(i > 0)_context.chainInformation().get(i).updateCacheUsingReference();
-        else _context.chainInformation().get(i).setCache(_context.chainInformation().get(i).node().position().get(),
-            _context.chainInformation().get(i).node().orientation().get());
+        NodeInformation information = _context.chainInformation().get(i);
+        if(i > 0) information.updateCacheUsingReference();
+        else information.setCacheFromNode();
       }
       _best = _current;
     }
@@ -292,6 +338,18 @@ public class FABRIKChain extends Solver {
     _context.setTarget(target);
   }
 
+  @Override
+  public Node head() {
+    return _context.chain().get(0);
+  }
+
+  @Override
+  public List<Node> targets() {
+    List<Node> targets = new ArrayList<Node>();
+    if (_context.target() != null) targets.add(_context.target());
+    return targets;
+  }
+
   public Node target() {
     return _context.target();
   }
@@ -322,15 +380,7 @@ public class FABRIKChain extends Solver {
 
   //Initialize info about positions and distances
   protected void _init(){
-    _positions.clear();
-    _distances.clear();
-    Vector prev = context().chain().get(0).reference() == null ? new Vector() : context().chain().get(0).reference().position();
-    for(NodeInformation nodeInformation : context().chainInformation()){
-      Vector curr = nodeInformation.positionCache();
-      _positions.add(curr.get());
-      _distances.add(Vector.distance(prev, curr));
-      prev = curr;
-    }
+    _packed.load(context().chain());
   }
 
 }
@@ -1,7 +1,6 @@
 package nub.ik.solver.fabrik;
 
 import nub.core.Node;
-import nub.core.constraint.Constraint;
 import nub.ik.solver.*;
 import nub.primitives.Quaternion;
 import nub.primitives.Vector;
@@ -60,7 +59,9 @@ public class FABRIKTree extends Solver{
   }
 
   protected TreeNode _root;
-  protected List<List<NodeState>> _initial, _bestSubchains;
+  //array-backed states of all the subchains, kept in breadth-first order (see _subtrees())
+  protected ChainSnapshot _initial = new ChainSnapshot(), _best = new ChainSnapshot(), _candidate = new ChainSnapshot();
+  protected List<TreeNode> _subtrees;
   protected float _bestVal = 99999f, _bestDist = 999999f;
   protected boolean _innerChains = false;
 
@@ -247,6 +248,11 @@ public class FABRIKTree extends Solver{
     _updateToBest();
   }
 
+  @Override
+  protected float _convergenceError() {
+    return _bestVal;
+  }
+
   protected boolean _changed(TreeNode treeNode) {
     if (treeNode == null) return false;
     if (treeNode._solver()._changed() && treeNode._children().isEmpty()) return true;
@@ -309,10 +315,16 @@ public class FABRIKTree extends Solver{
     addTarget(endEffector, target);
   }
 
+  @Override
   public Node head() {
     return (Node) _root._solver().context().chain().get(0);
   }
 
+  @Override
+  public List<Node> targets() {
+    return new ArrayList<Node>(_endEffectorMap.values());
+  }
+
 
   protected boolean _addTarget(TreeNode treeNode, Node endEffector, Node target) {
     if (treeNode == null) return false;
@@ -360,6 +372,45 @@ public class FABRIKTree extends Solver{
     }
   }
 
+  @Override
+  public void enableAdaptive(boolean enable) {
+    super.enableAdaptive(enable);
+    _enableAdaptive(enable, _root);
+  }
+
+  protected void _enableAdaptive(boolean enable, TreeNode node) {
+    node._solver.enableAdaptive(enable);
+    for (TreeNode child : node._children()) {
+      _enableAdaptive(enable, child);
+    }
+  }
+
+  @Override
+  public void setMinImprovement(float minImprovement) {
+    super.setMinImprovement(minImprovement);
+    _setMinImprovement(minImprovement, _root);
+  }
+
+  protected void _setMinImprovement(float minImprovement, TreeNode node) {
+    node._solver.setMinImprovement(minImprovement);
+    for (TreeNode child : node._children()) {
+      _setMinImprovement(minImprovement, child);
+    }
+  }
+
+  @Override
+  public void setPatience(int patience) {
+    super.setPatience(patience);
+    _setPatience(patience, _root);
+  }
+
+  protected void _setPatience(int patience, TreeNode node) {
+    node._solver.setPatience(patience);
+    for (TreeNode child : node._children()) {
+      _setPatience(patience, child);
+    }
+  }
+
   public void setChainTimesPerFrame(int timesPerFrame) {
     _setChainTimesPerFrame(timesPerFrame, _root);
   }
@@ -386,64 +437,70 @@ public class FABRIKTree extends Solver{
     }
   }
 
-  protected List<List<NodeState>> _obtainSubchains(){
-    List<List<NodeState>> subchains = new ArrayList<>();
-    List<TreeNode> frontier = new ArrayList<>();
-    frontier.add(_root);
-    while(!frontier.isEmpty()){
-      TreeNode current = frontier.remove(0);
-      if(current._children != null) frontier.addAll(current._children);
-      subchains.add(saveState(current._solver.context().chain()));
+  /**
+   * Returns the tree nodes in breadth-first order, i.e., the order in which their chains
+   * states are kept in the snapshots.
+   */
+  protected List<TreeNode> _subtrees(){
+    if(_subtrees == null){
+      _subtrees = new ArrayList<>();
+      _subtrees.add(_root);
+      for(int i = 0; i < _subtrees.size(); i++){
+        TreeNode current = _subtrees.get(i);
+        if(current._children != null) _subtrees.addAll(current._children);
+      }
     }
-    return subchains;
+    return _subtrees;
   }
 
-  protected void _saveInitial(){
-    _initial = _obtainSubchains();
-  }
-
-  protected float distance(List<List<NodeState>> stateA, List<List<NodeState>> stateB){
-    float dist = 0;
-    for(int i = 0; i < stateA.size(); i++){
-      List<NodeState> sa = stateA.get(i);
-      List<NodeState> sb = stateB.get(i);
-      float d = 0;
-      for(int j = 0; j < sa.size(); j++){
-        NodeState na = sa.get(j);
-        NodeState nb = sb.get(j);
-        d += Context.quaternionDistance(na._orientation, nb._orientation);
-      }
-      dist += d;
+  protected void _obtainSubchains(ChainSnapshot snapshot){
+    snapshot.clear();
+    for(TreeNode current : _subtrees()){
+      snapshot.addNodes(current._solver.context().chain());
     }
-    return dist / stateA.size();
+  }
+
+  protected void _saveInitial(){
+    _obtainSubchains(_initial);
+  }
+
+  protected float distance(ChainSnapshot stateA, ChainSnapshot stateB){
+    return stateA.orientationDistance(stateB) / _subtrees().size();
   }
 
 
   protected void _updateToBest(){
-    for(List<NodeState> state : _bestSubchains){
-      restoreState(state);
-    }
+    _best.restore();
+  }
+
+  /**
+   * Keeps the candidate snapshot as the best one (the previous best becomes the next candidate).
+   */
+  protected void _keepCandidate(){
+    ChainSnapshot best = _best;
+    _best = _candidate;
+    _candidate = best;
   }
 
   protected float _trust = 1f;
   protected void _saveBest(){
     float curError = error();
     if(Math.abs(curError - _bestVal) < _maxError*2){
-      List<List<NodeState>> sc = _obtainSubchains();
-      float dist = distance(sc, _initial);
+      _obtainSubchains(_candidate);
+      float dist = distance(_candidate, _initial);
       if(dist < _bestDist){
         _bestVal = curError;
-        _bestSubchains = sc;
+        _keepCandidate();
         _bestDist = dist;
         _trust = 1;
       } else{
         _trust *= 0.8f;
       }
     } else if(curError < _bestVal){
-      List<List<NodeState>> sc = _obtainSubchains();
-      float dist = distance(sc, _initial);
+      _obtainSubchains(_candidate);
+      float dist = distance(_candidate, _initial);
       _bestVal = curError;
-      _bestSubchains = sc;
+      _keepCandidate();
       _bestDist = dist;
       _trust = 1;
     } else{
@@ -455,6 +512,11 @@ public class FABRIKTree extends Solver{
   }
 
   //Save Chain states
+
+  /**
+   * @deprecated Use a {@link ChainSnapshot} instead.
+   */
+  @Deprecated
   protected static class NodeState{
     protected Node _node;
     protected Quaternion _rotation, _orientation;
@@ -468,6 +530,11 @@ public class FABRIKTree extends Solver{
       }
   }
 
+  /**
+   * @deprecated Use a {@link ChainSnapshot} (see {@link ChainSnapshot#saveNodes(List)}), which
+   * doesn't create an object per node.
+   */
+  @Deprecated
   public static List<NodeState> saveState(List<? extends Node> chain){
     List<NodeState> state = new ArrayList<NodeState>();
     for(Node  node : chain){
@@ -476,17 +543,15 @@ public class FABRIKTree extends Solver{
     return state;
   }
 
+  /**
+   * @deprecated Use a {@link ChainSnapshot} (see {@link ChainSnapshot#restore()}).
+   */
+  @Deprecated
   public static void restoreState(List<NodeState> state){
+    ChainSnapshot snapshot = new ChainSnapshot(state.size());
     for(NodeState nodeState : state){
-      Node node = nodeState._node;
-      Constraint constraint = node.constraint();
-      node.setConstraint(null);
-      node.setRotation(nodeState._rotation.get());
-      node.setTranslation(nodeState._translation.get());
-      node.setConstraint(constraint);
+      snapshot.add(nodeState._node, nodeState._rotation, nodeState._translation, nodeState._orientation, nodeState._position);
     }
+    snapshot.restore();
   }
-
-
-
 }
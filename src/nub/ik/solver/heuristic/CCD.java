@@ -4,6 +4,7 @@ import nub.core.Node;
 import nub.core.constraint.Hinge;
 import nub.ik.solver.NodeInformation;
 import nub.ik.solver.Context;
+import nub.ik.solver.PackedChain;
 import nub.primitives.Quaternion;
 import nub.primitives.Vector;
 
@@ -12,6 +13,10 @@ public class CCD extends Heuristic {
    * The idea of this heuristics is to apply popular CCD Step. Here most of the work is done by the last joint and as them could move
    * that what is truly required the final pose of the chain will not be perceived as a natural pose.
    */
+  protected boolean _packed; //whether or not the current iteration works on the packed chain
+  protected float[] _target = new float[3], _effector = new float[3], _local = new float[3], _delta = new float[4];
+  protected Vector _vector = new Vector();
+
   public CCD(Context context) {
     super(context);
   }
@@ -19,16 +24,68 @@ public class CCD extends Heuristic {
 
   @Override
   public void prepare() {
-    //Update cache of usable chain
-    NodeInformation._updateCache(_context.usableChainInformation());
+    _packed = _preparePacked(_context, _target, _vector);
+    if (!_packed) {
+      //Update cache of usable chain
+      NodeInformation._updateCache(_context.usableChainInformation());
+    }
   }
 
   @Override
   public void applyActions(int i) {
+    if (_packed) {
+      applyPackedCCD(_context.packedChain(), i, _context.endEffectorId(), _target, _effector, _local, _delta);
+      return;
+    }
     applyCCD(this, i, _context.applyDelegation());
     applyOrientationalCCD(this, i);
   }
 
+  @Override
+  public void finish() {
+    if (_packed) _finishPacked(_context);
+  }
+
+  @Override
+  public boolean packed() {
+    return _packed;
+  }
+
+  /**
+   * Loads the packed chain when the current iteration could be performed on it, i.e., when
+   * the solver allows it, the chain is unconstrained, and neither the orientation nor the
+   * delegation are taken into account. The world target position is stored in {@code target}.
+   */
+  protected static boolean _preparePacked(Context context, float[] target, Vector vector) {
+    if (!context.packing() || context.direction() || context.applyDelegation()) return false;
+    PackedChain chain = context.packedChain();
+    chain.load(context.usableChain());
+    if (!chain.isUnconstrained()) return false;
+    context.worldTarget().position(vector);
+    target[0] = vector.x();
+    target[1] = vector.y();
+    target[2] = vector.z();
+    return true;
+  }
+
+  //Store the packed chain back into the usable chain and its cache
+  protected static void _finishPacked(Context context) {
+    PackedChain chain = context.packedChain();
+    chain.store(context.usableChain());
+    chain.storeCache(context.usableChainInformation());
+  }
+
+  //CCD step on the packed chain: same as applyCCD on an unconstrained joint, without allocations
+  public static void applyPackedCCD(PackedChain chain, int i, int endEffector, float[] target, float[] effector, float[] local, float[] delta) {
+    //the joint cache could be outdated if its ancestors were modified
+    if (i > 0) chain.updateJoint(i);
+    float[] positions = chain.positions();
+    chain.location(i, positions[3 * endEffector], positions[3 * endEffector + 1], positions[3 * endEffector + 2], effector);
+    chain.location(i, target[0], target[1], target[2], local);
+    PackedChain._fromTo(effector[0], effector[1], effector[2], local[0], local[1], local[2], delta, 0);
+    chain.rotate(i, delta[0], delta[1], delta[2], delta[3], endEffector);
+  }
+
   //CCD - BASIC OPERATIONS
   public  static Quaternion findCCD(NodeInformation j_i, Vector endEffector, Vector target, boolean checkHinge){
     Vector p = endEffector;
@@ -27,6 +27,16 @@ public abstract class Heuristic {
 
   public abstract void applyActions(int i);
 
+  //This method is executed at the end of each iteration, once all the actions were applied.
+  //Heuristics working on the packed chain (see Context.packedChain()) must store it back into the usable chain here
+  public void finish() {
+  }
+
+  //Whether or not the current iteration works on the packed chain instead of the NodeInformation caches
+  public boolean packed() {
+    return false;
+  }
+
   public Context context(){
     return _context;
   }
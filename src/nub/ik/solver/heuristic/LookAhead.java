@@ -1,8 +1,7 @@
 package nub.ik.solver.heuristic;
 
+import nub.ik.solver.ChainSnapshot;
 import nub.ik.solver.NodeInformation;
-import nub.ik.solver.NodeState;
-import nub.ik.solver.State;
 import nub.primitives.Quaternion;
 import nub.primitives.Vector;
 
@@ -29,39 +28,37 @@ public class LookAhead extends Heuristic {
   public void applyActions(int i) {
     //Keep state of joints that are modified by the heuristic
     List<NodeInformation> chain = _context.usableChainInformation();
-    NodeState initialState = new NodeState(_context.endEffectorInformation());
-    for (int k = i; k < Math.min(chain.size() - 1, i + _lookAhead); k++) {
-      System.out.println(k + "initial : " + chain.get(k).positionCache());
-    }
-
-    NodeState finalState = _applyActions(chain, i, 0);
-    _context.endEffectorInformation().setCache(initialState.position().get(), initialState.orientation().get());
-    _context.endEffectorInformation().node().setRotation(initialState.rotation());
-
-    for (int k = i; k < Math.min(chain.size() - 1, i + _lookAhead); k++) {
-      System.out.println(k + "after : " + chain.get(k).positionCache());
-    }
+    ChainSnapshot initialState = _pool.acquire();
+    initialState.add(_context.endEffectorInformation());
+    _applyActions(chain, i, 0, _finalPosition);
+    initialState.restore();
+    _pool.release(initialState);
     //Apply fixing rotation based on initial and final states
     _heuristic.applyActions(i);
     Vector p = chain.get(i).locationWithCache(_context.endEffectorInformation());
-    Vector q = chain.get(i).locationWithCache(finalState.position());
+    Vector q = chain.get(i).locationWithCache(_finalPosition);
     Quaternion delta = new Quaternion(p, q);
     //chain.get(i).rotateAndUpdateCache(delta, true, _context.endEffectorInformation());
   }
 
-  protected NodeState _applyActions(List<NodeInformation> chain, int i, int k) {
+  /**
+   * Applies the heuristic actions on the joints {@code i + k, ..., i + lookAhead} and stores the
+   * resulting end effector position into {@code finalPosition}. The state of every joint is
+   * restored afterwards.
+   */
+  protected void _applyActions(List<NodeInformation> chain, int i, int k, Vector finalPosition) {
     if (k == _lookAhead + 1 || i + k == _context.last()) {
-      //Return the state of the Node j_{i + k}
-      NodeState finalState = new NodeState(_context.endEffectorInformation());
-      return finalState;
+      //Keep the state of the Node j_{i + k}
+      finalPosition.set(_context.endEffectorInformation().positionCache());
+      return;
     }
-    NodeState state = new NodeState(_context.usableChainInformation().get(i + k));
+    ChainSnapshot state = _pool.acquire();
+    state.add(_context.usableChainInformation().get(i + k));
     if (k != 0) _context.usableChainInformation().get(i + k).updateCacheUsingReference();
     _heuristic.applyActions(i + k);
-    NodeState finalState = _applyActions(chain, i, k + 1);
-    _context.usableChainInformation().get(i + k).setCache(state.position().get(), state.orientation().get());
-    _context.usableChainInformation().get(i + k).node().setRotation(state.rotation());
-    return finalState;
+    _applyActions(chain, i, k + 1, finalPosition);
+    state.restore();
+    _pool.release(state);
   }
 
 
@@ -74,23 +71,27 @@ public class LookAhead extends Heuristic {
    * There will be cases in which we modify the chain based on a heuristic and look at some intermediary solution.
    * This solution could give us information of better local actions.
    * <p>
-   * To do so, we require to save and restore previous states.
+   * To do so, we require to save and restore previous states, which are kept in pooled snapshots
+   * (see {@link ChainSnapshot.Pool}) to avoid creating objects at each step.
    */
-  protected List<State> _states;
+  protected List<ChainSnapshot> _states;
+  protected ChainSnapshot.Pool _pool = new ChainSnapshot.Pool();
+  protected Vector _finalPosition = new Vector();
 
   //saves the state of the specified nodes of usable chain
   public void saveState(Heuristic heuristic, int i) {
-    State state = new State();
+    ChainSnapshot state = _pool.acquire();
     for (NodeInformation ni : heuristic.nodesToModify(i)) {
-      state.addNodeState(ni);
+      state.add(ni);
     }
     _states.add(state);
   }
 
   //restore the last state saved
   public void restoreState() {
-    State state = _states.remove(_states.size() - 1);
-    state.restoreState();
+    ChainSnapshot state = _states.remove(_states.size() - 1);
+    state.restore();
+    _pool.release(state);
   }
 
 }
@@ -3,6 +3,7 @@ package nub.ik.solver.heuristic;
 import nub.core.constraint.Hinge;
 import nub.ik.solver.NodeInformation;
 import nub.ik.solver.Context;
+import nub.ik.solver.PackedChain;
 import nub.primitives.Quaternion;
 import nub.primitives.Vector;
 
@@ -11,6 +12,10 @@ public class TRIK extends Heuristic {
      * The idea of this heuristics is to Apply a local action similar to FABRIK
      */
 
+    protected boolean _packed; //whether or not the current iteration works on the packed chain
+    protected float[] _target = new float[3], _effector = new float[3], _local = new float[3], _delta = new float[8];
+    protected Vector _vector = new Vector();
+
     public TRIK(Context context) {
         super(context);
     }
@@ -18,12 +23,29 @@ public class TRIK extends Heuristic {
 
     @Override
     public void prepare() {
-        //Update cache of usable chain
-        NodeInformation._updateCache(_context.usableChainInformation());
+        _packed = CCD._preparePacked(_context, _target, _vector);
+        if (!_packed) {
+            //Update cache of usable chain
+            NodeInformation._updateCache(_context.usableChainInformation());
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (_packed) CCD._finishPacked(_context);
+    }
+
+    @Override
+    public boolean packed() {
+        return _packed;
     }
 
     @Override
     public void applyActions(int i) {
+        if (_packed) {
+            applyPackedTRIK(_context.packedChain(), i, _context.endEffectorId(), _target, _effector, _local, _delta);
+            return;
+        }
         applyTRIK(this, i);
         if(_context.topToBottom()) {
             CCD.applyOrientationalCCD(this, i);
@@ -110,4 +132,38 @@ public class TRIK extends Heuristic {
             j_i1.rotateAndUpdateCache(delta_i1, false, context.endEffectorInformation());
         }
     }
+
+    //TRIK step on the packed chain: same as applyTRIK on unconstrained joints, without allocations
+    public static void applyPackedTRIK(PackedChain chain, int i, int endEffector, float[] target, float[] effector, float[] local, float[] delta){
+        //the joint cache could be outdated if its ancestors were modified
+        if (i > 0) chain.updateJoint(i);
+        float[] positions = chain.positions();
+        chain.location(i, positions[3 * endEffector], positions[3 * endEffector + 1], positions[3 * endEffector + 2], effector);
+        chain.location(i, target[0], target[1], target[2], local);
+        //find the rotation that reaches the target while keeps the orientation
+        float[] t = chain.translations();
+        int ti = 3 * (i + 1);
+        PackedChain._fromTo(t[ti], t[ti + 1], t[ti + 2], t[ti] - effector[0] + local[0], t[ti + 1] - effector[1] + local[1], t[ti + 2] - effector[2] + local[2], delta, 0);
+        PackedChain._normalize(delta, 0);
+        if(i == endEffector - 1){
+            chain.rotate(i, delta[0], delta[1], delta[2], delta[3], endEffector);
+        } else {
+            //without constraints the fix step on i is delta itself, while the one on i_1 is q_i1^-1 * delta^-1 * q_i1
+            float[] r = chain.rotations();
+            int ri = 4 * (i + 1);
+            delta[4] = -r[ri];
+            delta[5] = -r[ri + 1];
+            delta[6] = -r[ri + 2];
+            delta[7] = r[ri + 3];
+            chain.rotate(i, delta[0], delta[1], delta[2], delta[3], endEffector);
+            delta[0] = -delta[0];
+            delta[1] = -delta[1];
+            delta[2] = -delta[2];
+            PackedChain._multiply(delta, 4, delta, 0, delta, 0);
+            PackedChain._multiply(delta, 0, r, ri, delta, 0);
+            PackedChain._normalize(delta, 0);
+            chain.updateJoint(i + 1);
+            chain.rotate(i + 1, delta[0], delta[1], delta[2], delta[3], endEffector);
+        }
+    }
 }
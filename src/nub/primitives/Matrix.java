@@ -355,8 +355,7 @@ public class Matrix {
    * Sets the matrix contents from the {@code matrix} contents.
    */
   public void set(Matrix matrix) {
-    set(matrix._matrix[0], matrix._matrix[1], matrix._matrix[2], matrix._matrix[3], matrix._matrix[4], matrix._matrix[5], matrix._matrix[6], matrix._matrix[7], matrix._matrix[8],
-        matrix._matrix[9], matrix._matrix[10], matrix._matrix[11], matrix._matrix[12], matrix._matrix[13], matrix._matrix[14], matrix._matrix[15]);
+    System.arraycopy(matrix._matrix, 0, _matrix, 0, 16);
   }
 
   /**
@@ -387,10 +386,23 @@ public class Matrix {
    */
   public void set(float m0, float m1, float m2, float m3, float m4, float m5, float m6, float m7, float m8,
                   float m9, float m10, float m11, float m12, float m13, float m14, float m15, boolean columnMajorOrder) {
-    set(new float[]{m0, m1, m2, m3,
-        m4, m5, m6, m7,
-        m8, m9, m10, m11,
-        m12, m13, m14, m15}, columnMajorOrder);
+    // entries are set one by one to prevent the (temporary) array allocation
+    _matrix[0] = m0;
+    _matrix[5] = m5;
+    _matrix[10] = m10;
+    _matrix[15] = m15;
+    _matrix[columnMajorOrder ? 1 : 4] = m1;
+    _matrix[columnMajorOrder ? 2 : 8] = m2;
+    _matrix[columnMajorOrder ? 3 : 12] = m3;
+    _matrix[columnMajorOrder ? 4 : 1] = m4;
+    _matrix[columnMajorOrder ? 6 : 9] = m6;
+    _matrix[columnMajorOrder ? 7 : 13] = m7;
+    _matrix[columnMajorOrder ? 8 : 2] = m8;
+    _matrix[columnMajorOrder ? 9 : 6] = m9;
+    _matrix[columnMajorOrder ? 11 : 14] = m11;
+    _matrix[columnMajorOrder ? 12 : 3] = m12;
+    _matrix[columnMajorOrder ? 13 : 7] = m13;
+    _matrix[columnMajorOrder ? 14 : 11] = m14;
   }
 
   /**
@@ -577,28 +589,31 @@ public class Matrix {
   }
 
   /**
-   * Define {@code c} as {@code a x b}.
+   * Define {@code c} as {@code a x b}. Note that {@code c} may be {@code a} or {@code b}.
    */
   public static void multiply(Matrix a, Matrix b, Matrix c) {
-    c._matrix[0] = a._matrix[0] * b._matrix[0] + a._matrix[4] * b._matrix[1] + a._matrix[8] * b._matrix[2] + a._matrix[12] * b._matrix[3];
-    c._matrix[4] = a._matrix[0] * b._matrix[4] + a._matrix[4] * b._matrix[5] + a._matrix[8] * b._matrix[6] + a._matrix[12] * b._matrix[7];
-    c._matrix[8] = a._matrix[0] * b._matrix[8] + a._matrix[4] * b._matrix[9] + a._matrix[8] * b._matrix[10] + a._matrix[12] * b._matrix[11];
-    c._matrix[12] = a._matrix[0] * b._matrix[12] + a._matrix[4] * b._matrix[13] + a._matrix[8] * b._matrix[14] + a._matrix[12] * b._matrix[15];
+    float[] m = a._matrix, n = b._matrix;
+    float c0 = m[0] * n[0] + m[4] * n[1] + m[8] * n[2] + m[12] * n[3];
+    float c4 = m[0] * n[4] + m[4] * n[5] + m[8] * n[6] + m[12] * n[7];
+    float c8 = m[0] * n[8] + m[4] * n[9] + m[8] * n[10] + m[12] * n[11];
+    float c12 = m[0] * n[12] + m[4] * n[13] + m[8] * n[14] + m[12] * n[15];
 
-    c._matrix[1] = a._matrix[1] * b._matrix[0] + a._matrix[5] * b._matrix[1] + a._matrix[9] * b._matrix[2] + a._matrix[13] * b._matrix[3];
-    c._matrix[5] = a._matrix[1] * b._matrix[4] + a._matrix[5] * b._matrix[5] + a._matrix[9] * b._matrix[6] + a._matrix[13] * b._matrix[7];
-    c._matrix[9] = a._matrix[1] * b._matrix[8] + a._matrix[5] * b._matrix[9] + a._matrix[9] * b._matrix[10] + a._matrix[13] * b._matrix[11];
-    c._matrix[13] = a._matrix[1] * b._matrix[12] + a._matrix[5] * b._matrix[13] + a._matrix[9] * b._matrix[14] + a._matrix[13] * b._matrix[15];
+    float c1 = m[1] * n[0] + m[5] * n[1] + m[9] * n[2] + m[13] * n[3];
+    float c5 = m[1] * n[4] + m[5] * n[5] + m[9] * n[6] + m[13] * n[7];
+    float c9 = m[1] * n[8] + m[5] * n[9] + m[9] * n[10] + m[13] * n[11];
+    float c13 = m[1] * n[12] + m[5] * n[13] + m[9] * n[14] + m[13] * n[15];
 
-    c._matrix[2] = a._matrix[2] * b._matrix[0] + a._matrix[6] * b._matrix[1] + a._matrix[10] * b._matrix[2] + a._matrix[14] * b._matrix[3];
-    c._matrix[6] = a._matrix[2] * b._matrix[4] + a._matrix[6] * b._matrix[5] + a._matrix[10] * b._matrix[6] + a._matrix[14] * b._matrix[7];
-    c._matrix[10] = a._matrix[2] * b._matrix[8] + a._matrix[6] * b._matrix[9] + a._matrix[10] * b._matrix[10] + a._matrix[14] * b._matrix[11];
-    c._matrix[14] = a._matrix[2] * b._matrix[12] + a._matrix[6] * b._matrix[13] + a._matrix[10] * b._matrix[14] + a._matrix[14] * b._matrix[15];
+    float c2 = m[2] * n[0] + m[6] * n[1] + m[10] * n[2] + m[14] * n[3];
+    float c6 = m[2] * n[4] + m[6] * n[5] + m[10] * n[6] + m[14] * n[7];
+    float c10 = m[2] * n[8] + m[6] * n[9] + m[10] * n[10] + m[14] * n[11];
+    float c14 = m[2] * n[12] + m[6] * n[13] + m[10] * n[14] + m[14] * n[15];
 
-    c._matrix[3] = a._matrix[3] * b._matrix[0] + a._matrix[7] * b._matrix[1] + a._matrix[11] * b._matrix[2] + a._matrix[15] * b._matrix[3];
-    c._matrix[7] = a._matrix[3] * b._matrix[4] + a._matrix[7] * b._matrix[5] + a._matrix[11] * b._matrix[6] + a._matrix[15] * b._matrix[7];
-    c._matrix[11] = a._matrix[3] * b._matrix[8] + a._matrix[7] * b._matrix[9] + a._matrix[11] * b._matrix[10] + a._matrix[15] * b._matrix[11];
-    c._matrix[15] = a._matrix[3] * b._matrix[12] + a._matrix[7] * b._matrix[13] + a._matrix[11] * b._matrix[14] + a._matrix[15] * b._matrix[15];
+    float c3 = m[3] * n[0] + m[7] * n[1] + m[11] * n[2] + m[15] * n[3];
+    float c7 = m[3] * n[4] + m[7] * n[5] + m[11] * n[6] + m[15] * n[7];
+    float c11 = m[3] * n[8] + m[7] * n[9] + m[11] * n[10] + m[15] * n[11];
+    float c15 = m[3] * n[12] + m[7] * n[13] + m[11] * n[14] + m[15] * n[15];
+
+    c.set(c0, c1, c2, c3, c4, c5, c6, c7, c8, c9, c10, c11, c12, c13, c14, c15);
   }
 
   /**
@@ -618,9 +633,11 @@ public class Matrix {
     if (target == null) {
       target = new Vector();
     }
-    target.set(_matrix[0] * source.x() + _matrix[4] * source.y() + _matrix[8] * source.z() + _matrix[12],
-        _matrix[1] * source.x() + _matrix[5] * source.y() + _matrix[9] * source.z() + _matrix[13],
-        _matrix[2] * source.x() + _matrix[6] * source.y() + _matrix[10] * source.z() + _matrix[14]);
+    // target may be source
+    float x = source.x(), y = source.y(), z = source.z();
+    target.set(_matrix[0] * x + _matrix[4] * y + _matrix[8] * z + _matrix[12],
+        _matrix[1] * x + _matrix[5] * y + _matrix[9] * z + _matrix[13],
+        _matrix[2] * x + _matrix[6] * y + _matrix[10] * z + _matrix[14]);
     return target;
   }
 
@@ -894,7 +911,15 @@ public class Matrix {
    * @see #orthographic(float, float, float, float)
    */
   public static Matrix view(Vector position, Quaternion orientation) {
-    Matrix view = new Matrix();
+    return view(position, orientation, null);
+  }
+
+  /**
+   * Same as {@link #view(Vector, Quaternion)}, but stores the view matrix into {@code target}
+   * which is then returned. If {@code target} is null a new matrix is created.
+   */
+  public static Matrix view(Vector position, Quaternion orientation, Matrix target) {
+    Matrix view = target == null ? new Matrix() : target;
 
     float q00 = 2.0f * orientation._quaternion[0] * orientation._quaternion[0];
     float q11 = 2.0f * orientation._quaternion[1] * orientation._quaternion[1];
@@ -923,11 +948,11 @@ public class Matrix {
     view._matrix[10] = 1.0f - q11 - q00;
     view._matrix[11] = 0.0f;
 
-    Vector t = orientation.inverseRotate(position);
-
-    view._matrix[12] = -t._vector[0];
-    view._matrix[13] = -t._vector[1];
-    view._matrix[14] = -t._vector[2];
+    // the inverse rotated position is computed in place (i.e., without allocating a new vector)
+    float x = position._vector[0], y = position._vector[1], z = position._vector[2];
+    view._matrix[12] = -(view._matrix[0] * x + view._matrix[4] * y + view._matrix[8] * z);
+    view._matrix[13] = -(view._matrix[1] * x + view._matrix[5] * y + view._matrix[9] * z);
+    view._matrix[14] = -(view._matrix[2] * x + view._matrix[6] * y + view._matrix[10] * z);
     view._matrix[15] = 1.0f;
 
     return view;
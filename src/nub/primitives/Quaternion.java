@@ -507,6 +507,15 @@ public class Quaternion {
     return multiply(a, b);
   }
 
+  /**
+   * Same as {@code return multiply(a, b, target)}.
+   *
+   * @see #multiply(Quaternion, Quaternion, Quaternion)
+   */
+  public static Quaternion compose(Quaternion a, Quaternion b, Quaternion target) {
+    return multiply(a, b, target);
+  }
+
   /**
    * Returns the product of quaternions {@code a} and {@code b}.
    *
@@ -514,12 +523,31 @@ public class Quaternion {
    * @param b the second Quaternion
    */
   public static Quaternion multiply(Quaternion a, Quaternion b) {
+    return multiply(a, b, null);
+  }
+
+  /**
+   * Stores the product of quaternions {@code a} and {@code b} into {@code target} which
+   * is then returned. If {@code target} is null a new quaternion is created. Note that
+   * {@code target} may be {@code a} or {@code b}.
+   *
+   * @param a      the first Quaternion
+   * @param b      the second Quaternion
+   * @param target the Quaternion to store the result
+   */
+  public static Quaternion multiply(Quaternion a, Quaternion b, Quaternion target) {
     float x, y, z, w;
     w = a._quaternion[3] * b._quaternion[3] - a._quaternion[0] * b._quaternion[0] - a._quaternion[1] * b._quaternion[1] - a._quaternion[2] * b._quaternion[2];
     x = a._quaternion[3] * b._quaternion[0] + b._quaternion[3] * a._quaternion[0] + a._quaternion[1] * b._quaternion[2] - a._quaternion[2] * b._quaternion[1];
     y = a._quaternion[3] * b._quaternion[1] + b._quaternion[3] * a._quaternion[1] - a._quaternion[0] * b._quaternion[2] + a._quaternion[2] * b._quaternion[0];
     z = a._quaternion[3] * b._quaternion[2] + b._quaternion[3] * a._quaternion[2] + a._quaternion[0] * b._quaternion[1] - a._quaternion[1] * b._quaternion[0];
-    return new Quaternion(x, y, z, w);
+    if (target == null)
+      return new Quaternion(x, y, z, w);
+    target._quaternion[0] = x;
+    target._quaternion[1] = y;
+    target._quaternion[2] = z;
+    target._quaternion[3] = w;
+    return target;
   }
 
   /**
@@ -547,6 +575,15 @@ public class Quaternion {
     return quaternion.rotate(vector);
   }
 
+  /**
+   * Same as {@code return quaternion.rotate(vector, target)}.
+   *
+   * @see #rotate(Vector, Vector)
+   */
+  public static Vector multiply(Quaternion quaternion, Vector vector, Vector target) {
+    return quaternion.rotate(vector, target);
+  }
+
   /**
    * Multiplies this by the inverse of Quaternion {@code q1} and places the value into this
    * (i.e., {@code this = this * q^-1}). The value of the argument quaternion is preserved.
@@ -554,9 +591,7 @@ public class Quaternion {
    * @param q1 the other Quaternion
    */
   public void multiplyInverse(Quaternion q1) {
-    Quaternion tempQuaternion = new Quaternion(q1);
-    tempQuaternion.invert();
-    this.multiply(tempQuaternion);
+    multiplyInverse(this, q1, this);
   }
 
   /**
@@ -567,9 +602,36 @@ public class Quaternion {
    * @param q2 the second Quaternion
    */
   public static Quaternion multiplyInverse(Quaternion q1, Quaternion q2) {
-    Quaternion tempQuaternion = new Quaternion(q2);
-    tempQuaternion.invert();
-    return Quaternion.multiply(q1, tempQuaternion);
+    return multiplyInverse(q1, q2, null);
+  }
+
+  /**
+   * Stores the product of quaternion {@code q1} by the inverse of quaternion {@code q2}
+   * (i.e., {@code q1 * q2^-1}) into {@code target} which is then returned. If {@code target}
+   * is null a new quaternion is created. Note that {@code target} may be {@code q1} or {@code q2}.
+   *
+   * @param q1     the first Quaternion
+   * @param q2     the second Quaternion
+   * @param target the Quaternion to store the result
+   */
+  public static Quaternion multiplyInverse(Quaternion q1, Quaternion q2, Quaternion target) {
+    float sqNorm = squaredNorm(q2);
+    float bx = -q2._quaternion[0] / sqNorm;
+    float by = -q2._quaternion[1] / sqNorm;
+    float bz = -q2._quaternion[2] / sqNorm;
+    float bw = q2._quaternion[3] / sqNorm;
+    float x, y, z, w;
+    w = q1._quaternion[3] * bw - q1._quaternion[0] * bx - q1._quaternion[1] * by - q1._quaternion[2] * bz;
+    x = q1._quaternion[3] * bx + bw * q1._quaternion[0] + q1._quaternion[1] * bz - q1._quaternion[2] * by;
+    y = q1._quaternion[3] * by + bw * q1._quaternion[1] - q1._quaternion[0] * bz + q1._quaternion[2] * bx;
+    z = q1._quaternion[3] * bz + bw * q1._quaternion[2] + q1._quaternion[0] * by - q1._quaternion[1] * bx;
+    if (target == null)
+      return new Quaternion(x, y, z, w);
+    target._quaternion[0] = x;
+    target._quaternion[1] = y;
+    target._quaternion[2] = z;
+    target._quaternion[3] = w;
+    return target;
   }
 
   /**
@@ -583,9 +645,21 @@ public class Quaternion {
    * @see #invert()
    */
   public Quaternion inverse() {
-    Quaternion tempQuaternion = new Quaternion(this);
-    tempQuaternion.invert();
-    return tempQuaternion;
+    return inverse(null);
+  }
+
+  /**
+   * Stores the inverse quaternion (inverse rotation) into {@code target} which is then
+   * returned. If {@code target} is null a new quaternion is created.
+   *
+   * @see #inverse()
+   * @see #invert(Quaternion)
+   */
+  public Quaternion inverse(Quaternion target) {
+    if (target == null)
+      target = new Quaternion();
+    target.invert(this);
+    return target;
   }
 
   /**
@@ -647,22 +721,45 @@ public class Quaternion {
    * @param vector the Vector
    */
   public Vector rotate(Vector vector) {
-    float q00 = 2.0f * this._quaternion[0] * this._quaternion[0];
-    float q11 = 2.0f * this._quaternion[1] * this._quaternion[1];
-    float q22 = 2.0f * this._quaternion[2] * this._quaternion[2];
+    return rotate(vector, null);
+  }
 
-    float q01 = 2.0f * this._quaternion[0] * this._quaternion[1];
-    float q02 = 2.0f * this._quaternion[0] * this._quaternion[2];
-    float q03 = 2.0f * this._quaternion[0] * this._quaternion[3];
+  /**
+   * Stores the image of {@code vector} by the quaternion rotation into {@code target}
+   * which is then returned. If {@code target} is null a new vector is created. Note that
+   * {@code target} may be {@code vector}.
+   *
+   * @param vector the Vector
+   * @param target the Vector to store the result
+   */
+  public Vector rotate(Vector vector, Vector target) {
+    return _rotate(this._quaternion[0], this._quaternion[1], this._quaternion[2], this._quaternion[3], vector, target);
+  }
 
-    float q12 = 2.0f * this._quaternion[1] * this._quaternion[2];
-    float q13 = 2.0f * this._quaternion[1] * this._quaternion[3];
+  /**
+   * Used by {@link #rotate(Vector, Vector)} and {@link #inverseRotate(Vector, Vector)}.
+   */
+  protected static Vector _rotate(float x, float y, float z, float w, Vector vector, Vector target) {
+    float q00 = 2.0f * x * x;
+    float q11 = 2.0f * y * y;
+    float q22 = 2.0f * z * z;
 
-    float q23 = 2.0f * this._quaternion[2] * this._quaternion[3];
+    float q01 = 2.0f * x * y;
+    float q02 = 2.0f * x * z;
+    float q03 = 2.0f * x * w;
 
-    return new Vector((1.0f - q11 - q22) * vector._vector[0] + (q01 - q23) * vector._vector[1] + (q02 + q13) * vector._vector[2],
-        (q01 + q23) * vector._vector[0] + (1.0f - q22 - q00) * vector._vector[1] + (q12 - q03) * vector._vector[2],
-        (q02 - q13) * vector._vector[0] + (q12 + q03) * vector._vector[1] + (1.0f - q11 - q00) * vector._vector[2]);
+    float q12 = 2.0f * y * z;
+    float q13 = 2.0f * y * w;
+
+    float q23 = 2.0f * z * w;
+
+    float vx = (1.0f - q11 - q22) * vector._vector[0] + (q01 - q23) * vector._vector[1] + (q02 + q13) * vector._vector[2];
+    float vy = (q01 + q23) * vector._vector[0] + (1.0f - q22 - q00) * vector._vector[1] + (q12 - q03) * vector._vector[2];
+    float vz = (q02 - q13) * vector._vector[0] + (q12 + q03) * vector._vector[1] + (1.0f - q11 - q00) * vector._vector[2];
+    if (target == null)
+      return new Vector(vx, vy, vz);
+    target.set(vx, vy, vz);
+    return target;
   }
 
   /**
@@ -673,9 +770,20 @@ public class Quaternion {
    * @param vector the Vector
    */
   public Vector inverseRotate(Vector vector) {
-    Quaternion tempQuaternion = new Quaternion(this._quaternion[0], this._quaternion[1], this._quaternion[2], this._quaternion[3]);
-    tempQuaternion.invert();
-    return tempQuaternion.rotate(vector);
+    return inverseRotate(vector, null);
+  }
+
+  /**
+   * Stores the image of {@code vector} by the quaternion {@link #inverse()} rotation into
+   * {@code target} which is then returned. If {@code target} is null a new vector is created.
+   * Note that {@code target} may be {@code vector}.
+   *
+   * @param vector the Vector
+   * @param target the Vector to store the result
+   */
+  public Vector inverseRotate(Vector vector, Vector target) {
+    float sqNorm = squaredNorm(this);
+    return _rotate(-this._quaternion[0] / sqNorm, -this._quaternion[1] / sqNorm, -this._quaternion[2] / sqNorm, this._quaternion[3] / sqNorm, vector, target);
   }
 
   /**
@@ -755,19 +863,33 @@ public class Quaternion {
    * @see #fromEulerAngles(float, float, float)
    */
   public Vector eulerAngles() {
+    return eulerAngles(null);
+  }
+
+  /**
+   * Stores the {@link #eulerAngles()} into {@code target} which is then returned. If
+   * {@code target} is null a new vector is created.
+   *
+   * @see #eulerAngles()
+   */
+  public Vector eulerAngles(Vector target) {
+    if (target == null)
+      target = new Vector();
     float roll, pitch, yaw;
     float test = this._quaternion[0] * this._quaternion[1] + this._quaternion[2] * this._quaternion[3];
     if (test > 0.499) { // singularity at north pole
       pitch = 2 * (float) Math.atan2(this._quaternion[0], this._quaternion[3]);
       yaw = (float) Math.PI / 2;
       roll = 0;
-      return new Vector(roll, pitch, yaw);
+      target.set(roll, pitch, yaw);
+      return target;
     }
     if (test < -0.499) { // singularity at south pole
       pitch = -2 * (float) Math.atan2(this._quaternion[0], this._quaternion[3]);
       yaw = -(float) Math.PI / 2;
       roll = 0;
-      return new Vector(roll, pitch, yaw);
+      target.set(roll, pitch, yaw);
+      return target;
     }
     float sqx = this._quaternion[0] * this._quaternion[0];
     float sqy = this._quaternion[1] * this._quaternion[1];
@@ -775,7 +897,8 @@ public class Quaternion {
     pitch = (float) Math.atan2(2 * this._quaternion[1] * this._quaternion[3] - 2 * this._quaternion[0] * this._quaternion[2], 1 - 2 * sqy - 2 * sqz);
     yaw = (float) Math.asin(2 * test);
     roll = (float) Math.atan2(2 * this._quaternion[0] * this._quaternion[3] - 2 * this._quaternion[1] * this._quaternion[2], 1 - 2 * sqx - 2 * sqz);
-    return new Vector(roll, pitch, yaw);
+    target.set(roll, pitch, yaw);
+    return target;
   }
 
   /**
@@ -932,6 +1055,14 @@ public class Quaternion {
    * Returns the rotation matrix associated with the quaternion.
    */
   public Matrix matrix() {
+    return matrix(null);
+  }
+
+  /**
+   * Stores the rotation matrix associated with the quaternion into {@code target} which
+   * is then returned. If {@code target} is null a new matrix is created.
+   */
+  public Matrix matrix(Matrix target) {
     float q00 = 2.0f * this._quaternion[0] * this._quaternion[0];
     float q11 = 2.0f * this._quaternion[1] * this._quaternion[1];
     float q22 = 2.0f * this._quaternion[2] * this._quaternion[2];
@@ -965,7 +1096,10 @@ public class Quaternion {
     float m32 = 0.0f;
     float m33 = 1.0f;
 
-    return new Matrix(m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33);
+    if (target == null)
+      return new Matrix(m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33);
+    target.set(m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33);
+    return target;
   }
 
   /**
@@ -1043,6 +1177,15 @@ public class Quaternion {
    * @param allowFlip tells whether or not the interpolation allows axis flip
    */
   public static Quaternion slerp(Quaternion a, Quaternion b, float t, boolean allowFlip) {
+    return slerp(a, b, t, allowFlip, null);
+  }
+
+  /**
+   * Same as {@link #slerp(Quaternion, Quaternion, float, boolean)}, but stores the result
+   * into {@code target} which is then returned. If {@code target} is null a new quaternion
+   * is created. Note that {@code target} may be {@code a} or {@code b}.
+   */
+  public static Quaternion slerp(Quaternion a, Quaternion b, float t, boolean allowFlip, Quaternion target) {
     // Warning: this method should not normalize the Quaternion
     float cosAngle = Quaternion.dot(a, b);
 
@@ -1063,8 +1206,17 @@ public class Quaternion {
     if (allowFlip && (cosAngle < 0.0))
       c1 = -c1;
 
-    return new Quaternion(c1 * a._quaternion[0] + c2 * b._quaternion[0], c1 * a._quaternion[1] + c2 * b._quaternion[1], c1 * a._quaternion[2] + c2 * b._quaternion[2],
-        c1 * a._quaternion[3] + c2 * b._quaternion[3], false);
+    float x = c1 * a._quaternion[0] + c2 * b._quaternion[0];
+    float y = c1 * a._quaternion[1] + c2 * b._quaternion[1];
+    float z = c1 * a._quaternion[2] + c2 * b._quaternion[2];
+    float w = c1 * a._quaternion[3] + c2 * b._quaternion[3];
+    if (target == null)
+      return new Quaternion(x, y, z, w, false);
+    target._quaternion[0] = x;
+    target._quaternion[1] = y;
+    target._quaternion[2] = z;
+    target._quaternion[3] = w;
+    return target;
   }
 
   /**
@@ -737,9 +737,25 @@ public class Vector {
    * @param vector2 the vector to lerp to
    */
   public static Vector lerp(Vector vector1, Vector vector2, float amount) {
-    Vector v = vector1.get();
-    v.lerp(vector2, amount);
-    return v;
+    return lerp(vector1, vector2, amount, null);
+  }
+
+  /**
+   * Linear interpolate between two vectors and store the result in {@code target}
+   * (if null, a new vector will be created).
+   *
+   * @param vector1 the vector to start from
+   * @param vector2 the vector to lerp to
+   * @param target  Vector in which to store the result
+   */
+  public static Vector lerp(Vector vector1, Vector vector2, float amount, Vector target) {
+    if (target == null) {
+      target = new Vector();
+    }
+    target.set(Vector.lerp(vector1._vector[0], vector2._vector[0], amount),
+        Vector.lerp(vector1._vector[1], vector2._vector[1], amount),
+        Vector.lerp(vector1._vector[2], vector2._vector[2], amount));
+    return target;
   }
 
   /**
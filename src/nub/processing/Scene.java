@@ -1333,36 +1333,34 @@ public class Scene extends Graph {
    */
   protected void _drawSpline(Interpolator interpolator) {
     if (interpolator.hint() != 0) {
-      List<Node> path = _path(interpolator);
-      if (interpolator.isHintEnabled(Interpolator.SPLINE) && path.size() > 1) {
+      float[] path = _path(interpolator);
+      int samples = path.length / 3;
+      if (interpolator.isHintEnabled(Interpolator.SPLINE) && samples > 1) {
         context().pushStyle();
         context().noFill();
         context().colorMode(PApplet.RGB, 255);
         context().strokeWeight(_splineWeight(interpolator));
         context().stroke(_splineStroke(interpolator));
         context().beginShape();
-        for (Node node : path) {
-          Vector position = node.position();
-          vertex(position.x(), position.y(), position.z());
-        }
+        for (int i = 0; i < path.length; i += 3)
+          vertex(path[i], path[i + 1], path[i + 2]);
         context().endShape();
         context().popStyle();
       }
       if (interpolator.isHintEnabled(Interpolator.STEPS)) {
         context().pushStyle();
-        int count = 0;
         float goal = 0.0f;
-        for (Node node : path) {
-          if (count >= goal) {
+        for (int i = 0; i < samples; i++) {
+          if (i >= goal) {
             goal += Interpolator.maxSteps / ((float) interpolator.steps() + 1);
-            if (count % Interpolator.maxSteps != 0) {
+            if (i % Interpolator.maxSteps != 0) {
+              Node node = _pathNode(interpolator, i);
               _matrixHandler.pushMatrix();
               _matrixHandler.applyTransformation(node);
               _displayFrontHint(node);
               _matrixHandler.popMatrix();
             }
           }
-          count++;
         }
         context().popStyle();
       }
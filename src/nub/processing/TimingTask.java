@@ -13,9 +13,10 @@ package nub.processing;
 
 import nub.core.Graph;
 import nub.timing.Task;
+import nub.timing.TimingHandler;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Timing tasks are (non)recurrent, (non)concurrent
@@ -28,11 +29,13 @@ import java.util.TimerTask;
  * Do not use the task for drawing since it will not necessarily
  * run every frame.
  * <p>
+ * Concurrent timing tasks are scheduled on the {@link TimingHandler#executor()} shared
+ * among all of them.
+ * <p>
  * Call {@code Scene.TimingHandler.registerTask(Task)} to cancel the task.
  */
 public class TimingTask extends Task {
-  java.util.Timer _timer;
-  java.util.TimerTask _timerTask;
+  protected ScheduledFuture<?> _future;
 
   /**
    * Constructs a sequential recurrent task that will execute {@code callback}
@@ -60,19 +63,15 @@ public class TimingTask extends Task {
   public void run() {
     if (isConcurrent()) {
       stop();
-      _timer = new Timer();
-      _timerTask = new TimerTask() {
-        @Override
-        public void run() {
-          if (_callback != null)
-            _callback.execute();
-        }
+      Runnable runnable = () -> {
+        if (_callback != null)
+          _callback.execute();
       };
       if (isRecurrent()) {
-        _timer.scheduleAtFixedRate(_timerTask, 0, _period);
+        _future = TimingHandler.executor().scheduleAtFixedRate(runnable, 0, _period, TimeUnit.MILLISECONDS);
         _active = true;
       } else {
-        _timer.schedule(_timerTask, _period);
+        _future = TimingHandler.executor().schedule(runnable, _period, TimeUnit.MILLISECONDS);
         _active = false;
       }
     } else
@@ -82,9 +81,9 @@ public class TimingTask extends Task {
   @Override
   public void stop() {
     if (isConcurrent()) {
-      if (_timer != null) {
-        _timer.cancel();
-        _timer.purge();
+      if (_future != null) {
+        _future.cancel(false);
+        _future = null;
       }
       _active = false;
     } else
@@ -111,7 +110,7 @@ public class TimingTask extends Task {
 
   @Override
   public boolean isActive() {
-    return isConcurrent() ? _timer != null && _active : super.isActive();
+    return isConcurrent() ? _future != null && _active : super.isActive();
   }
 
   @Override
@@ -40,6 +40,8 @@ public class Task {
   protected long _counter;
   protected long _period;
   protected long _startTime;
+  // fixed timestep mode elapsed nanos not yet consumed, see _execute(long)
+  protected long _accumulator;
 
   /**
    * Constructs a sequential recurrent task that will execute {@code callback}
@@ -130,6 +132,58 @@ public class Task {
     return result;
   }
 
+  /**
+   * Fixed timestep version of {@link #_execute()}: accumulates the {@code elapsed} nanos and
+   * executes the callback once per {@link #period()} found in the accumulator, at most
+   * {@link TimingHandler#maxSteps()} times. Returns the number of executions.
+   *
+   * <b>Note:</b> This method is called by the timing handler (see {@link TimingHandler#handle()})
+   * when the {@link TimingHandler#enableFixedTimestep(boolean)} mode is enabled.
+   *
+   * @see #alpha()
+   */
+  protected int _execute(long elapsed) {
+    if (!_active)
+      return 0;
+    long period = _period * 1000000L;
+    _accumulator += elapsed;
+    int steps = 0;
+    while (_active && _accumulator >= period && steps < TimingHandler.maxSteps()) {
+      _accumulator -= period;
+      steps++;
+      // same order as in _execute(): the callback sees the task still active
+      if (_callback != null)
+        _callback.execute();
+      if (!_recurrence)
+        _active = false;
+    }
+    // drop the time the task couldn't catch up with
+    if (_accumulator >= period)
+      _accumulator %= period;
+    return steps;
+  }
+
+  /**
+   * Resets the task timing so that the time elapsed so far isn't caught up with, after the
+   * {@link TimingHandler} execution mode is switched (see {@link TimingHandler#enableFixedTimestep(boolean)}).
+   */
+  protected void _resync() {
+    _accumulator = 0;
+    _counter = 1;
+    _startTime = System.nanoTime();
+  }
+
+  /**
+   * Returns the fraction of the {@link #period()} (in [0..1)) accumulated since the last
+   * execution when the {@link TimingHandler} runs in fixed timestep mode, and {@code 0}
+   * otherwise. Use it to blend the previous and current task results at render time.
+   *
+   * @see TimingHandler#enableFixedTimestep(boolean)
+   */
+  public float alpha() {
+    return TimingHandler.isFixedTimestep() && !isConcurrent() ? (float) _accumulator / (_period * 1e6f) : 0;
+  }
+
   /**
    * Sets the task {@link #period()} in milliseconds and call {@link #run()}.
    * If task {@link #isRecurrent()} the {@link #execute()} method
@@ -156,6 +210,7 @@ public class Task {
     _active = true;
     _counter = 1;
     _startTime = System.nanoTime();
+    _accumulator = 0;
   }
 
   /**
@@ -217,7 +272,9 @@ public class Task {
     }
     _period = period;
     float target = frequency();
-    if (TimingHandler.frameRate < target) {
+    // in fixed timestep mode tasks catch up with up to maxSteps executions per frame
+    float frameRate = TimingHandler.isFixedTimestep() ? TimingHandler.frameRate * TimingHandler.maxSteps() : TimingHandler.frameRate;
+    if (frameRate < target) {
       System.out.println("Warning: Your task period of " + period + " ms requires at least a " + target + " Hz frameRate, " +
           "but currently it just achieves " + TimingHandler.frameRate + " Hz." + '\n' + "Either set a period of at least "
           + 1000 / TimingHandler.frameRate + " ms or call enableConcurrence() to execute the task concurrently.");
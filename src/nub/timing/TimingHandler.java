@@ -12,11 +12,23 @@
 package nub.timing;
 
 import java.util.HashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A timing handler holds a {@link #tasks()} with all the tasks
  * scheduled to be performed in the future (one single time or periodically).
  * <p>
+ * Concurrent tasks (see {@link Task#isConcurrent()}) share a single {@link #executor()}
+ * whose pool size may be set with {@link #setPoolSize(int)}.
+ * <p>
+ * Sequential tasks run at most once per {@link #handle()} call, unless the fixed timestep
+ * mode is enabled (see {@link #enableFixedTimestep(boolean)}), in which case they run as
+ * many times as their period fits in the real elapsed time (bounded by {@link #maxSteps()}).
+ * <p>
  * A timing handler should be used as a static scene instance.
  */
 public class TimingHandler {
@@ -32,10 +44,21 @@ public class TimingHandler {
    */
   static public float frameRate = 60;
   protected static long _frameRateLastNanos;
+  // nanos elapsed since the previous handle() call
+  protected static long _elapsedNanos;
+
+  // Fixed timestep mode
+  protected static boolean _fixedTimestep;
+  protected static int _maxSteps = 5;
 
   // T i m e r P o o l
   protected static HashSet<Task> _tasks = new HashSet<Task>();
 
+  // Shared scheduler of the concurrent tasks
+  protected static ScheduledThreadPoolExecutor _executor;
+  protected static int _poolSize = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  protected static ThreadFactory _threadFactory;
+
   /**
    * Handler's main method. It should be called from within your main event loop.
    * It recomputes the frame rate, and executes all non-concurrent tasks found in
@@ -43,9 +66,105 @@ public class TimingHandler {
    */
   public static void handle() {
     _updateFrameRate();
+    _handle();
+  }
+
+  /**
+   * Same as {@link #handle()}, but taking {@code elapsedNanos} as the time elapsed since the
+   * previous call, instead of the real one. Useful to drive the frame rate and the fixed
+   * timestep mode (see {@link #enableFixedTimestep(boolean)}) from a simulated clock, e.g.,
+   * when running headless simulations faster (or slower) than real time.
+   */
+  public static void handle(long elapsedNanos) {
+    _updateFrameRate(elapsedNanos);
+    _handle();
+  }
+
+  /**
+   * Executes all non-concurrent tasks found in the {@link #tasks()}. Used by {@link #handle()}.
+   */
+  protected static void _handle() {
+    for (Task task : _tasks)
+      if (!task.isConcurrent()) {
+        if (_fixedTimestep)
+          task._execute(_elapsedNanos);
+        else
+          task._execute();
+      }
+  }
+
+  /**
+   * Same as {@code enableFixedTimestep(true)}.
+   *
+   * @see #enableFixedTimestep(boolean)
+   */
+  public static void enableFixedTimestep() {
+    enableFixedTimestep(true);
+  }
+
+  /**
+   * Same as {@code enableFixedTimestep(false)}.
+   *
+   * @see #enableFixedTimestep(boolean)
+   */
+  public static void disableFixedTimestep() {
+    enableFixedTimestep(false);
+  }
+
+  /**
+   * Enables or (disables) the fixed timestep mode according to {@code enable}. Disabled by default.
+   * <p>
+   * In fixed timestep mode, each sequential task accumulates the real time elapsed between
+   * {@link #handle()} calls and executes once per {@link Task#period()} found in it, so that the
+   * simulation speed (e.g., that of an {@link nub.core.Interpolator}) doesn't depend on the frame
+   * rate. At most {@link #maxSteps()} catch-up executions are performed per task and frame; any
+   * further time left is dropped to prevent slow frames from compounding. The fraction of a
+   * period left in the accumulator is returned by {@link Task#alpha()} and may be used to
+   * blend the last two simulation states at render time.
+   *
+   * @see #isFixedTimestep()
+   * @see #setMaxSteps(int)
+   */
+  public static void enableFixedTimestep(boolean enable) {
+    if (_fixedTimestep == enable)
+      return;
+    _fixedTimestep = enable;
     for (Task task : _tasks)
       if (!task.isConcurrent())
-        task._execute();
+        task._resync();
+  }
+
+  /**
+   * Returns whether or not the fixed timestep mode is enabled.
+   *
+   * @see #enableFixedTimestep(boolean)
+   */
+  public static boolean isFixedTimestep() {
+    return _fixedTimestep;
+  }
+
+  /**
+   * Returns the maximum number of times a sequential task may be executed per {@link #handle()}
+   * call in fixed timestep mode. Default is 5.
+   *
+   * @see #setMaxSteps(int)
+   * @see #enableFixedTimestep(boolean)
+   */
+  public static int maxSteps() {
+    return _maxSteps;
+  }
+
+  /**
+   * Sets the {@link #maxSteps()}.
+   *
+   * @see #enableFixedTimestep(boolean)
+   */
+  public static void setMaxSteps(int steps) {
+    if (steps < 1) {
+      System.out.println("Warning: max steps should be at least 1. Nothing done!");
+      return;
+    }
+    _maxSteps = steps;
   }
 
   /**
@@ -83,6 +202,86 @@ public class TimingHandler {
     return _tasks.contains(task);
   }
 
+  /**
+   * Returns the scheduler shared by all the concurrent tasks, which is lazily instantiated
+   * with {@link #poolSize()} threads. Starting and stopping a concurrent task just schedules
+   * and cancels its execution on this scheduler.
+   *
+   * @see #setPoolSize(int)
+   * @see #setThreadFactory(ThreadFactory)
+   * @see #shutdown()
+   */
+  public static synchronized ScheduledExecutorService executor() {
+    if (_executor == null) {
+      _executor = new ScheduledThreadPoolExecutor(_poolSize, _threadFactory != null ? _threadFactory : _daemonThreadFactory());
+      _executor.setRemoveOnCancelPolicy(true);
+    }
+    return _executor;
+  }
+
+  /**
+   * Returns a factory of daemon threads, so that concurrent tasks don't prevent the application to exit.
+   */
+  protected static ThreadFactory _daemonThreadFactory() {
+    AtomicInteger counter = new AtomicInteger();
+    ThreadFactory factory = Executors.defaultThreadFactory();
+    return runnable -> {
+      Thread thread = factory.newThread(runnable);
+      thread.setName("nub-timing-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Returns the number of threads of the {@link #executor()}. Default is half the number of
+   * available processors (or 1).
+   *
+   * @see #setPoolSize(int)
+   */
+  public static int poolSize() {
+    return _poolSize;
+  }
+
+  /**
+   * Sets the number of threads of the {@link #executor()}.
+   *
+   * @see #poolSize()
+   */
+  public static synchronized void setPoolSize(int size) {
+    if (size < 1) {
+      System.out.println("Warning: pool size should be at least 1. Nothing done!");
+      return;
+    }
+    _poolSize = size;
+    if (_executor != null)
+      _executor.setCorePoolSize(size);
+  }
+
+  /**
+   * Sets the factory used to create the {@link #executor()} threads, e.g., pass
+   * {@code Thread.ofVirtual().factory()} to run the concurrent tasks on virtual threads
+   * (Java 21+). Takes effect the next time the executor is instantiated, see {@link #shutdown()}.
+   * A {@code null} value restores the default daemon thread factory.
+   */
+  public static synchronized void setThreadFactory(ThreadFactory factory) {
+    _threadFactory = factory;
+  }
+
+  /**
+   * Stops all the concurrent tasks and shuts down the {@link #executor()}, which will be
+   * re-instantiated if a concurrent task is run afterwards.
+   */
+  public static synchronized void shutdown() {
+    for (Task task : _tasks)
+      if (task.isConcurrent())
+        task.stop();
+    if (_executor != null) {
+      _executor.shutdownNow();
+      _executor = null;
+    }
+  }
+
   /**
    * Recomputes the frame rate based upon the frequency at which {@link #handle()} is
    * called from within the application main event loop. The frame rate is needed to sync
@@ -93,13 +292,21 @@ public class TimingHandler {
    */
   protected static void _updateFrameRate() {
     long now = System.nanoTime();
+    _updateFrameRate(frameCount > 0 ? now - _frameRateLastNanos : 0);
+  }
+
+  /**
+   * Recomputes the frame rate taking {@code elapsedNanos} as the duration of the last frame.
+   */
+  protected static void _updateFrameRate(long elapsedNanos) {
+    _elapsedNanos = elapsedNanos;
     if (frameCount > 0) {
-      float frameTimeSecs = (now - _frameRateLastNanos) / 1e9f;
+      float frameTimeSecs = _elapsedNanos / 1e9f;
       float avgFrameTimeSecs = 1.0f / frameRate;
       avgFrameTimeSecs = 0.95f * avgFrameTimeSecs + 0.05f * frameTimeSecs;
       frameRate = 1.0f / avgFrameTimeSecs;
     }
-    _frameRateLastNanos = now;
+    _frameRateLastNanos = System.nanoTime();
     frameCount++;
   }
 }
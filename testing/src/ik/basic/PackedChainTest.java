@@ -0,0 +1,74 @@
+package ik.basic;
+
+import nub.core.Node;
+import nub.ik.solver.GHIK;
+import nub.primitives.Quaternion;
+import nub.primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that GHIK gives the same solutions whether or not its heuristics iterate over the
+ * packed chain (see GHIK#enablePacking(boolean)), for random unconstrained chains and targets,
+ * in both traversal orders.
+ */
+public class PackedChainTest {
+  static int numJoints = 8;
+  static int numChains = 100;
+  static float tolerance = 0.001f;
+
+  public static float[] solve(GHIK.HeuristicMode mode, boolean packing, boolean topToBottom, long seed) {
+    Random random = new Random(seed);
+    List<Node> chain = new ArrayList<Node>();
+    Node reference = null;
+    for (int i = 0; i < numJoints; i++) {
+      Node joint = new Node(reference);
+      if (reference != null)
+        joint.setTranslation(random.nextFloat() - 0.5f, 1 + random.nextFloat(), random.nextFloat() - 0.5f);
+      joint.setRotation(new Quaternion(new Vector(random.nextFloat(), random.nextFloat(), random.nextFloat()), random.nextFloat()));
+      chain.add(joint);
+      reference = joint;
+    }
+    Node target = new Node();
+    target.setPosition(8 * random.nextFloat() - 4, 8 * random.nextFloat() - 4, 8 * random.nextFloat() - 4);
+    GHIK solver = new GHIK(chain, target, mode);
+    solver.enablePacking(packing);
+    solver.context().setTopToBottom(topToBottom);
+    solver.setMaxIterations(20);
+    solver.setMaxError(0.0001f);
+    //move the target along a few frames
+    for (int i = 0; i < 5; i++) {
+      target.translate(0.3f, 0, 0);
+      solver.solve();
+    }
+    float[] result = new float[4 * numJoints + 3];
+    for (int i = 0; i < numJoints; i++)
+      System.arraycopy(chain.get(i).rotation()._quaternion, 0, result, 4 * i, 4);
+    Vector effector = chain.get(numJoints - 1).position();
+    result[4 * numJoints] = effector.x();
+    result[4 * numJoints + 1] = effector.y();
+    result[4 * numJoints + 2] = effector.z();
+    return result;
+  }
+
+  public static void main(String args[]) {
+    GHIK.HeuristicMode[] modes = {GHIK.HeuristicMode.CCD, GHIK.HeuristicMode.TRIK, GHIK.HeuristicMode.BFIK_CCD, GHIK.HeuristicMode.BFIK_TRIK};
+    for (GHIK.HeuristicMode mode : modes) {
+      for (boolean topToBottom : new boolean[]{true, false}) {
+        float worst = 0;
+        for (long seed = 0; seed < numChains; seed++) {
+          float[] packed = solve(mode, true, topToBottom, seed);
+          float[] unpacked = solve(mode, false, topToBottom, seed);
+          for (int i = 0; i < packed.length; i++)
+            worst = Math.max(worst, Math.abs(packed[i] - unpacked[i]));
+        }
+        System.out.println(mode + " top to bottom " + topToBottom + " max difference " + worst);
+        if (worst > tolerance)
+          throw new AssertionError("Packed and unpacked " + mode + " solutions differ: " + worst);
+      }
+    }
+    System.out.println("Ok");
+  }
+}
@@ -0,0 +1,56 @@
+package ik.basic;
+
+import nub.core.Node;
+import nub.ik.solver.GHIK;
+import nub.primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a chain solved with target prediction reaches the actual target once it stops
+ * moving, i.e., that the predicted displacement doesn't outlive the target motion.
+ */
+public class TargetPredictionTest {
+  static int numJoints = 6;
+  static float boneLength = 2;
+
+  public static float solve(float prediction) {
+    List<Node> chain = new ArrayList<Node>();
+    Node reference = null;
+    for (int i = 0; i < numJoints; i++) {
+      Node joint = new Node(reference);
+      if (reference != null) joint.setTranslation(0, boneLength, 0);
+      chain.add(joint);
+      reference = joint;
+    }
+    Node target = new Node();
+    target.setPosition(-2, 6, 0);
+    GHIK solver = new GHIK(chain, target, GHIK.HeuristicMode.BFIK_TRIK);
+    solver.context().setTargetPrediction(prediction);
+    solver.setMaxError(0.001f);
+    //drag the target
+    for (int i = 0; i < 10; i++) {
+      target.translate(0.5f, 0, 0);
+      solver.solve();
+    }
+    //and let it stay still
+    for (int i = 0; i < 60; i++) {
+      solver.solve();
+    }
+    float effector = Vector.distance(chain.get(numJoints - 1).position(), target.position());
+    float worldTarget = Vector.distance(solver.context().worldTarget().position(), target.position());
+    System.out.println("prediction " + prediction + " effector distance " + effector + " world target distance " + worldTarget);
+    if (worldTarget > 0.001f)
+      throw new AssertionError("The world target didn't settle on the actual target: " + worldTarget);
+    return effector;
+  }
+
+  public static void main(String args[]) {
+    float withoutPrediction = solve(0);
+    float withPrediction = solve(1);
+    if (withPrediction > withoutPrediction + 0.01f)
+      throw new AssertionError("The end effector didn't settle on the actual target: " + withPrediction);
+    System.out.println("Ok");
+  }
+}
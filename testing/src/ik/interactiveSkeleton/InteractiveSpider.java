@@ -74,8 +74,7 @@ public class InteractiveSpider extends PApplet {
       float x = scene.pApplet.random(-scene.radius(), scene.radius());
       float z = scene.pApplet.random(-scene.radius(), scene.radius());
 
-      shape.translation().setX(x);
-      shape.translation().setZ(z);
+      shape.setTranslation(x, shape.translation().y(), z);
 
       shape.rotate(new Quaternion(new Vector(0, 1, 0), scene.pApplet.random(-PI, PI)));
 
@@ -100,14 +99,15 @@ public class InteractiveSpider extends PApplet {
     }
 
     public void keepInside() {
-      if (shape.translation().x() > scene.radius()) {
-        shape.translation().setX(-scene.radius() + scene.radius() * 0.1f);
-      } else if (shape.translation().x() < -scene.radius()) {
-        shape.translation().setX(scene.radius() - scene.radius() * 0.1f);
-      } else if (shape.translation().z() > scene.radius()) {
-        shape.translation().setZ(-scene.radius() + scene.radius() * 0.1f);
-      } else if (shape.translation().z() < -scene.radius()) {
-        shape.translation().setZ(scene.radius() - scene.radius() * 0.1f);
+      Vector translation = shape.translation();
+      if (translation.x() > scene.radius()) {
+        shape.setTranslation(-scene.radius() + scene.radius() * 0.1f, translation.y(), translation.z());
+      } else if (translation.x() < -scene.radius()) {
+        shape.setTranslation(scene.radius() - scene.radius() * 0.1f, translation.y(), translation.z());
+      } else if (translation.z() > scene.radius()) {
+        shape.setTranslation(translation.x(), translation.y(), -scene.radius() + scene.radius() * 0.1f);
+      } else if (translation.z() < -scene.radius()) {
+        shape.setTranslation(translation.x(), translation.y(), scene.radius() - scene.radius() * 0.1f);
       }
     }
 
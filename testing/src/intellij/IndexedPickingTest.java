@@ -0,0 +1,32 @@
+package intellij;
+
+import nub.core.HeadlessGraph;
+import nub.core.Node;
+
+/**
+ * Checks that picking with {@code indexing} enabled works before the first frame, i.e., before
+ * the bullseye grid is ever filled, as well as right after its cell size is changed, by falling
+ * back to the hierarchy traversal.
+ */
+public class IndexedPickingTest {
+  public static void main(String[] args) {
+    HeadlessGraph graph = new HeadlessGraph(800, 600);
+    graph.setBounds(100);
+    graph.fit();
+    graph.indexing = true;
+    Node node = new Node();
+    node.setBullsEyeSize(50);
+    node.enableHint(Node.BULLSEYE);
+    Node picked = graph.updateTag(400, 300);
+    System.out.println("Before the first frame: " + (picked == node ? "OK" : "FAILED"));
+    graph.step();
+    picked = graph.updateTag(400, 300);
+    System.out.println("After the first frame: " + (picked == node ? "OK" : "FAILED"));
+    graph.setIndexingCellSize(16);
+    picked = graph.updateTag(400, 300);
+    System.out.println("After resizing the grid cells: " + (picked == node ? "OK" : "FAILED"));
+    graph.step();
+    picked = graph.updateTag(400, 300);
+    System.out.println("After the next frame: " + (picked == node ? "OK" : "FAILED"));
+  }
+}